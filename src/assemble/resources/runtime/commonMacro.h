@@ -15,7 +15,7 @@
 #define CALL(...) CALL_NUM_ARGS_IMPL(__VA_ARGS__, 2,1)(__VA_ARGS__)
 #define CALL_NUM_ARGS_IMPL(_1,_2,N,...) CALL##N
 #define CALL1(METH_NAME) PREMANGLE1(METH_NAME)
-#define CALL2(METH_NAME,METH_NAME) GET_MY_INTERFACE(ITF_NAME).METH_NAME
+#define CALL2(ITF_NAME,METH_NAME) GET_MY_INTERFACE(ITF_NAME).METH_NAME
 
 /* Introduce Definition name */
 #define PREMANGLE2(ITF_NAME,METH_NAME) MANGLE3_HELPER( DEFINITION_NAME , ITF_NAME, METH_NAME)
@@ -33,7 +33,18 @@
 #define PRIVATE_HELPER_HELPER(DEF_NAME) PRIVATE_HELPER(DEF_NAME)
 #define PRIVATE_HELPER(DEF_NAME) _component_##DEF_NAME##_private_data
 
-#define IS_BOUND(interface) 1
+/* 0 for the client interfaces known to be unbound, see the bind header of the definition,
+ * 1 for any other name, whether its _bound macro is 1 or not defined at all */
+#define IS_BOUND(ITF_NAME) IS_BOUND_HELPER_HELPER(DEFINITION_NAME, ITF_NAME)
+#define IS_BOUND_HELPER_HELPER(DEF_NAME, ITF_NAME) IS_BOUND_HELPER(DEF_NAME, ITF_NAME)
+#define IS_BOUND_HELPER(DEF_NAME, ITF_NAME) IS_BOUND_VALUE(_component_##DEF_NAME##_interface_##ITF_NAME##_bound)
+/* Extra step needed to expand the _bound macro, before pasting it */
+#define IS_BOUND_VALUE(BOUND) IS_BOUND_VALUE_HELPER(BOUND)
+#define IS_BOUND_VALUE_HELPER(BOUND) IS_BOUND_SELECT(IS_BOUND_UNBOUND_##BOUND)
+/* Only IS_BOUND_UNBOUND_0 is a macro, shifting 0 in place of the default 1 */
+#define IS_BOUND_UNBOUND_0 ~, 0
+#define IS_BOUND_SELECT(...) IS_BOUND_SECOND(__VA_ARGS__, 1, ~)
+#define IS_BOUND_SECOND(FIRST, SECOND, ...) SECOND
 #define IS_BOUND_COLLECTION(interface,index) 1
 
 #define GET_COLLECTION_SIZE(ITF_NAME)  GET_COLLECTION_SIZE_HELPER_HELPER(DEFINITION_NAME, ITF_NAME)
@@ -44,8 +55,10 @@
 #define ATTRIBUTE_STRUCT_NAME_HELPER_HELPER(DEF_NAME) ATTRIBUTE_STRUCT_NAME_HELPER(DEF_NAME)
 #define ATTRIBUTE_STRUCT_NAME_HELPER(DEF_NAME) _component_##DEF_NAME##_attribute
 
-#define ATTR(ATTR_NAME) ATTR_HELPER(ATTRIBUTE_STRUCT_NAME, ATTR_NAME)
-#define ATTR_HELPER(ATTR_STRUCT_NAME,ATTR_NAME) ATTR_STRUCT_NAME.ATTR_NAME
+/* Each attribute has an accessor in the adl header, as it may be in the constant attribute struct */
+#define ATTR(ATTR_NAME) ATTR_HELPER_HELPER(DEFINITION_NAME, ATTR_NAME)
+#define ATTR_HELPER_HELPER(DEF_NAME, ATTR_NAME) ATTR_HELPER(DEF_NAME, ATTR_NAME)
+#define ATTR_HELPER(DEF_NAME, ATTR_NAME) _component_##DEF_NAME##_attribute_##ATTR_NAME
 
 
 #define CONSTRUCTOR() CONSTRUCTOR_HELPER_HELPER(DEFINITION_NAME)
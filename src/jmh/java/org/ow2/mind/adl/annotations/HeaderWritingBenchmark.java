@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.fractal.adl.Definition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ow2.mind.idl.ast.IDL;
+
+/**
+ * Rendering of the method declarations, and writing of a whole interface
+ * header and of the whole set of files of a definition, to tmpfs when
+ * available. The headers are written again at each invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderWritingBenchmark {
+
+	@Param({ "4", "32" })
+	int methods;
+
+	@Param({ "false", "true" })
+	boolean writeIfChanged;
+
+	private File dir;
+	private FakeHeaderGenerator generator;
+	private Map<Object, Object> context;
+	private Definition definition;
+	private PreparedDefinition prepared;
+	private PreparedDefinition.PreparedInterface preparedInterface;
+
+	@Setup
+	public void setup() throws Exception {
+		dir = SyntheticAst.temporaryDirectory();
+		final Map<String, IDL> idls = new HashMap<String, IDL>();
+		for (int i = 0; i < 4; i++) {
+			idls.put("bench.Itf" + i, SyntheticAst.interfaceDefinition("bench.Itf" + i, methods));
+		}
+		generator = SyntheticAst.generator(dir, idls);
+		context = SyntheticAst.context();
+		context.put(FakeHeaderOptions.WRITE_IF_CHANGED, Boolean.toString(writeIfChanged));
+		definition = SyntheticAst.primitiveDefinition("bench.Component", 2, 2, 2);
+		prepared = generator.prepareComponentHeaders(definition, context);
+		preparedInterface = prepared.serverInterfaces.get(0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		SyntheticAst.delete(dir);
+	}
+
+	@Benchmark
+	public int methDeclare() {
+		final AsciiEmitter emitter = new AsciiEmitter(preparedInterface.headerFile, false);
+		generator.methDeclare(preparedInterface.itf, preparedInterface.resolved, emitter);
+		// Give the buffer back to the pool without writing the file.
+		final int size = emitter.size();
+		emitter.discard();
+		return size;
+	}
+
+	@Benchmark
+	public void writeItfHeader() {
+		prepared.emittedHeaders.release(preparedInterface.itf.getSignature());
+		generator.writeItfHeader(preparedInterface, prepared);
+	}
+
+	@Benchmark
+	public void writeComponentHeaders() {
+		releaseInterfaceHeaders(prepared);
+		generator.writeComponentHeaders(prepared);
+	}
+
+	@Benchmark
+	public PreparedDefinition prepareAndWriteComponentHeaders() {
+		final PreparedDefinition fresh = generator.prepareComponentHeaders(definition, context);
+		releaseInterfaceHeaders(fresh);
+		generator.writeComponentHeaders(fresh);
+		return fresh;
+	}
+
+	/**
+	 * Let the interface headers be written again.
+	 */
+	private static void releaseInterfaceHeaders(PreparedDefinition prepared) {
+		for (PreparedDefinition.PreparedInterface itf : prepared.serverInterfaces) {
+			prepared.emittedHeaders.release(itf.itf.getSignature());
+		}
+		for (PreparedDefinition.PreparedInterface itf : prepared.clientInterfaces) {
+			prepared.emittedHeaders.release(itf.itf.getSignature());
+		}
+	}
+}
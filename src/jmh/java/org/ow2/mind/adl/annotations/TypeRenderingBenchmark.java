@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ow2.mind.idl.ast.IDL;
+import org.ow2.mind.idl.ast.Parameter;
+import org.ow2.mind.idl.ast.Type;
+
+/**
+ * Rendering of IDL types and parameter lists to C, memoized as in a
+ * compilation, and from scratch as for the first definition using a type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeRenderingBenchmark {
+
+	@Param({ "1", "4", "16" })
+	int depth;
+
+	private File dir;
+	private CTypeRenderer renderer;
+	private FakeHeaderGenerator generator;
+	private Type type;
+	private Parameter[] parameters;
+
+	@Setup
+	public void setup() throws Exception {
+		renderer = new CTypeRenderer();
+		dir = SyntheticAst.temporaryDirectory();
+		generator = SyntheticAst.generator(dir, Collections.<String, IDL> emptyMap());
+		type = SyntheticAst.deepType(SyntheticAst.primitive("unsigned int"), depth);
+		parameters = SyntheticAst.parameters(depth);
+	}
+
+	@TearDown
+	public void tearDown() {
+		SyntheticAst.delete(dir);
+	}
+
+	@Benchmark
+	public String typeToStringMemoized() {
+		return generator.typeToString(type);
+	}
+
+	@Benchmark
+	public String typeToStringFirstUse() {
+		renderer.clear();
+		return renderer.render(type);
+	}
+
+	@Benchmark
+	public String cFunctionParameters() {
+		return generator.cFunctionParameters(parameters);
+	}
+}
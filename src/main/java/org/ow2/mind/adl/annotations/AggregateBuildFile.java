@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * A top level build file listing the build files of all the definitions of a
+ * compilation. The definitions are collected while they are generated, and
+ * the file is rendered once, at the generation barrier, in the order of the
+ * build file paths; it is only replaced when its content changed, so that
+ * its modification time does not trigger a rebuild. In watch mode it is
+ * rendered again after a regeneration adding definitions.
+ */
+public class AggregateBuildFile {
+	/**
+	 * Prefix of the keys of the aggregate files in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = AggregateBuildFile.class.getName();
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	private final File file;
+	/* All guarded by this. */
+	private final Set<String> entries = new TreeSet<String>();
+	private BuildFileWriter writer;
+	private CompilationFlags flags;
+	private OutputWriter output;
+	private GenerationMetrics metrics;
+	private boolean changed;
+
+	private AggregateBuildFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Get an aggregate file of a compilation, creating it on first use.
+	 * @param context The global context of the compilation.
+	 * @param file The aggregate file.
+	 * @return The aggregate file stored in the context.
+	 */
+	public static AggregateBuildFile get(Map<Object, Object> context, File file) {
+		final String key = CONTEXT_KEY + ":" + file.getPath();
+		synchronized (context) {
+			AggregateBuildFile aggregate = (AggregateBuildFile) context.get(key);
+			if (aggregate == null) {
+				aggregate = new AggregateBuildFile(file);
+				context.put(key, aggregate);
+				final AggregateBuildFile rendered = aggregate;
+				GenerationScheduler.get(context).atBarrier(new Runnable() {
+					public void run() {
+						rendered.render();
+					}
+				}, true);
+			}
+			return aggregate;
+		}
+	}
+
+	/**
+	 * @return The aggregate file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Add the build file of a definition to the aggregate, rendered at the
+	 * barrier.
+	 * @param writer The build file backend.
+	 * @param prepared The prepared definition.
+	 * @param buildFile The path of the definition build file, relative to the
+	 *          output directory.
+	 */
+	public synchronized void add(BuildFileWriter writer, PreparedDefinition prepared, String buildFile) {
+		this.writer = writer;
+		this.flags = prepared.compilationFlags;
+		this.output = prepared.output;
+		this.metrics = prepared.metrics;
+		if (entries.add(buildFile)) {
+			changed = true;
+		}
+	}
+
+	/**
+	 * Render the aggregate file, if definitions were added since it was last
+	 * rendered.
+	 */
+	synchronized void render() {
+		if (!changed) {
+			return;
+		}
+		final AsciiEmitter out = new AsciiEmitter(file, true);
+		writer.writeAggregateHead(flags, out);
+		for (String buildFile : entries) {
+			writer.writeAggregateEntry(buildFile, out);
+		}
+		try {
+			output.write(out, metrics);
+			changed = false;
+		} catch (IOException e) {
+			logger.info("Top level build file cannot be written !");
+			e.printStackTrace();
+			output.failed(e);
+		}
+	}
+
+	/**
+	 * @return The number of build files aggregated.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+}
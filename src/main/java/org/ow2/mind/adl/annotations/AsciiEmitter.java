@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Renders an ASCII file in memory, appending characters directly as bytes in
+ * a pooled buffer. Nothing reaches the disk before {@link #commit()}, which
+ * writes the whole file at once. Non ASCII characters are replaced by '?',
+ * as the ASCII encoder would do.
+ * An emitter is not thread safe, but each file has its own.
+ */
+public class AsciiEmitter {
+
+	private static final int INITIAL_CAPACITY = 4096;
+	/*
+	 * Bigger buffers are left to the garbage collector instead of being pooled.
+	 */
+	private static final int MAX_POOLED_CAPACITY = 1 << 20;
+	private static final int MAX_POOLED_BUFFERS = 64;
+
+	private static final Queue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+
+	private static final byte[] LINE_SEPARATOR = lineSeparator();
+
+	private final File file;
+	private final boolean onlyIfChanged;
+	private byte[] buffer;
+	private int count;
+
+	/**
+	 * @param file The file to render.
+	 * @param onlyIfChanged true to leave the file untouched on commit if it
+	 *          already holds the rendered content.
+	 */
+	public AsciiEmitter(File file, boolean onlyIfChanged) {
+		this.file = file;
+		this.onlyIfChanged = onlyIfChanged;
+		final byte[] pooled = pool.poll();
+		this.buffer = (pooled != null) ? pooled : new byte[INITIAL_CAPACITY];
+	}
+
+	private static byte[] lineSeparator() {
+		final String separator = System.getProperty("line.separator", "\n");
+		final byte[] bytes = new byte[separator.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) separator.charAt(i);
+		}
+		return bytes;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (count + extra > buffer.length) {
+			final byte[] newBuffer = new byte[Math.max(buffer.length << 1, count + extra)];
+			System.arraycopy(buffer, 0, newBuffer, 0, count);
+			buffer = newBuffer;
+		}
+	}
+
+	/**
+	 * @return The file being rendered.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return The number of bytes rendered so far.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Append a string.
+	 * @param s The string, "null" if null.
+	 * @return This emitter.
+	 */
+	public AsciiEmitter print(String s) {
+		if (s == null) {
+			s = "null";
+		}
+		final int length = s.length();
+		ensureCapacity(length);
+		final byte[] b = buffer;
+		int pos = count;
+		for (int i = 0; i < length; i++) {
+			final char c = s.charAt(i);
+			b[pos++] = (c < 0x80) ? (byte) c : (byte) '?';
+		}
+		count = pos;
+		return this;
+	}
+
+	/**
+	 * Append a character.
+	 * @param c The character.
+	 * @return This emitter.
+	 */
+	public AsciiEmitter print(char c) {
+		ensureCapacity(1);
+		buffer[count++] = (c < 0x80) ? (byte) c : (byte) '?';
+		return this;
+	}
+
+	/**
+	 * Append the decimal representation of an integer.
+	 * @param i The integer.
+	 * @return This emitter.
+	 */
+	public AsciiEmitter print(int i) {
+		if (i == Integer.MIN_VALUE) {
+			return print(Integer.toString(i));
+		}
+		ensureCapacity(11);
+		if (i < 0) {
+			buffer[count++] = '-';
+			i = -i;
+		}
+		int digits = 1;
+		for (int n = i; n >= 10; n /= 10) {
+			digits++;
+		}
+		int pos = count + digits;
+		count = pos;
+		do {
+			buffer[--pos] = (byte) ('0' + (i % 10));
+			i /= 10;
+		} while (i != 0);
+		return this;
+	}
+
+	/**
+	 * Terminate the current line.
+	 * @return This emitter.
+	 */
+	public AsciiEmitter println() {
+		ensureCapacity(LINE_SEPARATOR.length);
+		System.arraycopy(LINE_SEPARATOR, 0, buffer, count, LINE_SEPARATOR.length);
+		count += LINE_SEPARATOR.length;
+		return this;
+	}
+
+	/**
+	 * Append a string and terminate the line.
+	 * @param s The string.
+	 * @return This emitter.
+	 */
+	public AsciiEmitter println(String s) {
+		return print(s).println();
+	}
+
+	/**
+	 * Write the rendered content to the file, in a single write, and give the
+	 * buffer back to the pool. The emitter cannot be used afterwards.
+	 * @return true if the file was written, false if it was left untouched.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public boolean commit() throws IOException {
+		return commit(true);
+	}
+
+	/**
+	 * @param createDirectory false if the directory of the file is known to
+	 *          exist.
+	 * @see #commit()
+	 */
+	boolean commit(boolean createDirectory) throws IOException {
+		try {
+			return FileUpdater.write(file, buffer, count, onlyIfChanged, createDirectory);
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Append the rendered content at the end of the file, and give the buffer
+	 * back to the pool. The emitter cannot be used afterwards.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void commitAppend() throws IOException {
+		commitAppend(true);
+	}
+
+	/**
+	 * @param createDirectory false if the directory of the file is known to
+	 *          exist.
+	 * @see #commitAppend()
+	 */
+	void commitAppend(boolean createDirectory) throws IOException {
+		try {
+			FileUpdater.append(file, buffer, count, createDirectory);
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Give the buffer back to the pool without writing anything. The emitter
+	 * cannot be used afterwards.
+	 */
+	public void discard() {
+		release();
+	}
+
+	private void release() {
+		final byte[] b = buffer;
+		buffer = null;
+		if (b != null && b.length <= MAX_POOLED_CAPACITY && pool.size() < MAX_POOLED_BUFFERS) {
+			pool.offer(b);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ow2.mind.adl.ast.Attribute;
+import org.ow2.mind.value.ast.BooleanLiteral;
+import org.ow2.mind.value.ast.NullLiteral;
+import org.ow2.mind.value.ast.NumberLiteral;
+import org.ow2.mind.value.ast.StringLiteral;
+import org.ow2.mind.value.ast.Value;
+
+/**
+ * Layout of the attributes of a definition: on demand, the attributes the
+ * sources only read go to a constant structure, the others stay in the
+ * mutable one, each sorted by decreasing alignment to minimize the padding.
+ * The sizes are estimated from the attribute type names, for the given
+ * pointer size; the attributes of other types are kept first and make the
+ * sizes unknown.
+ *
+ * The sources are scanned conservatively: only the scalar attributes of a
+ * known C type, neither arrays nor pointers, whose every ATTR use is a plain
+ * read, can be constant. A source writing the structure through
+ * ATTRIBUTE_STRUCT_NAME or defining a macro using ATTR, or a source that
+ * cannot be read, keeps every attribute mutable.
+ */
+public final class AttributeLayout {
+
+	/**
+	 * An attribute, with its estimated size and its initializer.
+	 */
+	public static final class Field {
+		final Attribute attribute;
+		final int size;
+		final String initializer;
+
+		Field(Attribute attribute, int size, String initializer) {
+			this.attribute = attribute;
+			this.size = size;
+			this.initializer = initializer;
+		}
+	}
+
+	/**
+	 * Sort by decreasing alignment, the unknown sizes first.
+	 */
+	private static final Comparator<Field> BY_ALIGNMENT = new Comparator<Field>() {
+		public int compare(Field f1, Field f2) {
+			return rank(f2) - rank(f1);
+		}
+
+		private int rank(Field field) {
+			return (field.size < 0) ? Integer.MAX_VALUE : field.size;
+		}
+	};
+
+	/**
+	 * A macro definition using ATTR, with the line continuations joined.
+	 */
+	private static final Pattern ATTR_MACRO = Pattern.compile("(?m)^\\s*#\\s*define\\b.*\\bATTR\\b");
+
+	/**
+	 * The keywords taking a parenthesized expression, which is not a call.
+	 */
+	private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("if", "while", "switch",
+			"return", "sizeof"));
+
+	final List<Field> mutableFields = new ArrayList<Field>();
+	final List<Field> constFields = new ArrayList<Field>();
+	/**
+	 * Estimated sizes of the structure in declaration order, and of the two
+	 * structures of this layout, or -1 if a type size is unknown.
+	 */
+	final int originalSize;
+	final int mutableSize;
+	final int constSize;
+
+	private AttributeLayout(Attribute[] attributes, List<PreparedDefinition.PreparedSource> sources,
+			int pointerSize, boolean constAttributes) {
+		final String text = constAttributes ? readSources(sources) : null;
+		final List<Field> declared = new ArrayList<Field>();
+		for (Attribute attribute : attributes) {
+			final Field field = new Field(attribute, typeSize(attribute.getType(), pointerSize),
+					initializer(attribute.getValue()));
+			declared.add(field);
+			if (text == null || !isScalar(attribute.getType()) || isWritten(attribute.getName(), text)) {
+				mutableFields.add(field);
+			} else {
+				constFields.add(field);
+			}
+		}
+		// A stable sort, the declaration order is kept among equal alignments.
+		Collections.sort(mutableFields, BY_ALIGNMENT);
+		Collections.sort(constFields, BY_ALIGNMENT);
+		originalSize = structSize(declared);
+		mutableSize = structSize(mutableFields);
+		constSize = structSize(constFields);
+	}
+
+	/**
+	 * Compute the layout of the attributes of a definition.
+	 * @param attributes The attributes, in declaration order.
+	 * @param sources The sources of the definition, scanned for writes.
+	 * @param pointerSize The size of pointers on the target.
+	 * @param constAttributes true to move the attributes only read to the
+	 *          constant structure.
+	 * @return The layout.
+	 */
+	public static AttributeLayout compute(Attribute[] attributes, List<PreparedDefinition.PreparedSource> sources,
+			int pointerSize, boolean constAttributes) {
+		return new AttributeLayout(attributes, sources, pointerSize, constAttributes);
+	}
+
+	/**
+	 * @return The RAM saved compared to the structure in declaration order, or
+	 *         -1 if unknown.
+	 */
+	public int getSavedBytes() {
+		return (originalSize < 0 || mutableSize < 0) ? -1 : originalSize - mutableSize;
+	}
+
+	/**
+	 * @return The concatenated sources, or null if one cannot be read, so that
+	 *         every attribute is considered written.
+	 */
+	private static String readSources(List<PreparedDefinition.PreparedSource> sources) {
+		final StringBuilder text = new StringBuilder();
+		for (PreparedDefinition.PreparedSource source : sources) {
+			try {
+				text.append(new String(Files.readAllBytes(new File(source.sourceFile).toPath()), "ISO-8859-1"));
+			} catch (IOException e) {
+				return null;
+			}
+			text.append('\n');
+		}
+		// The structure itself may be written through its name, and a macro may
+		// write an attribute given as argument.
+		final String joined = text.toString().replace("\\\r\n", " ").replace("\\\n", " ");
+		return (joined.indexOf("ATTRIBUTE_STRUCT_NAME") >= 0 || ATTR_MACRO.matcher(joined).find()) ? null : joined;
+	}
+
+	/**
+	 * @return true if a type is a scalar of a known size: not an array, a
+	 *         pointer or a string.
+	 */
+	static boolean isScalar(String type) {
+		final String name = type.trim();
+		return name.indexOf('*') < 0 && name.indexOf('[') < 0 && !name.equals("string") && typeSize(name, 4) > 0;
+	}
+
+	/**
+	 * Conservative scan of the sources: an attribute is written if it is
+	 * assigned, incremented, decremented, has its address taken, has an
+	 * element or a member accessed, or is passed to a function, which may
+	 * be a macro.
+	 */
+	static boolean isWritten(String name, String text) {
+		final String attr = "\\bATTR\\s*\\(\\s*" + Pattern.quote(name) + "\\s*\\)";
+		if (Pattern.compile(attr + "\\s*(?:(?:[-+*/%&|^]|<<|>>)?=(?!=)|\\+\\+|--|\\.|->|\\[)"
+				+ "|(?:\\+\\+|--|&)\\s*" + attr + "|,\\s*" + attr).matcher(text).find()) {
+			return true;
+		}
+		final Matcher call = Pattern.compile("\\b(\\w+)\\s*\\(\\s*" + attr).matcher(text);
+		while (call.find()) {
+			if (!KEYWORDS.contains(call.group(1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The C initializer of an attribute value, or null if the value is
+	 *         not a literal.
+	 */
+	private static String initializer(Value value) {
+		if (value instanceof NumberLiteral) {
+			return ((NumberLiteral) value).getValue();
+		} else if (value instanceof StringLiteral) {
+			final String string = ((StringLiteral) value).getValue();
+			return (string.startsWith("\"") && string.endsWith("\"") && string.length() > 1)
+					? string : '"' + string + '"';
+		} else if (value instanceof BooleanLiteral) {
+			return Boolean.parseBoolean(((BooleanLiteral) value).getValue()) ? "1" : "0";
+		} else if (value instanceof NullLiteral) {
+			return "0";
+		}
+		return null;
+	}
+
+	/**
+	 * @return The estimated size of a C type, which is also its alignment, or
+	 *         -1 if unknown.
+	 */
+	static int typeSize(String type, int pointerSize) {
+		String name = type.trim().replaceAll("\\s+", " ");
+		if (name.indexOf('*') >= 0 || name.equals("string")) {
+			return pointerSize;
+		}
+		if (name.indexOf('[') >= 0) {
+			return -1;
+		}
+		name = name.replaceAll("\\b(const|volatile|signed|unsigned) ?", "").trim();
+		if (name.isEmpty() || name.equals("int") || name.equals("int32_t") || name.equals("uint32_t")
+				|| name.equals("float")) {
+			return 4;
+		} else if (name.equals("char") || name.equals("bool") || name.equals("_Bool") || name.equals("int8_t")
+				|| name.equals("uint8_t")) {
+			return 1;
+		} else if (name.equals("short") || name.equals("short int") || name.equals("int16_t")
+				|| name.equals("uint16_t")) {
+			return 2;
+		} else if (name.equals("long long") || name.equals("long long int") || name.equals("int64_t")
+				|| name.equals("uint64_t") || name.equals("double")) {
+			return 8;
+		} else if (name.equals("long") || name.equals("long int") || name.equals("size_t")
+				|| name.equals("intptr_t") || name.equals("uintptr_t") || name.equals("ptrdiff_t")) {
+			return pointerSize;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The estimated size of a structure, with its padding, or -1 if
+	 *         unknown.
+	 */
+	private static int structSize(List<Field> fields) {
+		int offset = 0;
+		int maxAlign = 1;
+		for (Field field : fields) {
+			if (field.size < 0) {
+				return -1;
+			}
+			offset = align(offset, field.size);
+			offset += field.size;
+			maxAlign = Math.max(maxAlign, field.size);
+		}
+		return fields.isEmpty() ? 0 : align(offset, maxAlign);
+	}
+
+	private static int align(int offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compilation wide registry of the bindings of the client interfaces, as
+ * declared by the composite definitions. A client interface of a definition
+ * is statically bound when every instance of the definition met during the
+ * compilation binds it to the same interface of the same primitive
+ * definition; it is unbound when no instance binds it. Otherwise, or when it
+ * is a collection, its calls go through the interface structure.
+ *
+ * The bind headers are rendered from the registry at the generation barrier,
+ * once the whole architecture is loaded, so that they do not depend on the
+ * order the composites were loaded in.
+ */
+public class BindingRegistry {
+	/**
+	 * Key of the registry in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = BindingRegistry.class.getName();
+
+	/**
+	 * The binding of a client interface.
+	 */
+	public static final class Target {
+		final String serverType;
+		final String serverItf;
+
+		Target(String serverType, String serverItf) {
+			this.serverType = serverType;
+			this.serverItf = serverItf;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Target)) {
+				return false;
+			}
+			final Target other = (Target) obj;
+			return serverType.equals(other.serverType) && serverItf.equals(other.serverItf);
+		}
+
+		@Override
+		public int hashCode() {
+			return serverType.hashCode() * 31 + serverItf.hashCode();
+		}
+	}
+
+	/**
+	 * No instance binds the interface.
+	 */
+	static final Target UNBOUND = new Target("", "unbound");
+
+	/**
+	 * The interface is bound differently, through a composite interface, or is
+	 * a collection: calls go through the interface structure.
+	 */
+	static final Target DYNAMIC = new Target("", "dynamic");
+
+	/**
+	 * The client interfaces of a definition and their bindings. The bind header
+	 * of the definition is rendered from it, under its lock.
+	 */
+	public static final class Entry {
+		final String definitionName;
+		final String definitionType;
+		final File bindHeaderFile;
+		final Map<String, ResolvedInterface> interfaces = new LinkedHashMap<String, ResolvedInterface>();
+		final Map<String, Target> targets = new HashMap<String, Target>();
+		/* Changed since its bind header was rendered, guarded by this. */
+		boolean changed = true;
+
+		Entry(String definitionName, String definitionType, File bindHeaderFile) {
+			this.definitionName = definitionName;
+			this.definitionType = definitionType;
+			this.bindHeaderFile = bindHeaderFile;
+		}
+
+		/**
+		 * Register a client interface of the definition.
+		 */
+		synchronized void addInterface(String name, ResolvedInterface resolved) {
+			if (interfaces.put(name, resolved) != resolved) {
+				changed = true;
+			}
+		}
+
+		/**
+		 * Record the binding of a client interface in an instance of the
+		 * definition. Conflicting bindings make the interface dynamic.
+		 */
+		synchronized void bind(String name, Target target) {
+			final Target previous = targets.get(name);
+			if (previous == null) {
+				targets.put(name, target);
+				changed = true;
+			} else if (!previous.equals(target) && previous != DYNAMIC) {
+				targets.put(name, DYNAMIC);
+				changed = true;
+			}
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final AtomicBoolean writerClaimed = new AtomicBoolean();
+
+	/**
+	 * Get the registry of a compilation, creating it on first use.
+	 * @param context The global context of the compilation.
+	 * @return The registry stored in the context.
+	 */
+	public static BindingRegistry get(Map<Object, Object> context) {
+		synchronized (context) {
+			BindingRegistry registry = (BindingRegistry) context.get(CONTEXT_KEY);
+			if (registry == null) {
+				registry = new BindingRegistry();
+				context.put(CONTEXT_KEY, registry);
+			}
+			return registry;
+		}
+	}
+
+	/**
+	 * Get the entry of a definition, creating it on first use.
+	 * @param definitionName The fully qualified name of the definition.
+	 * @param definitionType The C name of the definition.
+	 * @param bindHeaderFile The bind header of the definition.
+	 * @return The entry of the definition.
+	 */
+	public Entry entry(String definitionName, String definitionType, File bindHeaderFile) {
+		Entry entry = entries.get(definitionName);
+		if (entry == null) {
+			final Entry created = new Entry(definitionName, definitionType, bindHeaderFile);
+			entry = entries.putIfAbsent(definitionName, created);
+			if (entry == null) {
+				entry = created;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * @return The entries of every definition met so far.
+	 */
+	public Collection<Entry> entries() {
+		return entries.values();
+	}
+
+	/**
+	 * Claim the rendering of the bind headers at the barriers.
+	 * @return true for the first caller only.
+	 */
+	public boolean claimWriter() {
+		return writerClaimed.compareAndSet(false, true);
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+/**
+ * Renders the build file compiling the sources of a definition.
+ */
+public interface BuildFileWriter {
+
+	/**
+	 * @return The extension of the per definition build files.
+	 */
+	String getExtension();
+
+	/**
+	 * Render the build file of a definition.
+	 * @param prepared The prepared definition.
+	 * @param out The emitter to write in.
+	 */
+	void write(PreparedDefinition prepared, AsciiEmitter out);
+
+	/**
+	 * @return The path of the file holding the project wise flags, relative to
+	 *         the output directory, or null if the backend has none.
+	 */
+	String getFlagsPath();
+
+	/**
+	 * Render the file holding the project wise flags, once per compilation.
+	 * @param flags The project wise compilation flags.
+	 * @param out The emitter to write in.
+	 */
+	void writeFlags(CompilationFlags flags, AsciiEmitter out);
+
+	/**
+	 * @return The path of the top level build file aggregating all the
+	 *         definitions, relative to the output directory, or null if the
+	 *         backend has none.
+	 */
+	String getAggregatePath();
+
+	/**
+	 * Render the head of the top level build file.
+	 * @param flags The project wise compilation flags.
+	 * @param out The emitter to write in.
+	 */
+	void writeAggregateHead(CompilationFlags flags, AsciiEmitter out);
+
+	/**
+	 * Render the entry of a definition in the top level build file.
+	 * @param buildFile The path of the definition build file, relative to the
+	 *          output directory.
+	 * @param out The emitter to write in.
+	 */
+	void writeAggregateEntry(String buildFile, AsciiEmitter out);
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ow2.mind.idl.ast.ArrayOf;
+import org.ow2.mind.idl.ast.ConstantDefinition;
+import org.ow2.mind.idl.ast.EnumDefinition;
+import org.ow2.mind.idl.ast.EnumReference;
+import org.ow2.mind.idl.ast.PointerOf;
+import org.ow2.mind.idl.ast.PrimitiveType;
+import org.ow2.mind.idl.ast.StructDefinition;
+import org.ow2.mind.idl.ast.StructReference;
+import org.ow2.mind.idl.ast.Type;
+import org.ow2.mind.idl.ast.TypeDefReference;
+import org.ow2.mind.idl.ast.TypeDefinition;
+import org.ow2.mind.idl.ast.UnionDefinition;
+import org.ow2.mind.idl.ast.UnionReference;
+
+/**
+ * Renders IDL types as C type strings.
+ * The kind of each AST node class is computed once and then dispatched
+ * through a switch, and the rendered string of each type node is memoized
+ * and interned, so that rendering an already seen type does not allocate.
+ * The strings are memoized per type node instance, in an {@link LruCache}
+ * comparing the nodes by identity: looking a node up neither allocates nor
+ * calls the equals and hashCode of the AST classes. The memoized strings can
+ * be bounded, as they keep the type nodes reachable; the least recently used
+ * ones are then evicted.
+ * Thread safe.
+ */
+public class CTypeRenderer {
+
+	/**
+	 * The kinds of IDL type, in the order they were tested by the original
+	 * instanceof chain (shamelessly copied from OptimCPLChecker).
+	 */
+	enum TypeKind {
+		ENUM_DEFINITION, ENUM_REFERENCE, STRUCT_DEFINITION, STRUCT_REFERENCE, UNION_DEFINITION,
+		UNION_REFERENCE, TYPE_DEFINITION, TYPE_DEF_REFERENCE, CONSTANT_DEFINITION, PRIMITIVE_TYPE,
+		ARRAY_OF, POINTER_OF, UNKNOWN;
+
+		static TypeKind of(Type type) {
+			if (type instanceof EnumDefinition) {
+				return ENUM_DEFINITION;
+			} else if (type instanceof EnumReference) {
+				return ENUM_REFERENCE;
+			} else if (type instanceof StructDefinition) {
+				return STRUCT_DEFINITION;
+			} else if (type instanceof StructReference) {
+				return STRUCT_REFERENCE;
+			} else if (type instanceof UnionDefinition) {
+				return UNION_DEFINITION;
+			} else if (type instanceof UnionReference) {
+				return UNION_REFERENCE;
+			} else if (type instanceof TypeDefinition) {
+				return TYPE_DEFINITION;
+			} else if (type instanceof TypeDefReference) {
+				return TYPE_DEF_REFERENCE;
+			} else if (type instanceof ConstantDefinition) {
+				return CONSTANT_DEFINITION;
+			} else if (type instanceof PrimitiveType) {
+				return PRIMITIVE_TYPE;
+			} else if (type instanceof ArrayOf) {
+				return ARRAY_OF;
+			} else if (type instanceof PointerOf) {
+				return POINTER_OF;
+			} else return UNKNOWN;
+		}
+	}
+
+	private final ConcurrentMap<Class<?>, TypeKind> kinds = new ConcurrentHashMap<Class<?>, TypeKind>();
+
+	private final LruCache<Type, String> rendered = new LruCache<Type, String>(0, true);
+
+	/**
+	 * @param type An IDL type.
+	 * @return The C type string, interned.
+	 */
+	public String render(Type type) {
+		final String typeString = rendered.get(type);
+		if (typeString != null) {
+			return typeString;
+		}
+		// Rendered out of the lock, the nested types are looked up too.
+		return rendered.putIfAbsent(type, doRender(type).intern());
+	}
+
+	/**
+	 * @return The number of memoized type strings.
+	 */
+	public int size() {
+		return rendered.size();
+	}
+
+	/**
+	 * Bound the number of memoized type strings, 0 for no bound.
+	 */
+	public void setCapacity(int capacity) {
+		rendered.setCapacity(capacity);
+	}
+
+	/**
+	 * Forget all memoized type strings.
+	 */
+	public void clear() {
+		rendered.clear();
+	}
+
+	private TypeKind kindOf(Type type) {
+		final Class<?> typeClass = type.getClass();
+		TypeKind kind = kinds.get(typeClass);
+		if (kind == null) {
+			kind = TypeKind.of(type);
+			kinds.putIfAbsent(typeClass, kind);
+		}
+		return kind;
+	}
+
+	private String doRender(Type type) {
+		switch (kindOf(type)) {
+		case ENUM_DEFINITION:
+			return ((EnumDefinition) type).getName();
+		case ENUM_REFERENCE:
+			return ((EnumReference) type).getName();
+		case STRUCT_DEFINITION:
+			return ((StructDefinition) type).getName();
+		case STRUCT_REFERENCE:
+			return ((StructReference) type).getName();
+		case UNION_DEFINITION:
+			return ((UnionDefinition) type).getName();
+		case UNION_REFERENCE:
+			return ((UnionReference) type).getName();
+		case TYPE_DEFINITION:
+			return ((TypeDefinition) type).getName();
+		case TYPE_DEF_REFERENCE:
+			return ((TypeDefReference) type).getName();
+		case CONSTANT_DEFINITION:
+			return ((ConstantDefinition) type).getName();
+		case PRIMITIVE_TYPE:
+			return ((PrimitiveType) type).getName();
+		case ARRAY_OF:
+			// TODO:see IDL2C.stc arrayOfVarName for cleaner handling
+			return render(((ArrayOf) type).getType()) + " * ";
+		case POINTER_OF:
+			return render(((PointerOf) type).getType()) + " * ";
+		default:
+			return ""; // TODO: check even if this should never happen, or raise an error
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The project wise compilation flags of a compilation, resolved once and
+ * shared by all the definitions. Stored in the compilation context.
+ */
+public class CompilationFlags {
+	/**
+	 * Key of the flags in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = CompilationFlags.class.getName();
+
+	final List<String> incPaths;
+	final List<String> cppFlags;
+	final List<String> cFlags;
+	final List<String> inputDirs;
+	private final AtomicBoolean flagsFileClaimed = new AtomicBoolean();
+
+	CompilationFlags(List<String> incPaths, List<String> cppFlags, List<String> cFlags, List<String> inputDirs) {
+		this.incPaths = immutableCopy(incPaths);
+		this.cppFlags = immutableCopy(cppFlags);
+		this.cFlags = immutableCopy(cFlags);
+		this.inputDirs = immutableCopy(inputDirs);
+	}
+
+	private static List<String> immutableCopy(List<String> list) {
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<String>(list));
+	}
+
+	/**
+	 * Claim the writing of the build file holding these flags.
+	 * @return true for the first caller only.
+	 */
+	public boolean claimFlagsFile() {
+		return flagsFileClaimed.compareAndSet(false, true);
+	}
+
+	/**
+	 * @return The project include paths.
+	 */
+	public List<String> getIncPaths() {
+		return incPaths;
+	}
+
+	/**
+	 * @return The project preprocessor flags.
+	 */
+	public List<String> getCPPFlags() {
+		return cppFlags;
+	}
+
+	/**
+	 * @return The project C flags.
+	 */
+	public List<String> getCFlags() {
+		return cFlags;
+	}
+
+	/**
+	 * @return The input resource directories, to be added as include paths.
+	 */
+	public List<String> getInputDirs() {
+		return inputDirs;
+	}
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Index of the inputs and outputs of each generated definition, persisted
+ * across compilations. A record holds, for a definition, the fingerprint of
+ * the options it was generated with, its input files (ADL files of the
+ * definition and its super-definitions, IDL files with the IDLs they import
+ * or extend and the files they include, and scanned source files) with their modification time and size at generation time,
+ * and its generated files, including the headers of its interfaces.
+ * When the index is opened, the input files are checked once each, and the
+ * reverse index from the changed input files to the definitions gives the
+ * definitions to generate again; the others are skipped while their
+ * generated files exist. The index is written at the generation barrier,
+ * atomically through a temporary file, so that an interrupted compilation
+ * leaves the previous index.
+ *
+ * The file is binary and read through a memory mapping: a string table
+ * (int count, then int length and UTF-8 bytes for each string), then the
+ * records, referring to strings by index (int count, then for each record:
+ * name, fingerprint, int count of inputs with path, long time and long size,
+ * then int count of outputs).
+ */
+public class DependencyIndex {
+	/**
+	 * Key of the index in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = DependencyIndex.class.getName();
+
+	private static final int MAGIC = 0x46484958;
+	private static final int VERSION = 1;
+	private static final Charset STRING_CHARSET = Charset.forName("UTF-8");
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	/**
+	 * What a definition was generated from, and what was generated.
+	 */
+	public static final class Record {
+		final String name;
+		final String fingerprint;
+		final String[] inputs;
+		final long[] times;
+		final long[] sizes;
+		final String[] outputs;
+
+		Record(String name, String fingerprint, String[] inputs, long[] times, long[] sizes, String[] outputs) {
+			this.name = name;
+			this.fingerprint = fingerprint;
+			this.inputs = inputs;
+			this.times = times;
+			this.sizes = sizes;
+			this.outputs = outputs;
+		}
+	}
+
+	private final File file;
+	/* The records, guarded by this. */
+	private final Map<String, Record> records = new LinkedHashMap<String, Record>();
+	private final Set<String> affected = new HashSet<String>();
+	private boolean modified;
+
+	private DependencyIndex(File file) {
+		this.file = file;
+		load();
+		final Set<String> changed = new HashSet<String>();
+		final Map<String, Set<String>> inputDefinitions = changedInputs(changed);
+		for (String input : changed) {
+			affected.addAll(inputDefinitions.get(input));
+		}
+		if (!records.isEmpty()) {
+			logger.info(changed.size() + " input files changed, " + affected.size() + " of " + records.size()
+					+ " definitions to generate again.");
+		}
+	}
+
+	/**
+	 * Get the index of a compilation, loading it on first use. It is written
+	 * at each generation barrier, once the generation work is done.
+	 * @param context The global context of the compilation.
+	 * @param file The file of the index.
+	 * @return The index stored in the context.
+	 */
+	public static DependencyIndex get(final Map<Object, Object> context, File file) {
+		synchronized (context) {
+			DependencyIndex index = (DependencyIndex) context.get(CONTEXT_KEY);
+			if (index == null) {
+				index = new DependencyIndex(file);
+				context.put(CONTEXT_KEY, index);
+				final DependencyIndex saved = index;
+				GenerationScheduler.get(context).atBarrier(new Runnable() {
+					public void run() {
+						saved.save();
+					}
+				}, false);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Create the record of a definition about to be generated, with the current
+	 * time and size of its input files.
+	 * @param name The fully qualified name of the definition.
+	 * @param fingerprint The options the definition is generated with.
+	 * @param inputs The input files.
+	 * @param outputs The generated files.
+	 * @return The record, to be put once the files are written.
+	 */
+	public static Record newRecord(String name, String fingerprint, Collection<String> inputs,
+			Collection<File> outputs) {
+		final String[] inputPaths = new String[inputs.size()];
+		final long[] times = new long[inputPaths.length];
+		final long[] sizes = new long[inputPaths.length];
+		int i = 0;
+		for (String input : inputs) {
+			final File inputFile = new File(input).getAbsoluteFile();
+			inputPaths[i] = inputFile.getPath();
+			times[i] = inputFile.lastModified();
+			sizes[i] = inputFile.length();
+			i++;
+		}
+		final String[] outputPaths = new String[outputs.size()];
+		i = 0;
+		for (File output : outputs) {
+			outputPaths[i++] = output.getAbsolutePath();
+		}
+		return new Record(name, fingerprint, inputPaths, times, sizes, outputPaths);
+	}
+
+	/**
+	 * @param name The fully qualified name of a definition.
+	 * @param fingerprint The options the definition is generated with.
+	 * @return The record of the definition if none of its inputs changed since
+	 *         it was generated with the same options, and its generated files
+	 *         still exist, null otherwise.
+	 */
+	public synchronized Record upToDate(String name, String fingerprint) {
+		final Record record = records.get(name);
+		if (record == null || affected.contains(name) || !record.fingerprint.equals(fingerprint)) {
+			return null;
+		}
+		for (String output : record.outputs) {
+			if (!new File(output).isFile()) {
+				return null;
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Record a generated definition.
+	 */
+	public synchronized void put(Record record) {
+		records.put(record.name, record);
+		affected.remove(record.name);
+		modified = true;
+	}
+
+	/**
+	 * Mark a definition to be generated again, after one of its inputs changed.
+	 */
+	public synchronized void invalidate(String name) {
+		affected.add(name);
+	}
+
+	/**
+	 * Check the input files, each file once.
+	 * @param changed Filled with the input files whose time or size changed.
+	 * @return The reverse index, from each input file to the definitions whose
+	 *         record holds another time or size for it.
+	 */
+	private Map<String, Set<String>> changedInputs(Set<String> changed) {
+		final Map<String, long[]> stats = new HashMap<String, long[]>();
+		final Map<String, Set<String>> inputDefinitions = new HashMap<String, Set<String>>();
+		for (Record record : records.values()) {
+			for (int i = 0; i < record.inputs.length; i++) {
+				final String input = record.inputs[i];
+				long[] stat = stats.get(input);
+				if (stat == null) {
+					final File inputFile = new File(input);
+					stat = new long[] { inputFile.lastModified(), inputFile.length() };
+					stats.put(input, stat);
+				}
+				// Definitions generated before and after a change record different times.
+				if (stat[0] != record.times[i] || stat[1] != record.sizes[i]) {
+					changed.add(input);
+					Set<String> names = inputDefinitions.get(input);
+					if (names == null) {
+						names = new HashSet<String>();
+						inputDefinitions.put(input, names);
+					}
+					names.add(record.name);
+				}
+			}
+		}
+		return inputDefinitions;
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		try {
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				final FileChannel channel = raf.getChannel();
+				final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+					return;
+				}
+				final String[] strings = new String[count(buffer, 4)];
+				for (int i = 0; i < strings.length; i++) {
+					final byte[] bytes = new byte[count(buffer, 1)];
+					buffer.get(bytes);
+					strings[i] = new String(bytes, STRING_CHARSET);
+				}
+				final int count = count(buffer, 16);
+				for (int r = 0; r < count; r++) {
+					final String name = strings[buffer.getInt()];
+					final String fingerprint = strings[buffer.getInt()];
+					final String[] inputs = new String[count(buffer, 20)];
+					final long[] times = new long[inputs.length];
+					final long[] sizes = new long[inputs.length];
+					for (int i = 0; i < inputs.length; i++) {
+						inputs[i] = strings[buffer.getInt()];
+						times[i] = buffer.getLong();
+						sizes[i] = buffer.getLong();
+					}
+					final String[] outputs = readStrings(buffer, strings);
+					records.put(name, new Record(name, fingerprint, inputs, times, sizes, outputs));
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			logger.info("Dependency index cannot be read, generating everything.");
+			records.clear();
+		} catch (BufferUnderflowException e) {
+			logger.info("Dependency index is truncated, generating everything.");
+			records.clear();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			logger.info("Dependency index is corrupted, generating everything.");
+			records.clear();
+		}
+	}
+
+	private static String[] readStrings(ByteBuffer buffer, String[] strings) {
+		final String[] values = new String[count(buffer, 4)];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = strings[buffer.getInt()];
+		}
+		return values;
+	}
+
+	/**
+	 * Read a count of elements, checked against the remaining bytes, so that a
+	 * corrupted count does not allocate a huge array.
+	 * @param elementBytes The minimum size of an element.
+	 */
+	private static int count(ByteBuffer buffer, int elementBytes) {
+		final int count = buffer.getInt();
+		if (count < 0 || (long) count * elementBytes > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		return count;
+	}
+
+	/**
+	 * Write the index, if a definition was generated.
+	 */
+	public synchronized void save() {
+		if (!modified) {
+			return;
+		}
+		final Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+		final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(recordBytes);
+		try {
+			out.writeInt(records.size());
+			for (Record record : records.values()) {
+				out.writeInt(stringIndex(indexes, record.name));
+				out.writeInt(stringIndex(indexes, record.fingerprint));
+				out.writeInt(record.inputs.length);
+				for (int i = 0; i < record.inputs.length; i++) {
+					out.writeInt(stringIndex(indexes, record.inputs[i]));
+					out.writeLong(record.times[i]);
+					out.writeLong(record.sizes[i]);
+				}
+				writeStrings(out, indexes, record.outputs);
+			}
+			out.flush();
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(recordBytes.size() + indexes.size() * 64);
+			final DataOutputStream header = new DataOutputStream(bytes);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(indexes.size());
+			for (String string : indexes.keySet()) {
+				final byte[] encoded = string.getBytes(STRING_CHARSET);
+				header.writeInt(encoded.length);
+				header.write(encoded);
+			}
+			recordBytes.writeTo(header);
+			header.flush();
+			FileUpdater.write(file, bytes.toByteArray(), bytes.size(), true);
+			modified = false;
+		} catch (IOException e) {
+			logger.info("Dependency index cannot be written !");
+			e.printStackTrace();
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, Map<String, Integer> indexes, String[] values)
+			throws IOException {
+		out.writeInt(values.length);
+		for (String value : values) {
+			out.writeInt(stringIndex(indexes, value));
+		}
+	}
+
+	private static int stringIndex(Map<String, Integer> indexes, String string) {
+		Integer index = indexes.get(string);
+		if (index == null) {
+			index = indexes.size();
+			indexes.put(string, index);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compilation wide registry of the interface headers already emitted, so that
+ * each of them is written once per compilation whatever the number of
+ * definitions referencing it.
+ */
+public class EmittedHeaderRegistry {
+	/**
+	 * Key of the registry in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = EmittedHeaderRegistry.class.getName();
+
+	private final Set<String> emitted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicInteger skipped = new AtomicInteger();
+
+	/**
+	 * Get the registry of a compilation, creating it on first use.
+	 * @param context The global context of the compilation.
+	 * @return The registry stored in the context.
+	 */
+	public static EmittedHeaderRegistry get(Map<Object, Object> context) {
+		synchronized (context) {
+			EmittedHeaderRegistry registry = (EmittedHeaderRegistry) context.get(CONTEXT_KEY);
+			if (registry == null) {
+				registry = new EmittedHeaderRegistry();
+				context.put(CONTEXT_KEY, registry);
+			}
+			return registry;
+		}
+	}
+
+	/**
+	 * Claim the emission of a header. Only the first caller for a given name
+	 * gets true, the following ones are counted as skipped writes.
+	 * @param name The name of the header, typically an interface signature.
+	 * @return true if the caller must write the header.
+	 */
+	public boolean claim(String name) {
+		if (emitted.add(name)) {
+			return true;
+		}
+		skipped.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Forget a header, so that it is written again on next claim.
+	 * @param name The name of the header.
+	 */
+	public void release(String name) {
+		emitted.remove(name);
+	}
+
+	/**
+	 * @return The number of headers emitted so far.
+	 */
+	public int getEmittedCount() {
+		return emitted.size();
+	}
+
+	/**
+	 * @return The number of writes avoided because the header was already
+	 *         emitted.
+	 */
+	public int getSkippedCount() {
+		return skipped.get();
+	}
+}
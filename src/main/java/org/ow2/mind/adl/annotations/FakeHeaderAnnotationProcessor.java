@@ -35,7 +35,6 @@ import org.ow2.mind.io.BasicOutputFileLocator;
 import org.ow2.mind.adl.annotations.FakeHeaderGenerator;
 
 import com.google.inject.Inject;
-import com.google.inject.Injector;
 
 
 /**
@@ -46,9 +45,10 @@ AbstractADLLoaderAnnotationProcessor {
 
 	/*
 	 * Works because our Loader is itself loaded by Google Guice.
+	 * The generator is bound as a singleton by the FakeHeaderModule.
 	 */
 	@Inject
-	protected Injector injector;
+	protected FakeHeaderGenerator headerWriter;
 
 	/*
 	 * (non-Javadoc)
@@ -65,9 +65,23 @@ AbstractADLLoaderAnnotationProcessor {
 					throws ADLException {
 		assert annotation instanceof FakeHeader;
 
-				// Get instance from the injector so its @Inject fields get properly injected (ADL Loader especially)
-		FakeHeaderGenerator headerWriter = injector.getInstance(FakeHeaderGenerator.class);
-		headerWriter.writeComponentHeaders(definition, context);
+		// In batch mode the definition is generated with the whole architecture.
+		if (FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.BATCH, false)) {
+			GenerationBatch.get(context, headerWriter).record(definition);
+			return null;
+		}
+
+		// Everything coming from the context is gathered here, on the loader thread,
+		// the files themselves may be written by the scheduler executor.
+		final long start = System.nanoTime();
+		final PreparedDefinition prepared = headerWriter.prepareComponentHeaders(definition, context);
+		prepared.prepareNanos = System.nanoTime() - start;
+		GenerationScheduler.get(context).submit(new Runnable() {
+			public void run() {
+				headerWriter.writeComponentHeaders(prepared);
+			}
+		});
+		prepared.metrics.processAnnotation.record(System.nanoTime() - start);
 
 		return null;
 	}
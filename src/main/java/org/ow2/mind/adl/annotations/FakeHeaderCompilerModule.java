@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import org.ow2.mind.compilation.BasicCompilationCommandExecutor;
+import org.ow2.mind.compilation.CompilationCommandExecutor;
+import org.ow2.mind.inject.AbstractMindModule;
+
+import com.google.inject.name.Names;
+
+/**
+ * Overrides the compilation commands executor of the common frontend, so
+ * that the {@link GenerationBarrier} is passed before the C compilation.
+ */
+public class FakeHeaderCompilerModule extends AbstractMindModule {
+	protected void configureCompilationCommandExecutor() {
+		bind(CompilationCommandExecutor.class).to(GenerationBarrier.class);
+		bind(CompilationCommandExecutor.class).annotatedWith(Names.named(GenerationBarrier.DELEGATE)).to(
+				BasicCompilationCommandExecutor.class);
+	}
+}
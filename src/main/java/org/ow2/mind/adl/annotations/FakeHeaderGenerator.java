@@ -23,18 +23,29 @@
 package org.ow2.mind.adl.annotations;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.Definition;
 import org.objectweb.fractal.adl.Loader;
+import org.objectweb.fractal.adl.Node;
+import org.objectweb.fractal.adl.bindings.Binding;
+import org.objectweb.fractal.adl.bindings.BindingContainer;
+import org.objectweb.fractal.adl.components.Component;
+import org.objectweb.fractal.adl.components.ComponentContainer;
 import org.objectweb.fractal.adl.interfaces.Interface;
 import org.objectweb.fractal.adl.interfaces.InterfaceContainer;
 import org.objectweb.fractal.adl.types.TypeInterface;
@@ -49,26 +60,15 @@ import org.ow2.mind.adl.ast.MindInterface;
 import org.ow2.mind.adl.ast.Source;
 import org.ow2.mind.adl.implementation.ImplementationLocator;
 import org.ow2.mind.compilation.CompilerContextHelper;
-import org.ow2.mind.idl.ast.ArrayOf;
-import org.ow2.mind.idl.ast.ConstantDefinition;
-import org.ow2.mind.idl.ast.EnumDefinition;
-import org.ow2.mind.idl.ast.EnumReference;
 import org.ow2.mind.idl.ast.IDL;
 import org.ow2.mind.idl.ast.Include;
 import org.ow2.mind.idl.ast.IncludeContainer;
 import org.ow2.mind.idl.ast.InterfaceDefinition;
 import org.ow2.mind.idl.ast.Method;
 import org.ow2.mind.idl.ast.Parameter;
-import org.ow2.mind.idl.ast.PointerOf;
-import org.ow2.mind.idl.ast.PrimitiveType;
-import org.ow2.mind.idl.ast.StructDefinition;
-import org.ow2.mind.idl.ast.StructReference;
 import org.ow2.mind.idl.ast.Type;
 import org.ow2.mind.idl.ast.TypeCollectionContainer;
-import org.ow2.mind.idl.ast.TypeDefReference;
 import org.ow2.mind.idl.ast.TypeDefinition;
-import org.ow2.mind.idl.ast.UnionDefinition;
-import org.ow2.mind.idl.ast.UnionReference;
 import org.ow2.mind.io.OutputFileLocator;
 import org.ow2.mind.InputResourceLocator;
 import org.ow2.mind.PathHelper;
@@ -105,25 +105,100 @@ public class FakeHeaderGenerator {
 
 	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
 
+	/*
+	 * The generator is a singleton (see FakeHeaderModule) used concurrently by
+	 * the generation tasks, it only holds thread safe caches of derived data.
+	 */
+	private final CTypeRenderer typeRenderer = new CTypeRenderer();
+	private final BuildFileWriter makefileWriter = new MakefileWriter();
+	private final BuildFileWriter ninjaWriter = new NinjaWriter();
+	private final LruCache<String, String> cNames = new LruCache<String, String>(0);
+	private final LruCache<String, String> guardMacros = new LruCache<String, String>(0);
+
 	/**
-	 * Generate a Path-like string for an header file to be generated from an interface. 
-	 * @param itf The interface to use as reference.
-	 * @return The Path-like string of the header file.
+	 * Resolve the IDL of an interface through the compilation wide cache. The
+	 * IDL is loaded and its derived data rendered only the first time its
+	 * signature is met during the compilation.
+	 * @param itf The interface to resolve.
+	 * @param context The global context of the compilation.
+	 * @return The resolved interface, or null if the IDL cannot be loaded.
 	 */
-	private String itf2h(MindInterface itf, Map<Object, Object> context){
-		String headerFileName = null;
+	private ResolvedInterface resolve(MindInterface itf, Map<Object, Object> context) {
+		final IDLResolutionCache cache = IDLResolutionCache.get(context);
+		final ResolvedInterface cached = cache.get(itf.getSignature());
+		if (cached != null) {
+			return cached;
+		}
 		try {
+			final long start = System.nanoTime();
 			IDL idl = idlLoaderItf.load(itf.getSignature(), context);
+			generationMetrics(context).idlLoad.record(System.nanoTime() - start);
+			String headerFileName;
 			if (idl.getName().startsWith("/")) { //FIXME : Why this really needed ???
 				headerFileName = PathHelper.replaceExtension(idl.getName(), ".itf.h");
 			} else {
-				headerFileName = PathHelper.fullyQualifiedNameToPath(idl.getName(), ".itf.h");		
+				headerFileName = PathHelper.fullyQualifiedNameToPath(idl.getName(), ".itf.h");
 			}
+			List<ResolvedInterface.MethodPrototype> prototypes = new ArrayList<ResolvedInterface.MethodPrototype>();
+			if (idl instanceof InterfaceDefinition) {
+				Method[] meths = ((InterfaceDefinition)idl).getMethods();
+				if (meths != null) {
+					for (Method meth : meths) {
+						prototypes.add(new ResolvedInterface.MethodPrototype(typeToString(meth.getType()),
+								meth.getName(), cFunctionParameters(meth.getParameters())));
+					}
+				}
+			}
+			// The types defined in the interface header.
+			final List<String> typeNames = new ArrayList<String>();
+			if (idl instanceof TypeCollectionContainer) {
+				for (final Type type : ((TypeCollectionContainer) idl).getTypes()) {
+					if (type instanceof TypeDefinition) {
+						typeNames.add(typeToString(type));
+					}
+				}
+			}
+			return cache.put(new ResolvedInterface(itf.getSignature(), idl,
+					headerFileName.substring(1), itf2type(itf), prototypes, typeNames));
 		} catch (ADLException e) {
 			logger.info("interface " + itf.getName() + " cannot be loaded !");
 			e.printStackTrace();
 		}
-		return headerFileName.substring(1);
+		return null;
+	}
+
+	/**
+	 * Get the project wise compilation flags, resolved once per compilation.
+	 * @param context The global context of the compilation.
+	 * @return The flags.
+	 */
+	private CompilationFlags compilationFlags(Map<Object, Object> context) {
+		synchronized (context) {
+			CompilationFlags flags = (CompilationFlags) context.get(CompilationFlags.CONTEXT_KEY);
+			if (flags != null) {
+				return flags;
+			}
+			// The include paths
+			final List<String> inputDirs = new ArrayList<String>();
+			final URL[] inputResourceRoots = inputResourceLocatorItf.getInputResourcesRoot(context);
+			if (inputResourceRoots != null) {
+				for (final URL inputResourceRoot : inputResourceRoots) {
+					File inputDir;
+					try {
+						inputDir = new File(inputResourceRoot.toURI());
+						if (inputDir.isDirectory()) {
+							inputDirs.add(inputDir.getPath());
+						}
+					} catch (URISyntaxException e) {
+						inputDirs.add(inputResourceRoot.getPath());
+					}
+				}
+			}
+			flags = new CompilationFlags(CompilerContextHelper.getIncPath(context),
+					CompilerContextHelper.getCPPFlags(context), CompilerContextHelper.getCFlags(context), inputDirs);
+			context.put(CompilationFlags.CONTEXT_KEY, flags);
+			return flags;
+		}
 	}
 
 	/**
@@ -136,79 +211,965 @@ public class FakeHeaderGenerator {
 	 * @param context The global context of the compilation.
 	 */
 	public void writeComponentHeaders(Definition definition, Map<Object, Object> context) {
+		writeComponentHeaders(prepareComponentHeaders(definition, context));
+	}
+
+	/**
+	 * Gather from the compilation context everything needed to generate the
+	 * headers of a component definition: resolved IDLs, output files, source
+	 * locations and compilation flags. This must run on the ADL loader thread.
+	 * 
+	 * @param definition The definition to generate header for.
+	 * @param context The global context of the compilation.
+	 * @return The prepared definition, to be passed to
+	 *         {@link #writeComponentHeaders(PreparedDefinition)}.
+	 */
+	public PreparedDefinition prepareComponentHeaders(Definition definition, Map<Object, Object> context) {
+		final PreparedDefinition prepared = new PreparedDefinition(definition,
+				FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.WRITE_IF_CHANGED, false),
+				EmittedHeaderRegistry.get(context));
+		prepared.metrics = generationMetrics(context);
+		prepared.output = GenerationScheduler.get(context).getOutputWriter();
+		prepared.streaming = FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.STREAMING, false);
+		boundCaches(context);
+		registerBindHeaders(prepared, context);
+		// The File for the header corresponding to the definition.
+		final String adlPath = PathHelper.fullyQualifiedNameToPath(definition.getName(), "adl.h");
+		prepared.adlHeaderFile = outputFileLocatorItf.getCSourceOutputFile(adlPath, context);
+		prepared.adlHeader = adlPath.substring(1);
+		prepared.precompiledHeader = FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.PRECOMPILED_HEADER, false);
+		prepared.attributeLayout = FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.ATTRIBUTE_LAYOUT, false);
+		prepared.constAttributes = prepared.attributeLayout
+				&& FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.CONST_ATTRIBUTES, false);
+		prepared.pointerSize = FakeHeaderOptions.getInt(context, FakeHeaderOptions.POINTER_SIZE, 4);
+		// The project wise compilation flags
+		prepared.compilationFlags = compilationFlags(context);
+		// The File for the build file (Makefile by default) for this definition.
+		prepared.buildWriter = buildFileWriter(context);
+		final String buildPath = PathHelper.fullyQualifiedNameToPath(definition.getName(),
+				prepared.buildWriter.getExtension());
+		prepared.buildFile = outputFileLocatorItf.getCSourceOutputFile(buildPath, context);
+
+		// A primitive definition whose inputs did not change since the previous
+		// compilation is skipped, without loading its IDLs, if its generated files
+		// are still there, or restored from the persistent cache.
+		final DependencyIndex index = dependencyIndex(context);
+		final HeaderCache cache = headerCache(context);
+		final HeaderWatcher watcher = headerWatcher(context);
+		final String key = (definition instanceof ComponentContainer) ? null : cacheKey(prepared, context);
+		if (index != null && key != null) {
+			final DependencyIndex.Record record = index.upToDate(definition.getName(), key);
+			if (record != null) {
+				prepared.metrics.definitionsUpToDate.incrementAndGet();
+				prepared.cachedArtifacts = Collections.emptyList();
+				prepareReuse(prepared, buildPath, Arrays.asList(record.inputs), watcher, context);
+				return prepared;
+			}
+		}
+		if (cache != null && key != null) {
+			final List<String> cachedDependencies = new ArrayList<String>();
+			prepared.cachedArtifacts = cache.lookup(key, cachedDependencies);
+			if (prepared.cachedArtifacts != null) {
+				prepared.metrics.definitionsRestored.incrementAndGet();
+				final List<File> outputs = new ArrayList<File>();
+				for (HeaderCache.Artifact artifact : prepared.cachedArtifacts) {
+					artifact.outputFile = outputFileLocatorItf.getCSourceOutputFile(artifact.path, context);
+					outputs.add(artifact.outputFile);
+				}
+				if (index != null) {
+					prepared.index = index;
+					prepared.indexRecord = DependencyIndex.newRecord(definition.getName(), key, cachedDependencies,
+							outputs);
+				}
+				prepareReuse(prepared, buildPath, cachedDependencies, watcher, context);
+				return prepared;
+			}
+			prepared.cache = cache;
+			prepared.cacheKey = key;
+		}
+
+		// Interfaces, with their IDL resolved.
+		if (definition instanceof InterfaceContainer) {
+			for (Interface itf : ((InterfaceContainer) definition).getInterfaces()) {
+				MindInterface mindItf = (MindInterface) itf;
+				final ResolvedInterface resolved = resolve(mindItf, context);
+				if (resolved == null) continue;
+				final File headerFile = outputFileLocatorItf.getCSourceOutputFile(
+						PathHelper.fullyQualifiedNameToPath(mindItf.getSignature(), "itf.h"), context);
+				if (mindItf.getRole().equals(TypeInterface.SERVER_ROLE)) {
+					prepared.serverInterfaces.add(new PreparedDefinition.PreparedInterface(mindItf, resolved, headerFile));
+				} else if (mindItf.getRole().equals(TypeInterface.CLIENT_ROLE)) {
+					prepared.clientInterfaces.add(new PreparedDefinition.PreparedInterface(mindItf, resolved, headerFile));
+				}
+			}
+		}
+
+		// The constant tables of the server interfaces, defined once in their own source.
+		for (PreparedDefinition.PreparedInterface server : prepared.serverInterfaces) {
+			if (hasInterfaceTable(server.itf, server.resolved)) {
+				final String tablesPath = PathHelper.fullyQualifiedNameToPath(definition.getName(), "tables.c");
+				prepared.tablesFile = outputFileLocatorItf.getCSourceOutputFile(tablesPath, context);
+				prepared.tablesSource = tablesPath.substring(1);
+				prepared.tablesObject = prepared.tablesSource.substring(0, prepared.tablesSource.length() - 2) + ".o";
+				break;
+			}
+		}
+
+		// The bindings of the client interfaces, rendered in the bind header of the
+		// definition, and the ones a composite declares for its sub-components.
+		if (!prepared.clientInterfaces.isEmpty()) {
+			prepared.bindHeader = PathHelper.fullyQualifiedNameToPath(definition.getName(), "bind.h").substring(1);
+			prepared.bindHeaderFile = bindingEntry(definition, context).bindHeaderFile;
+		}
+		prepareBindings(definition, prepared, context);
+
+		// Sources, located, with their compilation flags.
+		prepareSources(definition, prepared, context);
+
+		// The amalgamated source, if the sources are compiled as a unity build.
+		prepareUnity(prepared, context);
+
+		// The flags of the precompiled adl header, if the sources share them.
+		preparePrecompiledHeader(prepared);
+
+		// The interface fragments, if the sources only include what they use.
+		prepareFragments(prepared, context);
+
+		// What the cache entry of the definition depends on and holds.
+		if (prepared.cacheKey != null && !prepareCacheEntry(prepared, adlPath, buildPath, context)) {
+			prepared.cacheKey = null;
+		}
+
+		registerBuildFile(prepared, buildPath, context);
+
+		// Record the input files, to skip or regenerate the definition when they change.
+		if (index != null || watcher != null) {
+			final Set<String> files = new LinkedHashSet<String>();
+			final boolean complete = inputFiles(prepared, files, context);
+			if (index != null && key != null && complete) {
+				prepared.index = index;
+				prepared.indexRecord = DependencyIndex.newRecord(definition.getName(), key, files,
+						outputFiles(prepared));
+			}
+			if (watcher != null) {
+				watcher.register(definition.getName(), files, signatures(definition));
+			}
+		}
+		return prepared;
+	}
+
+	/**
+	 * Prepare a definition whose generated files are up to date or restored from
+	 * the cache: only its bind header and its build file registration are
+	 * generated in this compilation.
+	 */
+	private void prepareReuse(PreparedDefinition prepared, String buildPath, List<String> inputFiles,
+			HeaderWatcher watcher, Map<Object, Object> context) {
+		final Definition definition = prepared.definition;
+		if (hasClientInterface(definition)) {
+			// Its bind header is not reused, the bindings are those of this compilation.
+			prepared.bindHeaderFile = BindingRegistry.get(context).entry(definition.getName(), def2type(definition),
+					outputFileLocatorItf.getCSourceOutputFile(
+							PathHelper.fullyQualifiedNameToPath(definition.getName(), "bind.h"), context)).bindHeaderFile;
+		}
+		registerBuildFile(prepared, buildPath, context);
+		if (watcher != null) {
+			watcher.register(definition.getName(), inputFiles, signatures(definition));
+		}
+	}
+
+	/**
+	 * @return The files generated for a definition, including the headers of
+	 *         its interfaces.
+	 */
+	private static List<File> outputFiles(PreparedDefinition prepared) {
+		final List<File> files = new ArrayList<File>();
+		files.add(prepared.adlHeaderFile);
+		for (PreparedDefinition.PreparedSource source : prepared.sources) {
+			files.add(source.headerFile);
+		}
+		for (PreparedDefinition.PreparedInterface itf : prepared.serverInterfaces) {
+			files.add(itf.headerFile);
+		}
+		for (PreparedDefinition.PreparedInterface itf : prepared.clientInterfaces) {
+			files.add(itf.headerFile);
+		}
+		for (PreparedDefinition.PreparedInterface itf : fragments(prepared)) {
+			files.add(itf.fragmentFile);
+		}
+		if (prepared.tablesFile != null) {
+			files.add(prepared.tablesFile);
+		}
+		if (prepared.unityFile != null) {
+			files.add(prepared.unityFile);
+		}
+		files.add(prepared.buildFile);
+		return files;
+	}
+
+	/**
+	 * @return The interfaces of a definition having a fragment.
+	 */
+	private static List<PreparedDefinition.PreparedInterface> fragments(PreparedDefinition prepared) {
+		final List<PreparedDefinition.PreparedInterface> fragments = new ArrayList<PreparedDefinition.PreparedInterface>();
+		for (PreparedDefinition.PreparedInterface itf : prepared.serverInterfaces) {
+			if (itf.fragmentFile != null) {
+				fragments.add(itf);
+			}
+		}
+		for (PreparedDefinition.PreparedInterface itf : prepared.clientInterfaces) {
+			if (itf.fragmentFile != null) {
+				fragments.add(itf);
+			}
+		}
+		return fragments;
+	}
+
+	/**
+	 * Write the file of the project wise flags, once per compilation, and
+	 * register the build file of a definition in the top level one, if the
+	 * backend has them.
+	 */
+	private void registerBuildFile(PreparedDefinition prepared, String buildPath, Map<Object, Object> context) {
+		// Write the project wise flags once per compilation, if the backend has a file for them.
+		final String flagsPath = prepared.buildWriter.getFlagsPath();
+		if (flagsPath != null && prepared.compilationFlags.claimFlagsFile()) {
+			try {
+				final AsciiEmitter flagsPrinter = new AsciiEmitter(
+						outputFileLocatorItf.getCSourceOutputFile(flagsPath, context), prepared.writeIfChanged);
+				prepared.buildWriter.writeFlags(prepared.compilationFlags, flagsPrinter);
+				commit(flagsPrinter, prepared);
+			} catch (IOException e) {
+				logger.info("Compilation flags file cannot be written !");
+				e.printStackTrace();
+				prepared.output.failed(e);
+			}
+		}
+
+		// Register the build file in the top level one, if the backend has any.
+		final String aggregatePath = prepared.buildWriter.getAggregatePath();
+		if (aggregatePath != null) {
+			AggregateBuildFile.get(context, outputFileLocatorItf.getCSourceOutputFile(aggregatePath, context))
+			.add(prepared.buildWriter, prepared, buildPath.substring(1));
+		}
+	}
+
+	/**
+	 * Get the persistent cache, if enabled by the {@link FakeHeaderOptions#CACHE}
+	 * option.
+	 */
+	private HeaderCache headerCache(Map<Object, Object> context) {
+		if (!FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.CACHE, false)) {
+			return null;
+		}
+		final long maxBytes = FakeHeaderOptions.getInt(context, FakeHeaderOptions.CACHE_SIZE, 256) * 1024L * 1024L;
+		return HeaderCache.get(context, outputFileLocatorItf.getCSourceOutputFile("/.fakeheader-cache", context),
+				maxBytes);
+	}
+
+	/**
+	 * Get the metrics of the compilation, summarized at exit if enabled by the
+	 * {@link FakeHeaderOptions#METRICS} option.
+	 */
+	private GenerationMetrics generationMetrics(Map<Object, Object> context) {
+		return GenerationMetrics.get(context,
+				FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.METRICS, false)
+						? outputFileLocatorItf.getCSourceOutputFile("/fakeheader-metrics.json", context) : null);
+	}
+
+	/**
+	 * Get the index of the input and generated files, if enabled by the
+	 * {@link FakeHeaderOptions#INCREMENTAL} option.
+	 */
+	private DependencyIndex dependencyIndex(Map<Object, Object> context) {
+		if (!FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.INCREMENTAL, false)) {
+			return null;
+		}
+		return DependencyIndex.get(context, outputFileLocatorItf.getCSourceOutputFile("/.fakeheader-index", context));
+	}
+
+	/**
+	 * Get the watcher of the input files, if enabled by the
+	 * {@link FakeHeaderOptions#WATCH} option.
+	 */
+	private HeaderWatcher headerWatcher(Map<Object, Object> context) {
+		if (!FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.WATCH, false)) {
+			return null;
+		}
+		return HeaderWatcher.get(context, this);
+	}
+
+	/**
+	 * The key of the cache entry of a definition: the generator version, the
+	 * definition name, the options changing the generated files and the project
+	 * wise flags. The content of the input files is checked through the
+	 * manifest of the entry.
+	 */
+	private String cacheKey(PreparedDefinition prepared, Map<Object, Object> context) {
+		final StringBuilder inputs = new StringBuilder(HeaderCache.generatorVersion()).append('\n');
+		inputs.append(prepared.definition.getName()).append('\n');
+		for (String option : new String[] { FakeHeaderOptions.BUILD_BACKEND, FakeHeaderOptions.PRECOMPILED_HEADER,
+				FakeHeaderOptions.UNITY, FakeHeaderOptions.ATTRIBUTE_LAYOUT, FakeHeaderOptions.CONST_ATTRIBUTES,
+				FakeHeaderOptions.POINTER_SIZE, FakeHeaderOptions.MINIMAL_INCLUDES }) {
+			inputs.append(option).append('=').append(FakeHeaderOptions.getString(context, option, "")).append('\n');
+		}
+		final CompilationFlags flags = prepared.compilationFlags;
+		inputs.append(flags.incPaths).append('\n').append(flags.cppFlags).append('\n');
+		inputs.append(flags.cFlags).append('\n').append(flags.inputDirs).append('\n');
+		return HeaderCache.key(inputs.toString());
+	}
+
+	/**
+	 * Record the input files of a definition and the files generated for it.
+	 * @return false if an input file is unknown, so that the definition cannot
+	 *         be cached.
+	 */
+	private boolean prepareCacheEntry(PreparedDefinition prepared, String adlPath, String buildPath,
+			Map<Object, Object> context) {
+		final Set<String> dependencies = new LinkedHashSet<String>();
+		if (!inputFiles(prepared, dependencies, context)) {
+			return false;
+		}
+		prepared.cacheDependencies.addAll(dependencies);
+		// The interface headers are cached in entries of their own.
+		for (PreparedDefinition.PreparedInterface itf : prepared.serverInterfaces) {
+			prepared.cacheUses.add(HeaderCache.interfaceKey(itf.itf.getSignature()));
+		}
+		for (PreparedDefinition.PreparedInterface itf : prepared.clientInterfaces) {
+			prepared.cacheUses.add(HeaderCache.interfaceKey(itf.itf.getSignature()));
+		}
+
+		prepared.cacheOutputs.put(adlPath, prepared.adlHeaderFile);
+		for (PreparedDefinition.PreparedSource source : prepared.sources) {
+			prepared.cacheOutputs.put(source.implHeader, source.headerFile);
+		}
+		for (PreparedDefinition.PreparedInterface itf : fragments(prepared)) {
+			prepared.cacheOutputs.put("/" + itf.fragmentPath, itf.fragmentFile);
+		}
+		if (prepared.tablesFile != null) {
+			prepared.cacheOutputs.put("/" + prepared.tablesSource, prepared.tablesFile);
+		}
+		if (prepared.unityFile != null) {
+			prepared.cacheOutputs.put("/" + prepared.unitySource, prepared.unityFile);
+		}
+		prepared.cacheOutputs.put(buildPath, prepared.buildFile);
+		return true;
+	}
+
+	/**
+	 * Collect the input files a definition is generated from: the ADL files of
+	 * the definition and of its super-definitions, every file its merged AST
+	 * was read from, the IDL files of its interfaces with the IDLs they import
+	 * or extend and the files they include, and its sources when the attribute
+	 * layout or the minimal include mode scans them.
+	 * @return false if one of them is unknown.
+	 */
+	private boolean inputFiles(PreparedDefinition prepared, Set<String> files, Map<Object, Object> context) {
+		final Definition definition = prepared.definition;
+		boolean complete = true;
+		final String adlFile = HeaderCache.sourceFile(definition);
+		if (adlFile != null) {
+			files.add(adlFile);
+		} else {
+			complete = false;
+		}
+		final List<Node> nodes = new ArrayList<Node>();
+		if (definition instanceof InterfaceContainer) {
+			nodes.addAll(Arrays.asList(((InterfaceContainer) definition).getInterfaces()));
+		}
+		if (definition instanceof AttributeContainer && ((AttributeContainer) definition).getAttributes() != null) {
+			nodes.addAll(Arrays.asList(((AttributeContainer) definition).getAttributes()));
+		}
+		if (definition instanceof ImplementationContainer) {
+			nodes.add(((ImplementationContainer) definition).getData());
+			if (((ImplementationContainer) definition).getSources() != null) {
+				nodes.addAll(Arrays.asList(((ImplementationContainer) definition).getSources()));
+			}
+		}
+		for (Node node : nodes) {
+			final String file = HeaderCache.sourceFile(node);
+			if (file != null) {
+				files.add(file);
+			}
+		}
+		TransitiveInputs.sources(definition, files);
+		if (!superDefinitionFiles(definition, files, new HashSet<String>(), context)) {
+			complete = false;
+		}
+		final List<PreparedDefinition.PreparedInterface> interfaces = new ArrayList<PreparedDefinition.PreparedInterface>();
+		interfaces.addAll(prepared.serverInterfaces);
+		interfaces.addAll(prepared.clientInterfaces);
+		for (PreparedDefinition.PreparedInterface itf : interfaces) {
+			final List<String> idlFiles = idlFiles(itf.resolved, prepared.compilationFlags, context);
+			if (idlFiles != null) {
+				files.addAll(idlFiles);
+			} else {
+				complete = false;
+			}
+		}
+		if (prepared.constAttributes || prepared.minimalIncludes) {
+			for (PreparedDefinition.PreparedSource source : prepared.sources) {
+				files.add(source.sourceFile);
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * Collect the files of the super-definitions of a definition, loading them.
+	 * @return false if one of them cannot be loaded or its file is unknown.
+	 */
+	private boolean superDefinitionFiles(Definition definition, Set<String> files, Set<String> visited,
+			Map<Object, Object> context) {
+		boolean complete = true;
+		for (String name : TransitiveInputs.references(definition, TransitiveInputs.EXTENDS)) {
+			if (!visited.add(name)) {
+				continue;
+			}
+			try {
+				final Definition superDefinition = adlLoaderItf.load(name, context);
+				final String file = HeaderCache.sourceFile(superDefinition);
+				if (file == null) {
+					complete = false;
+				}
+				TransitiveInputs.sources(superDefinition, files);
+				complete &= superDefinitionFiles(superDefinition, files, visited, context);
+			} catch (ADLException e) {
+				logger.fine("Super-definition " + name + " of " + definition.getName() + " cannot be loaded.");
+				complete = false;
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * The files an interface is resolved from, collected once per IDL: the IDL
+	 * file, the IDLs it imports or extends, transitively, and the headers and
+	 * IDL type files it includes.
+	 * @return The files, null if the IDL file is unknown.
+	 */
+	private List<String> idlFiles(ResolvedInterface resolved, CompilationFlags flags, Map<Object, Object> context) {
+		List<String> files = resolved.getInputFiles();
+		if (files == null) {
+			if (HeaderCache.sourceFile(resolved.getIdl()) == null) {
+				return null;
+			}
+			final Set<String> collected = new LinkedHashSet<String>();
+			collected.add(HeaderCache.sourceFile(resolved.getIdl()));
+			collectIdlFiles(resolved.getIdl(), collected, new HashSet<String>(), flags.getInputDirs(), context);
+			resolved.setInputFiles(new ArrayList<String>(collected));
+			files = resolved.getInputFiles();
+		}
+		return files;
+	}
+
+	private void collectIdlFiles(IDL idl, Set<String> files, Set<String> visited, List<String> inputDirs,
+			Map<Object, Object> context) {
+		TransitiveInputs.sources(idl, files);
+		TransitiveInputs.includes(idl, inputDirs, files);
+		for (String name : TransitiveInputs.references(idl, TransitiveInputs.IMPORT, TransitiveInputs.EXTENDS)) {
+			if (!visited.add(name)) {
+				continue;
+			}
+			try {
+				collectIdlFiles(idlLoaderItf.load(name, context), files, visited, inputDirs, context);
+			} catch (ADLException e) {
+				logger.fine("IDL " + name + " referenced by " + idl.getName() + " cannot be loaded.");
+			}
+		}
+	}
+
+	/**
+	 * @return The signatures of the interfaces of a definition, without loading
+	 *         their IDL.
+	 */
+	private static List<String> signatures(Definition definition) {
+		final List<String> signatures = new ArrayList<String>();
+		if (definition instanceof InterfaceContainer) {
+			for (Interface itf : ((InterfaceContainer) definition).getInterfaces()) {
+				signatures.add(((MindInterface) itf).getSignature());
+			}
+		}
+		return signatures;
+	}
+
+	/**
+	 * @return true if a definition has client interfaces, without loading
+	 *         their IDL.
+	 */
+	private static boolean hasClientInterface(Definition definition) {
+		if (definition instanceof InterfaceContainer) {
+			for (Interface itf : ((InterfaceContainer) definition).getInterfaces()) {
+				if (((MindInterface) itf).getRole().equals(TypeInterface.CLIENT_ROLE)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Restore the files of a definition from the persistent cache. The shared
+	 * interface headers are only restored by the first definition claiming
+	 * them.
+	 */
+	private void restoreCachedFiles(PreparedDefinition prepared) {
+		for (HeaderCache.Artifact artifact : prepared.cachedArtifacts) {
+			if (artifact.claim != null && !prepared.emittedHeaders.claim(artifact.claim)) {
+				continue;
+			}
+			try {
+				prepared.output.write(artifact.outputFile, artifact.content, prepared.writeIfChanged, prepared.metrics);
+			} catch (IOException e) {
+				if (artifact.claim != null) {
+					prepared.emittedHeaders.release(artifact.claim);
+				}
+				logger.info("Cached file " + artifact.path + " cannot be restored !");
+				e.printStackTrace();
+				prepared.output.failed(e);
+			}
+		}
+	}
+
+	/**
+	 * Get the binding registry entry of a definition, with its client
+	 * interfaces registered.
+	 */
+	private BindingRegistry.Entry bindingEntry(Definition definition, Map<Object, Object> context) {
+		final BindingRegistry.Entry entry = BindingRegistry.get(context).entry(definition.getName(),
+				def2type(definition), outputFileLocatorItf.getCSourceOutputFile(
+						PathHelper.fullyQualifiedNameToPath(definition.getName(), "bind.h"), context));
+		if (definition instanceof InterfaceContainer) {
+			for (Interface itf : ((InterfaceContainer) definition).getInterfaces()) {
+				final MindInterface mindItf = (MindInterface) itf;
+				if (mindItf.getRole().equals(TypeInterface.CLIENT_ROLE)) {
+					final ResolvedInterface resolved = resolve(mindItf, context);
+					if (resolved != null) {
+						entry.addInterface(mindItf.getName(), resolved);
+					}
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Record in the binding registry how a composite definition binds the
+	 * client interfaces of its sub-components. Only bindings to a server
+	 * interface of a primitive sibling are static: bindings through the
+	 * composite interfaces and collections are left dynamic.
+	 */
+	private void prepareBindings(Definition definition, PreparedDefinition prepared, Map<Object, Object> context) {
+		if (!(definition instanceof ComponentContainer)) {
+			return;
+		}
+		final Map<String, Definition> subDefinitions = new LinkedHashMap<String, Definition>();
+		for (Component component : ((ComponentContainer) definition).getComponents()) {
+			try {
+				final Definition subDefinition = ASTHelper.getResolvedComponentDefinition(component, adlLoaderItf, context);
+				if (subDefinition != null) {
+					subDefinitions.put(component.getName(), subDefinition);
+				}
+			} catch (ADLException e) {
+				logger.info("Sub-component " + component.getName() + " cannot be loaded, its bindings are left dynamic !");
+				e.printStackTrace();
+			}
+		}
+		final Map<String, String> bindings = new HashMap<String, String>();
+		if (definition instanceof BindingContainer) {
+			final Binding[] declared = ((BindingContainer) definition).getBindings();
+			if (declared != null) {
+				for (Binding binding : declared) {
+					bindings.put(binding.getFrom(), binding.getTo());
+				}
+			}
+		}
+		for (Map.Entry<String, Definition> sub : subDefinitions.entrySet()) {
+			final Definition subDefinition = sub.getValue();
+			if (!(subDefinition instanceof InterfaceContainer)) {
+				continue;
+			}
+			final BindingRegistry.Entry entry = bindingEntry(subDefinition, context);
+			for (Interface itf : ((InterfaceContainer) subDefinition).getInterfaces()) {
+				final MindInterface mindItf = (MindInterface) itf;
+				if (!mindItf.getRole().equals(TypeInterface.CLIENT_ROLE)) {
+					continue;
+				}
+				BindingRegistry.Target target;
+				final String to = bindings.get(sub.getKey() + "." + mindItf.getName());
+				if ("collection".equals(mindItf.getCardinality())) {
+					target = BindingRegistry.DYNAMIC;
+				} else if (to == null) {
+					target = BindingRegistry.UNBOUND;
+				} else {
+					final int dot = to.lastIndexOf('.');
+					final Definition serverDefinition = (dot > 0) ? subDefinitions.get(to.substring(0, dot)) : null;
+					final String serverItf = to.substring(dot + 1);
+					if (serverDefinition == null || serverDefinition instanceof ComponentContainer
+							|| serverItf.indexOf('[') >= 0) {
+						target = BindingRegistry.DYNAMIC;
+					} else {
+						target = new BindingRegistry.Target(def2type(serverDefinition), serverItf);
+					}
+				}
+				entry.bind(mindItf.getName(), target);
+			}
+		}
+	}
+
+	/**
+	 * Locate the sources of a definition and extract the compilation flags of
+	 * the definition and of its sources.
+	 */
+	private void prepareSources(Definition definition, PreparedDefinition prepared, Map<Object, Object> context) {
+		if (definition instanceof ImplementationContainer) {
+			Source[] sources = ((ImplementationContainer)definition).getSources();
+			if ((sources != null) && (sources.length != 0)) {
+				try {
+					// The definition wise compilation flags
+					prepared.definitionFlags.addAll(flagExtractorItf.getCPPFlags(definition, context));
+					prepared.definitionFlags.addAll(flagExtractorItf.getCFlags(definition, context));
+					prepared.definitionFlags.addAll(flagExtractorItf.getASFlags(definition, context));
+				} catch (ADLException e1) {
+					logger.info("Problem extracting the compilation flags !");
+					e1.printStackTrace();
+				}
+				for (Source source : sources) {
+					// Calculate a .h file from the source file.
+					String cSrc = source.getPath();
+					int index = cSrc.lastIndexOf(".");
+					String hSrc = cSrc.substring(0, index)+".impl.h";
+					// Named after the definition too: the sub-definitions inherit the sources.
+					String oSrc = PathHelper.fullyQualifiedNameToPath(definition.getName(),
+							cSrc.substring(1, index).replace('/', '.') + ".o").substring(1);
+					final URL srcURL = implementationLocatorItf.findSource(cSrc, context);
+					final File headerFile = outputFileLocatorItf.getCSourceOutputFile( hSrc, context);
+					String srcFile;
+					try {
+						srcFile = (new File(srcURL.toURI())).getPath();
+					} catch (URISyntaxException e) {
+						srcFile = srcURL.getPath();
+					}
+					final PreparedDefinition.PreparedSource preparedSource =
+							new PreparedDefinition.PreparedSource(source, srcFile, hSrc, oSrc, headerFile);
+					try {
+						// The source wise compilation flags
+						preparedSource.flags.addAll(flagExtractorItf.getCPPFlags(source, context));
+						preparedSource.flags.addAll(flagExtractorItf.getCFlags(source, context));
+						preparedSource.flags.addAll(flagExtractorItf.getASFlags(source, context));
+					} catch (ADLException e1) {
+						logger.info("Problem extracting the compilation flags !");
+						e1.printStackTrace();
+					}
+					prepared.sources.add(preparedSource);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locate the fragment of each interface of a definition, in the
+	 * {@link FakeHeaderOptions#MINIMAL_INCLUDES} mode. The precompiled adl
+	 * header and the unity builds include every header anyway, so the mode is
+	 * ignored with them, as it is for the collection interfaces, whose array
+	 * declaration needs the complete structure.
+	 */
+	private void prepareFragments(PreparedDefinition prepared, Map<Object, Object> context) {
+		if (!FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.MINIMAL_INCLUDES, false)
+				|| prepared.precompiledHeader
+				|| !FakeHeaderOptions.getString(context, FakeHeaderOptions.UNITY, "none").equals("none")) {
+			return;
+		}
+		prepared.minimalIncludes = true;
+		final List<PreparedDefinition.PreparedInterface> interfaces = new ArrayList<PreparedDefinition.PreparedInterface>();
+		interfaces.addAll(prepared.serverInterfaces);
+		interfaces.addAll(prepared.clientInterfaces);
+		for (PreparedDefinition.PreparedInterface itf : interfaces) {
+			if ("collection".equals(itf.itf.getCardinality())) {
+				continue;
+			}
+			final String fragmentPath = PathHelper.fullyQualifiedNameToPath(prepared.definition.getName(),
+					itf.itf.getName() + ".meth.h");
+			itf.fragmentPath = fragmentPath.substring(1);
+			itf.fragmentFile = outputFileLocatorItf.getCSourceOutputFile(fragmentPath, context);
+		}
+	}
+
+	/**
+	 * Gather the members of the unity build of a definition, according to the
+	 * {@link FakeHeaderOptions#UNITY} option: the definition itself, or in
+	 * composite mode every primitive definition of its sub-component tree.
+	 */
+	private void prepareUnity(PreparedDefinition prepared, Map<Object, Object> context) {
+		final String mode = FakeHeaderOptions.getString(context, FakeHeaderOptions.UNITY, "none");
+		if (mode.equals("none")) {
+			return;
+		}
+		if (mode.equals("composite") && prepared.definition instanceof ComponentContainer) {
+			final Map<String, PreparedDefinition> members = new LinkedHashMap<String, PreparedDefinition>();
+			collectUnityMembers(prepared.definition, members, context);
+			prepared.unityMembers.addAll(members.values());
+		} else if (mode.equals("definition") || mode.equals("composite")) {
+			if (!prepared.sources.isEmpty()) {
+				prepared.unityMembers.add(prepared);
+			}
+		} else {
+			logger.info("Unknown " + FakeHeaderOptions.UNITY + " mode \"" + mode + "\", no unity build.");
+			return;
+		}
+		if (prepared.unityMembers.isEmpty()) {
+			return;
+		}
+		final String unityPath = PathHelper.fullyQualifiedNameToPath(prepared.definition.getName(), "unity.c");
+		prepared.unityFile = outputFileLocatorItf.getCSourceOutputFile(unityPath, context);
+		prepared.unitySource = unityPath.substring(1);
+		prepared.unityObject = prepared.unitySource.substring(0, prepared.unitySource.length() - 2) + ".o";
+		// The flags of the members, which cannot be applied to a single source any more.
+		final Set<String> unityFlags = new LinkedHashSet<String>();
+		for (PreparedDefinition member : prepared.unityMembers) {
+			if (member != prepared) {
+				unityFlags.addAll(member.definitionFlags);
+			}
+			for (PreparedDefinition.PreparedSource source : member.sources) {
+				unityFlags.addAll(source.flags);
+			}
+		}
+		prepared.unityFlags.addAll(unityFlags);
+	}
+
+	/**
+	 * Give the precompiled adl header the flags its users are compiled with, on
+	 * top of the definition flags: the flags of the amalgamated source, or the
+	 * flags shared by all the sources. A header precompiled with other macros
+	 * than its users may silently be used anyway, so the precompiled header is
+	 * disabled when the sources carry different flags. It is disabled too for
+	 * the unity build of a composite, whose amalgamated source includes the
+	 * adl header of each member instead.
+	 */
+	private void preparePrecompiledHeader(PreparedDefinition prepared) {
+		if (!prepared.precompiledHeader || prepared.sources.isEmpty()) {
+			return;
+		}
+		if (prepared.unityMembers.size() > 1) {
+			prepared.precompiledHeader = false;
+			return;
+		}
+		if (prepared.unityObject != null) {
+			prepared.pchFlags.addAll(prepared.unityFlags);
+			return;
+		}
+		final List<String> flags = prepared.sources.get(0).flags;
+		for (PreparedDefinition.PreparedSource source : prepared.sources) {
+			if (!source.flags.equals(flags)) {
+				logger.fine("Sources of " + prepared.definition.getName()
+						+ " have different flags, their adl header is not precompiled.");
+				prepared.precompiledHeader = false;
+				return;
+			}
+		}
+		prepared.pchFlags.addAll(flags);
+	}
+
+	/**
+	 * Walk a sub-component tree, preparing the sources of every primitive
+	 * definition met, once each.
+	 */
+	private void collectUnityMembers(Definition definition, Map<String, PreparedDefinition> members,
+			Map<Object, Object> context) {
+		if (definition instanceof ComponentContainer) {
+			for (Component component : ((ComponentContainer) definition).getComponents()) {
+				try {
+					final Definition subDefinition = ASTHelper.getResolvedComponentDefinition(component, adlLoaderItf, context);
+					if (subDefinition != null) {
+						collectUnityMembers(subDefinition, members, context);
+					}
+				} catch (ADLException e) {
+					logger.info("Sub-component " + component.getName() + " cannot be loaded, left out of the unity build !");
+					e.printStackTrace();
+				}
+			}
+		} else if (!members.containsKey(definition.getName())) {
+			final PreparedDefinition member = new PreparedDefinition(definition, false, null);
+			member.adlHeader = PathHelper.fullyQualifiedNameToPath(definition.getName(), "adl.h").substring(1);
+			if (definition instanceof InterfaceContainer) {
+				for (Interface itf : ((InterfaceContainer) definition).getInterfaces()) {
+					final MindInterface mindItf = (MindInterface) itf;
+					if (mindItf.getRole().equals(TypeInterface.SERVER_ROLE)
+							&& hasInterfaceTable(mindItf, resolve(mindItf, context))) {
+						member.tablesSource = PathHelper.fullyQualifiedNameToPath(definition.getName(), "tables.c")
+								.substring(1);
+						break;
+					}
+				}
+			}
+			prepareSources(definition, member, context);
+			if (!member.sources.isEmpty()) {
+				members.put(definition.getName(), member);
+			}
+		}
+	}
+
+	/**
+	 * @return true if a server interface gets a constant table in the tables
+	 *         source of its definition: collections keep a runtime table.
+	 */
+	private static boolean hasInterfaceTable(MindInterface itf, ResolvedInterface resolved) {
+		return resolved != null && !resolved.getPrototypes().isEmpty()
+				&& !"collection".equals(itf.getCardinality());
+	}
+
+	/**
+	 * Bound the in-memory caches of the generator, as set by the
+	 * {@link FakeHeaderOptions#MEMORY_CACHE_SIZE} option.
+	 * @param context The global context of the compilation.
+	 */
+	private void boundCaches(Map<Object, Object> context) {
+		final int capacity = LruCache.capacity(context);
+		typeRenderer.setCapacity(capacity);
+		cNames.setCapacity(capacity);
+		guardMacros.setCapacity(capacity);
+	}
+
+	/**
+	 * Get the build file backend selected by the
+	 * {@link FakeHeaderOptions#BUILD_BACKEND} option.
+	 * @param context The global context of the compilation.
+	 * @return The build file writer.
+	 */
+	private BuildFileWriter buildFileWriter(Map<Object, Object> context) {
+		final String backend = FakeHeaderOptions.getString(context, FakeHeaderOptions.BUILD_BACKEND, "make");
+		if (backend.equals("ninja")) {
+			return ninjaWriter;
+		} else if (!backend.equals("make")) {
+			logger.info("Unknown " + FakeHeaderOptions.BUILD_BACKEND + " \"" + backend + "\", using make.");
+		}
+		return makefileWriter;
+	}
+
+	/**
+	 * Generate headers for a prepared component definition. This does not use
+	 * the compilation context and can be called from any thread.
+	 * 
+	 * @param prepared The definition to generate header for, as returned by
+	 *          {@link #prepareComponentHeaders(Definition, Map)}.
+	 */
+	public void writeComponentHeaders(PreparedDefinition prepared) {
+		final long start = System.nanoTime();
 		try {
-			// The File for the header corresponding to the definition, and a PrintWriter to write in it.
-			final File adlHeaderFile = outputFileLocatorItf.getCSourceOutputFile(
-					PathHelper.fullyQualifiedNameToPath(definition.getName(), "adl.h"), context);
-			final PrintWriter adlPrinter=new PrintWriter(adlHeaderFile,"ASCII");
+			generateFiles(prepared);
+		} finally {
+			final long elapsed = System.nanoTime() - start;
+			prepared.metrics.writeComponentHeaders.record(elapsed);
+			prepared.metrics.recordDefinition(prepared.definition.getName(), prepared.prepareNanos + elapsed);
+			// In streaming mode nothing of the definition outlives its files.
+			if (prepared.streaming) {
+				prepared.release();
+			}
+		}
+	}
 
-			// The File for the Makefile for this definition, and a PrintWriter to write in it.
-			final File makeFile = outputFileLocatorItf.getCSourceOutputFile(
-					PathHelper.fullyQualifiedNameToPath(definition.getName(), "make"), context);
-			final PrintWriter makePrinter= new PrintWriter(makeFile,"ASCII");
+	private void generateFiles(PreparedDefinition prepared) {
+		final Definition definition = prepared.definition;
+		final boolean writeIfChanged = prepared.writeIfChanged;
+		writeDefaultBindHeader(prepared);
+		if (prepared.cachedArtifacts != null) {
+			restoreCachedFiles(prepared);
+			if (prepared.indexRecord != null) {
+				prepared.index.put(prepared.indexRecord);
+			}
+			return;
+		}
+		try {
+			// An emitter to write the header corresponding to the definition.
+			final AsciiEmitter adlPrinter = new AsciiEmitter(prepared.adlHeaderFile, writeIfChanged);
 
-			// Head of the Makefile 
-			// target name and "all" alias. The compile rules will be written below.
-			makePrinter.println("all : " + definition.getName());
-			makePrinter.println( definition.getName() + " : ");
 
 			// Head of the adl header.
 			// Include guard, definition name, and common includes.
 			openIncludeGuard(definition.getName(), adlPrinter);
 			adlPrinter.println("#include \"mindcommon.h\"");
 			adlPrinter.println();
-			adlPrinter.println("#define DEFINITION_NAME " + definition.getName().replace(".", "_"));
+			adlPrinter.print("#define DEFINITION_NAME ").println(def2type(definition));
 			adlPrinter.println();
 			adlPrinter.println("#include \"commonMacro.h\"");
 			adlPrinter.println();
 
 			// Interfaces actions.
 			if (definition instanceof InterfaceContainer) {
-				Interface[] interfaces = ((InterfaceContainer) definition).getInterfaces();
-
 				// Server interfaces.
 				adlPrinter.println("/* Begin server interface listing */");
-				for (Interface itf : interfaces) {
-					MindInterface mindItf = (MindInterface) itf;
-					if (mindItf.getRole().equals(TypeInterface.SERVER_ROLE)) {
-						// Create a header for the interface, and include it.
-						final String headerFileName = itf2h(mindItf, context);
-						writeItfHeader(mindItf, context);
-						adlPrinter.println("#include \"" + headerFileName + "\"" );
-						// Variable definition for the interface and its size.
-						//FIXME collection interface, interface method initialization UNDONE.
-						adlPrinter.println(itf2type(mindItf) + " GET_MY_INTERFACE(" + mindItf.getName() + ");");
-						adlPrinter.println("int GET_COLLECTION_SIZE(" + mindItf.getName() + ") = " + Math.abs(ASTHelper.getNumberOfElement(mindItf)) +";");
-						// Prototype declaration of the interface methods
-						methDeclare(mindItf, adlPrinter, context);
+				for (PreparedDefinition.PreparedInterface server : prepared.serverInterfaces) {
+					final MindInterface mindItf = server.itf;
+					final ResolvedInterface resolved = server.resolved;
+					// Create a header for the interface, and include it.
+					writeItfHeader(server, prepared);
+					if (server.fragmentFile != null) {
+						// Only the structure is declared, its fragment has the rest.
+						declareInterface(server, hasInterfaceTable(mindItf, resolved) ? "extern const " : "extern ",
+								adlPrinter);
+						writeFragment(server, prepared);
+						continue;
 					}
+					adlPrinter.print("#include \"").print(resolved.getHeaderPath()).println("\"");
+					// Declaration of the interface, a constant table defined in the tables
+					// source, and its size, a constant the compiler can fold.
+					//FIXME collection interface initialization UNDONE.
+					if (hasInterfaceTable(mindItf, resolved)) {
+						adlPrinter.print("extern const ");
+					}
+					adlPrinter.print(resolved.getTypeName()).print(" GET_MY_INTERFACE(").print(mindItf.getName()).println(");");
+					adlPrinter.print("static const int GET_COLLECTION_SIZE(").print(mindItf.getName()).print(") = ")
+							.print(Math.abs(ASTHelper.getNumberOfElement(mindItf))).println(";");
+					// Prototype declaration of the interface methods
+					methDeclare(mindItf, resolved, adlPrinter);
 				}
 				adlPrinter.println("/* End server interface listing */");
 				adlPrinter.println();
 
 				// Client interfaces.
 				adlPrinter.println("/* Begin client interface listing */");
-				for (Interface itf : interfaces) {	
-					MindInterface mindItf = (MindInterface) itf;
-					if (mindItf.getRole().equals(TypeInterface.CLIENT_ROLE)) {
-						// Create a header for the interface, and include it.
-						final String headerFileName = itf2h(mindItf, context);
-						adlPrinter.println("#include \"" + headerFileName + "\"" );
-						writeItfHeader(mindItf, context);
-						// collectionSuffix is filled with array size ([]) if needed or set to empty String
-						String collectionSuffix = mindItf.getCardinality();
-						String numString = mindItf.getNumberOfElement();
-						if ((numString !=null)&&(collectionSuffix.equals("collection"))) {
-							collectionSuffix = "[" + numString + "]"; 
-						} else {
-							collectionSuffix = "";
-						}
-						// Variable definition for the interface and its size.
-						adlPrinter.println("extern " + itf2type(mindItf) + " GET_MY_INTERFACE(" + mindItf.getName() + collectionSuffix  + ");");
-						adlPrinter.println("int GET_COLLECTION_SIZE(" + mindItf.getName() + ") = " + Math.abs(ASTHelper.getNumberOfElement(mindItf)) +";");
-						// Prototype declaration of the interface methods.
-						methDeclare(mindItf, adlPrinter, context);
+				if (prepared.bindHeader != null) {
+					// The statically resolved bindings, if any.
+					adlPrinter.print("#include \"").print(prepared.bindHeader).println("\"");
+				}
+				final String defType = def2type(definition);
+				for (PreparedDefinition.PreparedInterface client : prepared.clientInterfaces) {
+					final MindInterface mindItf = client.itf;
+					final ResolvedInterface resolved = client.resolved;
+					final String itfSymbol = "_component_" + defType + "_interface_" + mindItf.getName();
+					// Create a header for the interface, and include it.
+					writeItfHeader(client, prepared);
+					if (client.fragmentFile != null) {
+						// Only the structure is declared, its fragment has the rest.
+						adlPrinter.print("#ifndef ").print(itfSymbol).println("_bound");
+						adlPrinter.print("#define ").print(itfSymbol).println("_bound 1");
+						adlPrinter.println("#endif");
+						adlPrinter.print("#ifndef ").print(itfSymbol).println("_static");
+						declareInterface(client, "extern ", adlPrinter);
+						adlPrinter.println("#endif");
+						writeFragment(client, prepared);
+						continue;
 					}
+					adlPrinter.print("#include \"").print(resolved.getHeaderPath()).println("\"");
+					// Bound unless the bind header knows better.
+					adlPrinter.print("#ifndef ").print(itfSymbol).println("_bound");
+					adlPrinter.print("#define ").print(itfSymbol).println("_bound 1");
+					adlPrinter.println("#endif");
+					// Variable definition for the interface and its size, unless it is
+					// a constant table of the bind header.
+					// with the array size ([]) if needed
+					adlPrinter.print("#ifndef ").print(itfSymbol).println("_static");
+					adlPrinter.print("extern ").print(resolved.getTypeName()).print(" GET_MY_INTERFACE(").print(mindItf.getName());
+					String numString = mindItf.getNumberOfElement();
+					if ((numString !=null)&&(mindItf.getCardinality().equals("collection"))) {
+						adlPrinter.print('[').print(numString).print(']');
+					}
+					adlPrinter.println(");");
+					adlPrinter.println("#endif");
+					adlPrinter.print("static const int GET_COLLECTION_SIZE(").print(mindItf.getName()).print(") = ")
+							.print(Math.abs(ASTHelper.getNumberOfElement(mindItf))).println(";");
+					// Prototype declaration of the interface methods.
+					methDeclare(mindItf, resolved, adlPrinter);
 				}
 				adlPrinter.println("/* End client interface listing */");
 			}
@@ -218,6 +1179,9 @@ public class FakeHeaderGenerator {
 				// data actions
 				Data data = ((ImplementationContainer)definition).getData();
 				if (data != null) {
+					if (prepared.minimalIncludes) {
+						includeDataInterfaces(prepared, data, adlPrinter);
+					}
 					adlPrinter.println();
 					adlPrinter.println("/* Begin private data declaration */");
 					adlPrinter.println("static ");
@@ -229,7 +1193,7 @@ public class FakeHeaderGenerator {
 					// If the data are in a separate file.
 					final String fileData = data.getPath();
 					if (fileData != null ) {
-						adlPrinter.println("#include \"" + fileData.substring(1) + "\"");
+						adlPrinter.print("#include \"").print(fileData.substring(1)).println("\"");
 					}
 					// FIXME What about if data is used both as inlined and separate file ? Doesn't make sense but ...
 					adlPrinter.println("/* Begin private data declaration */");
@@ -237,82 +1201,29 @@ public class FakeHeaderGenerator {
 				}
 
 				// source actions
-				Source[] sources = ((ImplementationContainer)definition).getSources();
-				if ((sources != null) && (sources.length != 0)) {
-					for (Source source : sources) {
-						// Calculate a .h file from the source file and a PrintWriter to write in it.
-						String cSrc = source.getPath();
-						int index = cSrc.lastIndexOf(".");
-						String hSrc = cSrc.substring(0, index)+".impl.h";
-						final URL srcURL = implementationLocatorItf.findSource(cSrc, context);
-						final File headerFile = outputFileLocatorItf.getCSourceOutputFile( hSrc, context);
-						PrintWriter srcPrinter = new PrintWriter(headerFile,"ASCII");
-
-						// source header file only include the adl header, guarded against multiple inclusion.
-						openIncludeGuard(headerFile.toPath().toString().replace("/","_"), srcPrinter);
-						srcPrinter.println("#include \"" + PathHelper.fullyQualifiedNameToPath(definition.getName(), "adl.h").substring(1) + "\"");
-						closeIncludeGuard(headerFile.toPath().toString().replace("/","_"), srcPrinter);
-						srcPrinter.close();
-
-						// Begin a compilation rule in the Make file for the source, with generated header passed as pre-included file.
-						try {
-							makePrinter.print("\t$(CC) -c " + (new File(srcURL.toURI())).getPath() + " -include " + hSrc.substring(1) );
-						} catch (URISyntaxException e) {
-							makePrinter.print("\t$(CC) -c " + srcURL.getPath() + " -include " + hSrc.substring(1) );
-						}
-						// Append the project wise compilation flags
-						for (final String inc : CompilerContextHelper.getIncPath(context)) {
-							makePrinter.print(" -I" + inc + " ");
-						}
-						List<String> cppflags = CompilerContextHelper.getCPPFlags(context);
-						for (final String cppflag : cppflags) {
-							makePrinter.print(" " + cppflag  + " " );
-						}
-						List<String> cflags = CompilerContextHelper.getCFlags(context);
-						for (final String cflag : cflags) {
-							makePrinter.print(" " + cflag  + " " );
-						}
-
-						try {
-							// Append the definition wise compilation flags
-							for (final String cflag : flagExtractorItf.getCPPFlags(definition, context) )
-								makePrinter.print(" " + cflag  + " " );
-							for (final String cflag : flagExtractorItf.getCFlags(definition, context) ) 
-								makePrinter.print(" " + cflag  + " " );
-							for (final String cflag : flagExtractorItf.getASFlags(definition, context) )
-								makePrinter.print(" " + cflag  + " " );
-							// Append the source wise compilation flags
-							for (final String cflag : flagExtractorItf.getCPPFlags(source, context) )
-								makePrinter.print(" " + cflag  + " " );
-							for (final String cflag : flagExtractorItf.getCFlags(source, context) ) 
-								makePrinter.print(" " + cflag  + " " );
-							for (final String cflag : flagExtractorItf.getASFlags(source, context) )
-								makePrinter.print(" " + cflag  + " " );
-						} catch (ADLException e1) {
-							logger.info("Problem extracting the compilation flags !");
-							e1.printStackTrace();
-						}
-
-						// Append the include paths
-						final URL[] inputResourceRoots = inputResourceLocatorItf.getInputResourcesRoot(context);
-						if (inputResourceRoots != null) {
-							for (final URL inputResourceRoot : inputResourceRoots) {
-								File inputDir;
-								try {
-									inputDir = new File(inputResourceRoot.toURI());
-									if (inputDir.isDirectory()) {
-										makePrinter.print(" -I" + inputDir.getPath());
-									}
-								} catch (URISyntaxException e) {
-									makePrinter.print(" -I" + inputResourceRoot.getPath());
-								}
-							}
-						}
+				final String adlHeader = prepared.adlHeader;
+				for (PreparedDefinition.PreparedSource source : prepared.sources) {
+					// An emitter to write the .h file calculated from the source file.
+					final File headerFile = source.headerFile;
+					AsciiEmitter srcPrinter = new AsciiEmitter(headerFile, writeIfChanged);
 
+					// source header file only include the adl header, guarded against multiple inclusion.
+					final String guardName = headerFile.toPath().toString().replace("/","_");
+					openIncludeGuard(guardName, srcPrinter);
+					srcPrinter.print("#include \"").print(adlHeader).println("\"");
+					if (prepared.minimalIncludes) {
+						includeFragments(prepared, source, srcPrinter);
 					}
+					closeIncludeGuard(guardName, srcPrinter);
+					commit(srcPrinter, prepared);
 				}
 			}
 
+			// The amalgamated source of a unity build.
+			if (prepared.unityFile != null) {
+				writeUnitySource(prepared);
+			}
+
 			// attribute actions
 			if (definition instanceof AttributeContainer) {
 				Attribute[] attributes = ((AttributeContainer)definition).getAttributes();
@@ -320,14 +1231,24 @@ public class FakeHeaderGenerator {
 					// Create a struct, a typedef and a variable to hold the attributes.
 					adlPrinter.println();
 					adlPrinter.println("/* Begin attributes declaration */");
-					adlPrinter.println("struct " + def2type(definition) +"_attribue_s {");
-					for (Attribute attribute : attributes) {
-						adlPrinter.println(attribute.getType() + " " + attribute.getName() + ";");
-						//FIXME no initialization is done.
+					final String defType = def2type(definition);
+					if (prepared.attributeLayout) {
+						writeAttributeLayout(prepared, attributes, adlPrinter);
+					} else {
+						adlPrinter.print("struct ").print(defType).println("_attribue_s {");
+						for (Attribute attribute : attributes) {
+							adlPrinter.print(attribute.getType()).print(' ').print(attribute.getName()).println(";");
+							//FIXME no initialization is done.
+						}
+						adlPrinter.println("};");
+						adlPrinter.print("typedef struct ").print(defType).print("_attribue_s ").print(defType).println("_attribue_t;");
+						adlPrinter.print("static ").print(defType).println("_attribue_t ATTRIBUTE_STRUCT_NAME;");
+						// The accessors used by ATTR.
+						for (Attribute attribute : attributes) {
+							adlPrinter.print("#define _component_").print(defType).print("_attribute_").print(attribute.getName())
+							.print(" ATTRIBUTE_STRUCT_NAME.").println(attribute.getName());
+						}
 					}
-					adlPrinter.println("};");
-					adlPrinter.println("typedef struct " +  def2type(definition) +"_attribue_s " + def2type(definition) +"_attribue_t;");
-					adlPrinter.println("static " + def2type(definition) +"_attribue_t ATTRIBUTE_STRUCT_NAME;");
 					adlPrinter.println("/* End attributes declaration */");
 					adlPrinter.println();
 				}
@@ -335,142 +1256,524 @@ public class FakeHeaderGenerator {
 
 			// Closing the adl header and Makefile.
 			closeIncludeGuard(definition.getName(),adlPrinter);
-			adlPrinter.close();
-			makePrinter.close();
-		} catch (FileNotFoundException e) {
+			commit(adlPrinter, prepared);
+
+			// The constant tables of the server interfaces.
+			if (prepared.tablesFile != null) {
+				writeInterfaceTables(prepared);
+			}
+
+			// The build file compiling the sources of the definition.
+			final long buildStart = System.nanoTime();
+			final AsciiEmitter buildPrinter = new AsciiEmitter(prepared.buildFile, writeIfChanged);
+			prepared.buildWriter.write(prepared, buildPrinter);
+			commit(buildPrinter, prepared);
+			prepared.metrics.writeBuildFile.record(System.nanoTime() - buildStart);
+
+			// Keep the generated files for the next compilations, once written.
+			if (prepared.cacheKey != null) {
+				final HeaderCache cache = prepared.cache;
+				final String key = prepared.cacheKey;
+				final List<String> dependencies = prepared.cacheDependencies;
+				final List<String> uses = prepared.cacheUses;
+				final Map<String, File> outputs = new LinkedHashMap<String, File>(prepared.cacheOutputs);
+				prepared.output.afterWrites(new Runnable() {
+					public void run() {
+						cache.store(key, dependencies, uses, null, outputs);
+					}
+				});
+			}
+			if (prepared.indexRecord != null) {
+				prepared.index.put(prepared.indexRecord);
+			}
+
+			logger.fine(prepared.emittedHeaders.getSkippedCount()
+					+ " interface header writes skipped so far, already emitted.");
+		} catch (IOException e) {
 			logger.info("Somehow calculated file path are wrong this is a BUG  !");
 			e.printStackTrace();
-		} catch (UnsupportedEncodingException e) {
-			logger.info("ASCII encoding is not supported on your platform !");
+			prepared.output.failed(e);
+		}
+	}
+
+	/**
+	 * Write the amalgamated source of a unity build: the adl header of each
+	 * member followed by its sources, and report the names the sources may
+	 * define twice in this single translation unit.
+	 */
+	private void writeUnitySource(PreparedDefinition prepared) throws IOException {
+		final AsciiEmitter unityPrinter = new AsciiEmitter(prepared.unityFile, prepared.writeIfChanged);
+		unityPrinter.println("/* Generated by the FakeHeader annotation, do not edit. */");
+		boolean first = true;
+		for (PreparedDefinition member : prepared.unityMembers) {
+			if (!first) {
+				// Each adl header defines the name its sources are mangled with.
+				unityPrinter.println("#undef DEFINITION_NAME");
+			}
+			first = false;
+			unityPrinter.print("#include \"").print(member.adlHeader).println("\"");
+			for (PreparedDefinition.PreparedSource source : member.sources) {
+				unityPrinter.print("#include \"").print(source.sourceFile).println("\"");
+			}
+			if (member.tablesSource != null) {
+				unityPrinter.print("#include \"").print(member.tablesSource).println("\"");
+			}
+		}
+		commit(unityPrinter, prepared);
+
+		for (String collision : UnityCollisionChecker.check(prepared.unityMembers)) {
+			logger.info("Unity build of " + prepared.definition.getName() + ": " + collision);
+		}
+	}
+
+	/**
+	 * Write the attributes of a definition laid out by {@link AttributeLayout}:
+	 * a mutable structure, and with {@link FakeHeaderOptions#CONST_ATTRIBUTES}
+	 * a constant one for the attributes the sources only read, both
+	 * initialized from the ADL values, and the accessors used by ATTR to reach
+	 * each attribute in its structure.
+	 */
+	private void writeAttributeLayout(PreparedDefinition prepared, Attribute[] attributes, AsciiEmitter adlPrinter) {
+		final String defType = def2type(prepared.definition);
+		final AttributeLayout layout = AttributeLayout.compute(attributes, prepared.sources, prepared.pointerSize,
+				prepared.constAttributes);
+		if (!layout.mutableFields.isEmpty()) {
+			adlPrinter.print("struct ").print(defType).println("_attribue_s {");
+			writeAttributeFields(layout.mutableFields, adlPrinter);
+			adlPrinter.println("};");
+			adlPrinter.print("typedef struct ").print(defType).print("_attribue_s ").print(defType).println("_attribue_t;");
+			adlPrinter.print("static ").print(defType).print("_attribue_t ATTRIBUTE_STRUCT_NAME");
+			writeAttributeInitializers(layout.mutableFields, adlPrinter);
+		}
+		final String constStruct = "_component_" + defType + "_const_attribute";
+		if (!layout.constFields.isEmpty()) {
+			adlPrinter.print("struct ").print(defType).println("_const_attribute_s {");
+			writeAttributeFields(layout.constFields, adlPrinter);
+			adlPrinter.println("};");
+			adlPrinter.print("static const struct ").print(defType).print("_const_attribute_s ").print(constStruct);
+			writeAttributeInitializers(layout.constFields, adlPrinter);
+		}
+		// The accessors used by ATTR.
+		for (AttributeLayout.Field field : layout.mutableFields) {
+			adlPrinter.print("#define _component_").print(defType).print("_attribute_").print(field.attribute.getName())
+			.print(" ATTRIBUTE_STRUCT_NAME.").println(field.attribute.getName());
+		}
+		for (AttributeLayout.Field field : layout.constFields) {
+			adlPrinter.print("#define _component_").print(defType).print("_attribute_").print(field.attribute.getName())
+			.print(' ').print(constStruct).print('.').println(field.attribute.getName());
+		}
+
+		final int saved = layout.getSavedBytes();
+		if (saved >= 0) {
+			logger.info("Attributes of " + prepared.definition.getName() + ": " + saved + " bytes of RAM saved ("
+					+ layout.originalSize + " -> " + layout.mutableSize + ", " + layout.constSize + " read only).");
+		} else {
+			logger.fine("Attributes of " + prepared.definition.getName() + ": sizes unknown, nothing reported.");
+		}
+	}
+
+	private void writeAttributeFields(List<AttributeLayout.Field> fields, AsciiEmitter adlPrinter) {
+		for (AttributeLayout.Field field : fields) {
+			adlPrinter.print(field.attribute.getType()).print(' ').print(field.attribute.getName()).println(";");
+		}
+	}
+
+	/**
+	 * Terminate the declaration of an attribute structure variable, with the
+	 * designated initializers of the attributes having a literal value.
+	 */
+	private void writeAttributeInitializers(List<AttributeLayout.Field> fields, AsciiEmitter adlPrinter) {
+		boolean initialized = false;
+		for (AttributeLayout.Field field : fields) {
+			if (field.initializer == null) continue;
+			adlPrinter.println(initialized ? "," : " = {");
+			adlPrinter.print("\t.").print(field.attribute.getName()).print(" = ").print(field.initializer);
+			initialized = true;
+		}
+		if (initialized) {
+			adlPrinter.println();
+			adlPrinter.print('}');
+		}
+		adlPrinter.println(";");
+	}
+
+	/**
+	 * Write the source defining the server interfaces of a definition as
+	 * constant tables of its methods, so that they are placed in read only
+	 * memory and need no initialization at startup.
+	 */
+	private void writeInterfaceTables(PreparedDefinition prepared) throws IOException {
+		final AsciiEmitter tablesPrinter = new AsciiEmitter(prepared.tablesFile, prepared.writeIfChanged);
+		tablesPrinter.println("/* Generated by the FakeHeader annotation, do not edit. */");
+		tablesPrinter.print("#include \"").print(prepared.adlHeader).println("\"");
+		for (PreparedDefinition.PreparedInterface server : prepared.serverInterfaces) {
+			if (server.fragmentFile != null && hasInterfaceTable(server.itf, server.resolved)) {
+				tablesPrinter.print("#include \"").print(server.fragmentPath).println("\"");
+			}
+		}
+		for (PreparedDefinition.PreparedInterface server : prepared.serverInterfaces) {
+			if (!hasInterfaceTable(server.itf, server.resolved)) {
+				continue;
+			}
+			final String itfName = server.itf.getName();
+			tablesPrinter.println();
+			tablesPrinter.print("const ").print(server.resolved.getTypeName()).print(" GET_MY_INTERFACE(").print(itfName)
+			.println(") = {");
+			for (ResolvedInterface.MethodPrototype meth : server.resolved.getPrototypes()) {
+				tablesPrinter.print("\t.").print(meth.getName()).print(" = METH(").print(itfName).print(", ")
+				.print(meth.getName()).println("),");
+			}
+			tablesPrinter.println("};");
+		}
+		commit(tablesPrinter, prepared);
+	}
+
+	/**
+	 * Render the bind headers at every barrier, once per compilation, with the
+	 * settings of the first definition prepared.
+	 */
+	private void registerBindHeaders(PreparedDefinition prepared, Map<Object, Object> context) {
+		final BindingRegistry registry = BindingRegistry.get(context);
+		if (!registry.claimWriter()) {
+			return;
+		}
+		final boolean writeIfChanged = prepared.writeIfChanged;
+		final OutputWriter output = prepared.output;
+		final GenerationMetrics metrics = prepared.metrics;
+		GenerationScheduler.get(context).atBarrier(new Runnable() {
+			public void run() {
+				for (BindingRegistry.Entry entry : registry.entries()) {
+					try {
+						writeBindHeader(entry, writeIfChanged, output, metrics);
+					} catch (IOException e) {
+						logger.info("Somehow calculated file path are wrong this is a BUG  !");
+						e.printStackTrace();
+						output.failed(e);
+					}
+				}
+			}
+		}, true);
+	}
+
+	/**
+	 * Write the bind header of a definition with the default bindings, calls
+	 * through the interface structures and IS_BOUND evaluating to 1, if it does
+	 * not exist yet: the adl header includes it, whether the barrier writing the
+	 * resolved bindings is passed or not. An existing bind header is left to the
+	 * barrier, so that it does not change twice in a compilation.
+	 */
+	private void writeDefaultBindHeader(PreparedDefinition prepared) {
+		if (prepared.bindHeaderFile == null || prepared.bindHeaderFile.isFile()) {
+			return;
+		}
+		final AsciiEmitter bindPrinter = new AsciiEmitter(prepared.bindHeaderFile, true);
+		final String guard = prepared.definition.getName() + ".bind";
+		openIncludeGuard(guard, bindPrinter);
+		closeIncludeGuard(guard, bindPrinter);
+		try {
+			prepared.output.write(bindPrinter, prepared.metrics);
+		} catch (IOException e) {
+			logger.info("Somehow calculated file path are wrong this is a BUG  !");
 			e.printStackTrace();
+			prepared.output.failed(e);
+		}
+	}
+
+	/**
+	 * Write the bind header of a definition from its registry entry, if the
+	 * entry changed since it was last written. This runs at the barrier, once
+	 * every composite of the architecture registered its bindings.
+	 * - Statically bound interfaces are constant tables of the server methods,
+	 *   which the C compiler turns into direct calls.
+	 * - Unbound interfaces have IS_BOUND evaluating to 0.
+	 * - Other interfaces keep the defaults of the adl header.
+	 */
+	void writeBindHeader(BindingRegistry.Entry entry, boolean writeIfChanged, OutputWriter output,
+			GenerationMetrics metrics) throws IOException {
+		synchronized (entry) {
+			if (!entry.changed) {
+				return;
+			}
+			final AsciiEmitter bindPrinter = new AsciiEmitter(entry.bindHeaderFile, writeIfChanged);
+			final String guard = entry.definitionName + ".bind";
+			openIncludeGuard(guard, bindPrinter);
+			for (Map.Entry<String, ResolvedInterface> itf : entry.interfaces.entrySet()) {
+				final BindingRegistry.Target target = entry.targets.get(itf.getKey());
+				if (target == null || target == BindingRegistry.DYNAMIC) {
+					continue;
+				}
+				final String itfSymbol = "_component_" + entry.definitionType + "_interface_" + itf.getKey();
+				if (target == BindingRegistry.UNBOUND) {
+					bindPrinter.print("/* ").print(itf.getKey()).println(" is not bound */");
+					bindPrinter.print("#define ").print(itfSymbol).println("_bound 0");
+					bindPrinter.println();
+					continue;
+				}
+				final ResolvedInterface resolved = itf.getValue();
+				final String serverSymbol = "_component_" + target.serverType + "_interface_" + target.serverItf;
+				bindPrinter.print("/* ").print(itf.getKey()).print(" is bound to ").print(target.serverType)
+				.print('.').print(target.serverItf).println(" */");
+				bindPrinter.print("#include \"").print(resolved.getHeaderPath()).println("\"");
+				bindPrinter.print("#define ").print(itfSymbol).println("_bound 1");
+				bindPrinter.print("#define ").print(itfSymbol).println("_static");
+				for (ResolvedInterface.MethodPrototype meth : resolved.getPrototypes()) {
+					bindPrinter.print(meth.getReturnType()).print(' ').print(serverSymbol).print("_method_")
+					.print(meth.getName()).print('(').print(meth.getParameters()).println(");");
+				}
+				bindPrinter.print("static const ").print(resolved.getTypeName()).print(' ').print(itfSymbol).println("_table = {");
+				for (ResolvedInterface.MethodPrototype meth : resolved.getPrototypes()) {
+					bindPrinter.print("\t.").print(meth.getName()).print(" = ").print(serverSymbol).print("_method_")
+					.print(meth.getName()).println(",");
+				}
+				bindPrinter.println("};");
+				bindPrinter.print("#define ").print(itfSymbol).print(' ').print(itfSymbol).println("_table");
+				bindPrinter.println();
+			}
+			closeIncludeGuard(guard, bindPrinter);
+			output.write(bindPrinter, metrics);
+			entry.changed = false;
 		}
 	}
 
 	/**
 	 * Write a header corresponding to an interface.
-	 * @param itf
-	 * @param context
+	 * The header is written only once per compilation, whatever the number of
+	 * definitions referencing the interface.
+	 * @param prepared The interface, with its resolved IDL.
+	 * @param definition The definition being generated.
 	 */
-	private void writeItfHeader(MindInterface itf, Map<Object, Object> context) {
+	void writeItfHeader(PreparedDefinition.PreparedInterface prepared, PreparedDefinition definition) {
+		final MindInterface itf = prepared.itf;
+		final ResolvedInterface resolved = prepared.resolved;
+		final EmittedHeaderRegistry emittedHeaders = definition.emittedHeaders;
+		if (!emittedHeaders.claim(itf.getSignature())) {
+			return;
+		}
+		final long start = System.nanoTime();
 		try {
-			// Creating a File and a PrintWriter to write in it
-			final File headerFile = outputFileLocatorItf.getCSourceOutputFile(
-					PathHelper.fullyQualifiedNameToPath(itf.getSignature(), "itf.h"), context);
-			PrintWriter itfWriter = new PrintWriter(headerFile,"ASCII");
+			// An emitter to write in the header file
+			AsciiEmitter itfWriter = new AsciiEmitter(prepared.headerFile, definition.writeIfChanged);
 			openIncludeGuard(itf.getSignature(), itfWriter);
-			try {
-				IDL idl = idlLoaderItf.load(itf.getSignature(), context);
-				// Propagating the include directive
-				if (idl instanceof IncludeContainer) {
-					Include[] includes = ((IncludeContainer)idl).getIncludes();
-					if ((includes != null) && (includes.length !=0)){
-						itfWriter.println();
-						itfWriter.println("/* Begin includes imported from interface */");
-						for (Include include : includes) {
-							String incPath = include.getPath();
-							//Strip the leading annoying / from the include
-							if (incPath.startsWith("\"")) incPath = "\"" + incPath.substring(2);
-							itfWriter.println("#include " + incPath );
+			IDL idl = resolved.getIdl();
+			// Propagating the include directive
+			if (idl instanceof IncludeContainer) {
+				Include[] includes = ((IncludeContainer)idl).getIncludes();
+				if ((includes != null) && (includes.length !=0)){
+					itfWriter.println();
+					itfWriter.println("/* Begin includes imported from interface */");
+					for (Include include : includes) {
+						String incPath = include.getPath();
+						itfWriter.print("#include ");
+						//Strip the leading annoying / from the include
+						if (incPath.startsWith("\"")) {
+							itfWriter.print('"').println(incPath.substring(2));
+						} else {
+							itfWriter.println(incPath);
 						}
-						itfWriter.println("/* End includes imported from interface */");
-						itfWriter.println();
-					}
-				}	
-				
-				// propagating types defined directly in the .itf
-				if (idl instanceof TypeCollectionContainer) {
-					for (final Type type : ((TypeCollectionContainer) idl).getTypes()) {
-						if (type instanceof TypeDefinition)
-							itfWriter.println("typedef " + typeToString(((TypeDefinition)type).getType()) + " " + typeToString(type) + ";");
 					}
+					itfWriter.println("/* End includes imported from interface */");
+					itfWriter.println();
 				}
+			}
 
-				// define a struct and a typedef for the interface.
-				if (idl instanceof InterfaceDefinition) {
-					Method[] meths = ((InterfaceDefinition)idl).getMethods();
-					if ((meths != null) && (meths.length !=0)){
-						itfWriter.println();
-						itfWriter.println("/* Begin interface type definition */");
-						itfWriter.println("struct " + itf2type(itf) + "_s {");
-						for (Method meth : meths) {
-							itfWriter.print("\t" + typeToString(meth.getType()) + " (*" + meth.getName() + ")(" );
-							Parameter[] parameters = meth.getParameters();
-							writeCFunctionParameters(parameters,itfWriter);
-							itfWriter.println(");");
-						}
-						itfWriter.println("};" );
-						itfWriter.println();
-						itfWriter.println("typedef struct " + itf2type(itf) + "_s " + itf2type(itf) + ";");
-						itfWriter.println("/* End interface type definition */");
-						itfWriter.println();
-					}
+			// propagating types defined directly in the .itf
+			if (idl instanceof TypeCollectionContainer) {
+				for (final Type type : ((TypeCollectionContainer) idl).getTypes()) {
+					if (type instanceof TypeDefinition)
+						itfWriter.print("typedef ").print(typeToString(((TypeDefinition)type).getType())).print(' ').print(typeToString(type)).println(";");
 				}
-			} 
-			catch (ADLException e) {
-				logger.info("Interface cannot be resolved to a IDL !");
-				e.printStackTrace();
+			}
+
+			// define a struct and a typedef for the interface.
+			if (!resolved.getPrototypes().isEmpty()) {
+				itfWriter.println();
+				itfWriter.println("/* Begin interface type definition */");
+				itfWriter.print("struct ").print(resolved.getTypeName()).println("_s {");
+				for (ResolvedInterface.MethodPrototype meth : resolved.getPrototypes()) {
+					itfWriter.print('\t').print(meth.getReturnType()).print(" (*").print(meth.getName()).print(")(")
+							.print(meth.getParameters()).println(");");
+				}
+				itfWriter.println("};" );
+				itfWriter.println();
+				itfWriter.print("typedef struct ").print(resolved.getTypeName()).print("_s ").print(resolved.getTypeName()).println(";");
+				itfWriter.println("/* End interface type definition */");
+				itfWriter.println();
 			}
 			// Close the interface header file.
 			closeIncludeGuard(itf.getSignature(), itfWriter);
-			itfWriter.close();
+			resolved.setHeaderSize(itfWriter.size());
+			commit(itfWriter, definition);
 
-		} catch (FileNotFoundException e) {
+			// Keep the header for the next compilations, once written.
+			if (definition.cache != null) {
+				final String idlFile = HeaderCache.sourceFile(resolved.getIdl());
+				if (idlFile != null) {
+					final HeaderCache cache = definition.cache;
+					final String signature = itf.getSignature();
+					final File headerFile = prepared.headerFile;
+					// Collected with the inputs of the definition, when its cache entry was prepared.
+					final List<String> idlFiles = (resolved.getInputFiles() != null) ? resolved.getInputFiles()
+							: Collections.singletonList(idlFile);
+					definition.output.afterWrites(new Runnable() {
+						public void run() {
+							cache.store(HeaderCache.interfaceKey(signature), idlFiles,
+									Collections.<String> emptyList(), signature, Collections.singletonMap(
+											PathHelper.fullyQualifiedNameToPath(signature, "itf.h"), headerFile));
+						}
+					});
+				}
+			}
+
+		} catch (IOException e) {
+			// Let another definition retry writing this header.
+			emittedHeaders.release(itf.getSignature());
 			logger.info("Somehow calculated file path are wrong this is a BUG  !");
 			e.printStackTrace();
-		} catch (UnsupportedEncodingException e1) {
-			logger.info("ASCII encoding is not supported on your platform !");
-			e1.printStackTrace();
-		}		
+			definition.output.failed(e);
+		} finally {
+			definition.metrics.writeItfHeader.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Hand an emitter over to the output stage, counting its file in the
+	 * metrics once written.
+	 */
+	private static void commit(AsciiEmitter emitter, PreparedDefinition prepared) throws IOException {
+		prepared.output.write(emitter, prepared.metrics);
+	}
+
+	/**
+	 * Declare the structure of an interface and the interface itself, without
+	 * including its header: an extern declaration does not need the complete
+	 * structure, nor does the size constant.
+	 */
+	private void declareInterface(PreparedDefinition.PreparedInterface itf, String qualifiers, AsciiEmitter adlPrinter) {
+		final String name = itf.itf.getName();
+		adlPrinter.print("struct ").print(itf.resolved.getTypeName()).println("_s;");
+		adlPrinter.print(qualifiers).print("struct ").print(itf.resolved.getTypeName()).print("_s GET_MY_INTERFACE(")
+				.print(name).println(");");
+		adlPrinter.print("static const int GET_COLLECTION_SIZE(").print(name).print(") = ")
+				.print(Math.abs(ASTHelper.getNumberOfElement(itf.itf))).println(";");
+	}
+
+	/**
+	 * Write the fragment of an interface in the minimal include mode: its
+	 * header include, the definition of a server interface without constant
+	 * table, and the prototypes of its methods.
+	 */
+	private void writeFragment(PreparedDefinition.PreparedInterface itf, PreparedDefinition prepared)
+			throws IOException {
+		final AsciiEmitter fragmentPrinter = new AsciiEmitter(itf.fragmentFile, prepared.writeIfChanged);
+		fragmentPrinter.println("#pragma once");
+		final String guard = prepared.definition.getName() + "." + itf.itf.getName() + ".meth";
+		openIncludeGuard(guard, fragmentPrinter);
+		fragmentPrinter.print("#include \"").print(itf.resolved.getHeaderPath()).println("\"");
+		if (itf.itf.getRole().equals(TypeInterface.SERVER_ROLE) && !hasInterfaceTable(itf.itf, itf.resolved)) {
+			fragmentPrinter.print(itf.resolved.getTypeName()).print(" GET_MY_INTERFACE(").print(itf.itf.getName())
+					.println(");");
+		}
+		methDeclare(itf.itf, itf.resolved, fragmentPrinter);
+		closeIncludeGuard(guard, fragmentPrinter);
+		// Counted as rendered, the file may still be queued for writing.
+		itf.fragmentSize = fragmentPrinter.size();
+		commit(fragmentPrinter, prepared);
+	}
+
+	/**
+	 * Include in the header of a source the fragments of the interfaces it
+	 * mentions, all of them if it cannot be read, and count the bytes of
+	 * generated headers it includes, and would with every interface.
+	 */
+	private void includeFragments(PreparedDefinition prepared, PreparedDefinition.PreparedSource source,
+			AsciiEmitter srcPrinter) {
+		final Set<String> identifiers = IncludeScanner.identifiers(source.sourceFile);
+		long full = 0;
+		long minimal = 0;
+		for (PreparedDefinition.PreparedInterface itf : fragments(prepared)) {
+			final long size = fragmentSize(itf) + headerSize(itf);
+			full += size;
+			if (identifiers == null || IncludeScanner.mentions(identifiers, itf)) {
+				srcPrinter.print("#include \"").print(itf.fragmentPath).println("\"");
+				minimal += size;
+			}
+		}
+		prepared.metrics.includedHeaderBytesFull.addAndGet(full);
+		prepared.metrics.includedHeaderBytesMinimal.addAndGet(minimal);
+		logger.fine(source.sourceFile + ": " + minimal + " bytes of interface headers and fragments included, "
+				+ full + " with every interface.");
+	}
+
+	/**
+	 * Include in the adl header the headers of the interfaces whose types the
+	 * private data may use: the ones inlined data mentions, every one for a
+	 * data file.
+	 */
+	private void includeDataInterfaces(PreparedDefinition prepared, Data data, AsciiEmitter adlPrinter) {
+		final Set<String> identifiers = (data.getPath() == null && data.getCCode() != null)
+				? IncludeScanner.codeIdentifiers(data.getCCode()) : null;
+		for (PreparedDefinition.PreparedInterface itf : fragments(prepared)) {
+			if (identifiers == null || IncludeScanner.mentions(identifiers, itf)) {
+				adlPrinter.print("#include \"").print(itf.resolved.getHeaderPath()).println("\"");
+			}
+		}
+	}
+
+	/**
+	 * @return The size of the fragment of an interface, as rendered in this
+	 *         compilation or else as found on disk.
+	 */
+	private static long fragmentSize(PreparedDefinition.PreparedInterface itf) {
+		return (itf.fragmentSize >= 0) ? itf.fragmentSize : itf.fragmentFile.length();
+	}
+
+	/**
+	 * @return The size of the header of an interface, as rendered in this
+	 *         compilation or else as found on disk.
+	 */
+	private static long headerSize(PreparedDefinition.PreparedInterface itf) {
+		final int size = itf.resolved.getHeaderSize();
+		return (size >= 0) ? size : itf.headerFile.length();
 	}
 
 	/**
 	 * Create prototypes of the methods of an interface.
 	 * @param itf The interface to be prototyped.
-	 * @param writer The PrintWriter where to put write the prototypes. 
-	 * @param context The global compilation context.
+	 * @param resolved The resolved IDL of the interface.
+	 * @param writer The emitter where to put write the prototypes. 
 	 */
-	private void methDeclare(MindInterface itf, PrintWriter writer, Map<Object, Object> context) {
-		try {
-			IDL idl = idlLoaderItf.load(itf.getSignature(), context);
-			if (idl instanceof InterfaceDefinition) {
-				Method[] meths = ((InterfaceDefinition)idl).getMethods();
-				if ((meths != null) && (meths.length !=0)){
-					writer.println();
-					writer.println("/* Begin METH declaration */");
-					// Mangling is left out for the C preprocessor 
-					for (Method meth : meths) {
-						writer.print(typeToString(meth.getType()) + " METH(" + itf.getName() + ", " + meth.getName() + ")(" );
-						Parameter[] parameters = meth.getParameters();
-						writeCFunctionParameters(parameters,writer);
-						writer.println(");");
-					}
-					writer.println("/* End  METH declaration */");
-					writer.println();
-				}
+	void methDeclare(MindInterface itf, ResolvedInterface resolved, AsciiEmitter writer) {
+		if (!resolved.getPrototypes().isEmpty()) {
+			writer.println();
+			writer.println("/* Begin METH declaration */");
+			// Mangling is left out for the C preprocessor 
+			for (ResolvedInterface.MethodPrototype meth : resolved.getPrototypes()) {
+				writer.print(meth.getReturnType()).print(" METH(").print(itf.getName()).print(", ").print(meth.getName()).print(")(")
+						.print(meth.getParameters()).println(");");
 			}
-		} catch (ADLException e) {
-			logger.info("Interface cannot be resolved to a IDL !");
-			e.printStackTrace();
+			writer.println("/* End  METH declaration */");
+			writer.println();
 		}
 	}
 
 	/**
 	 * Layout the C function parameters.
 	 * @param parameters an array of Parameter.
-	 * @param writer The writer to write in.
+	 * @return The parameter list to put between the function parenthesis.
 	 */
-	private void writeCFunctionParameters(Parameter[] parameters, PrintWriter writer) {
+	String cFunctionParameters(Parameter[] parameters) {
 		// paramDelimiter is put in front of parameters. 
 		// The first is a space the next are comas (space param coma param)
+		if ((parameters == null) || (parameters.length == 0)) {
+			return "void";
+		}
+		final StringBuilder builder = new StringBuilder();
 		String paramDelimiter = " ";
-		if ((parameters != null) && (parameters.length != 0)) {
-			for (Parameter parameter : parameters) {
-				writer.print(paramDelimiter + typeToString(parameter.getType()) + " " + parameter.getName());
-				paramDelimiter = ", ";
-			}
-		} else {
-			writer.print("void");
+		for (Parameter parameter : parameters) {
+			builder.append(paramDelimiter).append(typeToString(parameter.getType())).append(" ").append(parameter.getName());
+			paramDelimiter = ", ";
 		}
+		return builder.toString();
 	}
 	
 	/**
@@ -479,7 +1782,7 @@ public class FakeHeaderGenerator {
 	 * @return The C type name.
 	 */
 	private String itf2type(MindInterface itf) {
-		return itf.getSignature().replace(".", "_");
+		return cName(itf.getSignature());
 	}
 
 	/**
@@ -488,62 +1791,63 @@ public class FakeHeaderGenerator {
 	 * @return The C type name.
 	 */
 	private String def2type(Definition def) {
-		return def.getName().replace(".", "_");
+		return cName(def.getName());
+	}
+
+	/**
+	 * get a C identifier from a fully qualified name.
+	 * @param name The fully qualified name.
+	 * @return The C identifier.
+	 */
+	private String cName(String name) {
+		String cName = cNames.get(name);
+		if (cName == null) {
+			cName = cNames.putIfAbsent(name, name.replace(".", "_"));
+		}
+		return cName;
 	}
 
 	/**
 	 * Typical C include guard header from fully qualified like Strings
 	 * @param name The fully qualified name of the element to guard.
-	 * @param writer The PrintWriter to write in.
+	 * @param writer The emitter to write in.
 	 */
-	static private void openIncludeGuard(String name, PrintWriter writer) {
-		final String macroName = name.replace(".", "_").toUpperCase();
-		writer.println("#ifndef " + macroName);
-		writer.println("#define " + macroName);
+	private void openIncludeGuard(String name, AsciiEmitter writer) {
+		final String macroName = guardMacro(name);
+		writer.print("#ifndef ").println(macroName);
+		writer.print("#define ").println(macroName);
 		writer.println();
 	}
 	
 	/**
 	 * Typical C include guard footer from fully qualified like Strings
 	 * @param name The fully qualified name of the element to guard.
-	 * @param writer The PrintWriter to write in.
+	 * @param writer The emitter to write in.
 	 */
-	static private void closeIncludeGuard(String name, PrintWriter writer) {
-		final String macroName = name.replace(".", "_").toUpperCase();
+	private void closeIncludeGuard(String name, AsciiEmitter writer) {
+		final String macroName = guardMacro(name);
 		writer.println();
-		writer.println("#endif /* " + macroName + " */");
+		writer.print("#endif /* ").print(macroName).println(" */");
 		writer.println();
 	}
 	
 	/**
-	 * Shamelessly copied from OptimCPLChecker
-	 */
-	private String typeToString(Type type) {
-		if (type instanceof EnumDefinition) {
-			return ((EnumDefinition) type).getName();
-		} else if (type instanceof EnumReference) {
-			return ((EnumReference) type).getName();
-		} else if (type instanceof StructDefinition) {
-			return ((StructDefinition) type).getName();
-		} else if (type instanceof StructReference) {
-			return ((StructReference) type).getName();
-		} else if (type instanceof UnionDefinition) {
-			return ((UnionDefinition) type).getName();
-		} else if (type instanceof UnionReference) {
-			return ((UnionReference) type).getName();
-		} else if (type instanceof TypeDefinition) {
-			return ((TypeDefinition) type).getName();
-		} else if (type instanceof TypeDefReference) {
-			return ((TypeDefReference) type).getName();
-		} else if (type instanceof ConstantDefinition) {
-			return ((ConstantDefinition) type).getName();
-		} else if (type instanceof PrimitiveType) {
-			return ((PrimitiveType) type).getName();
-		} else if (type instanceof ArrayOf) {
-			// TODO:see IDL2C.stc arrayOfVarName for cleaner handling
-			return typeToString(((ArrayOf) type).getType()) + " * "; 
-		} else if (type instanceof PointerOf) {
-			return typeToString(((PointerOf) type).getType()) + " * ";
-		} else return ""; // TODO: check even if this should never happen, or raise an error
+	 * get the include guard macro of a fully qualified like String.
+	 * @param name The fully qualified name of the element to guard.
+	 * @return The macro name.
+	 */
+	private String guardMacro(String name) {
+		String macroName = guardMacros.get(name);
+		if (macroName == null) {
+			macroName = guardMacros.putIfAbsent(name, cName(name).toUpperCase());
+		}
+		return macroName;
+	}
+
+	/**
+	 * Render a C type.
+	 */
+	String typeToString(Type type) {
+		return typeRenderer.render(type);
 	}
 }
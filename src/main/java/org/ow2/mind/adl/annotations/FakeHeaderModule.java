@@ -26,10 +26,16 @@ import org.ow2.mind.adl.implementation.BasicImplementationLocator;
 import org.ow2.mind.adl.implementation.ImplementationLocator;
 import org.ow2.mind.inject.AbstractMindModule;
 
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
 
 public class FakeHeaderModule extends AbstractMindModule {
 	protected void configureImplementationLocator() {
 		bind(ImplementationLocator.class).annotatedWith(Names.named(FakeHeaderGenerator.FAKE_HEADER)).to(BasicImplementationLocator.class);
 	}
+
+	protected void configureFakeHeaderGenerator() {
+		// One generator shared by every annotated definition, so that it can keep its caches.
+		bind(FakeHeaderGenerator.class).in(Singleton.class);
+	}
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.Map;
+
+/**
+ * Options of the FakeHeader generator.
+ * An option is looked up in the compilation context first, then in the Java
+ * system properties (e.g. -Dfakeheader.writeIfChanged=true).
+ */
+public final class FakeHeaderOptions {
+
+	/**
+	 * Prefix shared by all the option names.
+	 */
+	public static final String PREFIX = "fakeheader.";
+
+	/**
+	 * Only replace generated files whose content changed (boolean, default false).
+	 */
+	public static final String WRITE_IF_CHANGED = PREFIX + "writeIfChanged";
+
+	/**
+	 * Executor generating the headers: "none" to generate inline in the ADL
+	 * loader (default), "forkjoin" or "virtual" (one virtual thread per
+	 * definition, where the Java platform supports it).
+	 */
+	public static final String PARALLEL = PREFIX + "parallel";
+
+	/**
+	 * Maximum number of definitions generated concurrently in parallel mode
+	 * (integer, default the number of available processors).
+	 */
+	public static final String THREADS = PREFIX + "threads";
+
+	/**
+	 * Build files generated to compile the sources: "make" for a Makefile per
+	 * definition (default), "ninja" for a build.ninja fragment per definition
+	 * included by a top level build.ninja.
+	 */
+	public static final String BUILD_BACKEND = PREFIX + "buildBackend";
+
+	/**
+	 * Precompile the adl.h header of each definition, with the flags of the
+	 * definition and the flags shared by its sources, and force-include it in
+	 * its sources; not done for a definition whose sources carry different
+	 * flags (boolean, default false).
+	 */
+	public static final String PRECOMPILED_HEADER = PREFIX + "precompiledHeader";
+
+	/**
+	 * Compile the sources as a single amalgamated translation unit: "none"
+	 * (default), "definition" for one per definition, or "composite" for one
+	 * per composite definition covering its whole sub-component tree.
+	 */
+	public static final String UNITY = PREFIX + "unity";
+
+	/**
+	 * Sort the attributes by alignment and initialize them from their ADL
+	 * values (boolean, default false).
+	 */
+	public static final String ATTRIBUTE_LAYOUT = PREFIX + "attributeLayout";
+
+	/**
+	 * With the attribute layout, move to a constant structure the scalar
+	 * attributes the sources of the definition only read (boolean, default
+	 * false).
+	 */
+	public static final String CONST_ATTRIBUTES = PREFIX + "constAttributes";
+
+	/**
+	 * Size in bytes of pointers on the target, used to estimate the attribute
+	 * structure sizes (integer, default 4).
+	 */
+	public static final String POINTER_SIZE = PREFIX + "pointerSize";
+
+	/**
+	 * Keep the generated files of the primitive definitions in a persistent
+	 * cache of the output directory, and restore them in the next compilations
+	 * when their inputs did not change (boolean, default false).
+	 */
+	public static final String CACHE = PREFIX + "cache";
+
+	/**
+	 * Size in megabytes over which the least recently used cache entries are
+	 * evicted (integer, default 256).
+	 */
+	public static final String CACHE_SIZE = PREFIX + "cacheSize";
+
+	/**
+	 * Keep the compiler running after the C compilation, watching the ADL and
+	 * IDL files of the annotated definitions and regenerating the files of the
+	 * definitions affected by a change (boolean, default false).
+	 */
+	public static final String WATCH = PREFIX + "watch";
+
+	/**
+	 * Record the input and generated files of each definition in an index of the
+	 * output directory, and skip in the next compilations the definitions whose
+	 * inputs did not change (boolean, default false).
+	 */
+	public static final String INCREMENTAL = PREFIX + "incremental";
+
+	/**
+	 * Log a summary of the generation timers and counters at the generation
+	 * barrier, and write it as JSON to fakeheader-metrics.json in the output
+	 * directory (boolean, default false).
+	 */
+	public static final String METRICS = PREFIX + "metrics";
+
+	/**
+	 * Only record the annotated definitions while they are loaded, and generate
+	 * them at the generation barrier, at the end of the ADL phase, in the order
+	 * of their output directories (boolean, default false).
+	 */
+	public static final String BATCH = PREFIX + "batch";
+
+	/**
+	 * Only declare the interface structures in the adl header, and move the
+	 * interface header includes and method prototypes to per interface
+	 * fragments, included by the sources mentioning the interface (boolean,
+	 * default false).
+	 */
+	public static final String MINIMAL_INCLUDES = PREFIX + "minimalIncludes";
+
+	/**
+	 * Release the ASTs of each definition once its files are written, and bound
+	 * the in-memory caches of the generator (boolean, default false).
+	 */
+	public static final String STREAMING = PREFIX + "streaming";
+
+	/**
+	 * Maximum number of entries of each in-memory cache of the generator
+	 * (resolved IDLs, rendered types and names), the least recently used
+	 * entries being evicted; 0 for no bound (integer, default 0, or 1024 in
+	 * streaming mode).
+	 */
+	public static final String MEMORY_CACHE_SIZE = PREFIX + "memoryCacheSize";
+
+	/**
+	 * Number of threads writing the rendered files on disk, 0 to write them on
+	 * the rendering thread (integer, default 0).
+	 */
+	public static final String WRITER_THREADS = PREFIX + "writerThreads";
+
+	private FakeHeaderOptions() {
+	}
+
+	/**
+	 * @param context The global context of the compilation.
+	 * @param name The option name.
+	 * @param defaultValue The value if the option is not set.
+	 * @return The option value.
+	 */
+	public static String getString(Map<Object, Object> context, String name, String defaultValue) {
+		Object value;
+		synchronized (context) {
+			value = context.get(name);
+		}
+		if (value == null) {
+			value = System.getProperty(name);
+		}
+		return (value != null) ? value.toString().trim() : defaultValue;
+	}
+
+	/**
+	 * @param context The global context of the compilation.
+	 * @param name The option name.
+	 * @param defaultValue The value if the option is not set.
+	 * @return The option value.
+	 */
+	public static boolean getBoolean(Map<Object, Object> context, String name, boolean defaultValue) {
+		final String value = getString(context, name, null);
+		return (value != null) ? Boolean.parseBoolean(value) : defaultValue;
+	}
+
+	/**
+	 * @param context The global context of the compilation.
+	 * @param name The option name.
+	 * @param defaultValue The value if the option is not set or is not an
+	 *          integer.
+	 * @return The option value.
+	 */
+	public static int getInt(Map<Object, Object> context, String name, int defaultValue) {
+		final String value = getString(context, name, null);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				// fall back to the default value.
+			}
+		}
+		return defaultValue;
+	}
+}
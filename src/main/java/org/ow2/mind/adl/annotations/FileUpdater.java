@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Writes generated files on disk, in one FileChannel write per file.
+ * In write-if-changed mode the rendered content is hashed and compared with
+ * the existing file, which is only replaced (atomically, through a temporary
+ * file renamed over it) when its bytes differ. This keeps the modification
+ * time of unchanged files, so that make or ccache do not rebuild anything.
+ */
+public final class FileUpdater {
+
+	private static final String DIGEST_ALGORITHM = "SHA-1";
+
+	private FileUpdater() {
+	}
+
+	/**
+	 * Write a file.
+	 * @param file The file to write.
+	 * @param content The complete content of the file.
+	 * @param length The number of bytes of content to write.
+	 * @param onlyIfChanged true to leave the file untouched if it already holds
+	 *          the same content.
+	 * @return true if the file was written, false if it was left untouched.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static boolean write(File file, byte[] content, int length, boolean onlyIfChanged) throws IOException {
+		return write(file, content, length, onlyIfChanged, true);
+	}
+
+	/**
+	 * Write a file.
+	 * @param createDirectory false if the directory of the file is known to
+	 *          exist, saving a file system call.
+	 * @see #write(File, byte[], int, boolean)
+	 */
+	static boolean write(File file, byte[] content, int length, boolean onlyIfChanged, boolean createDirectory)
+			throws IOException {
+		if (onlyIfChanged) {
+			if (file.isFile() && file.length() == length
+					&& Arrays.equals(digest(content, length), digest(file))) {
+				return false;
+			}
+			replace(file, content, length, createDirectory);
+		} else {
+			if (createDirectory) {
+				mkdirs(file);
+			}
+			writeChannel(file, content, length);
+		}
+		return true;
+	}
+
+	/**
+	 * Append to a file, creating it if needed.
+	 * @param file The file to append to.
+	 * @param content The content to append.
+	 * @param length The number of bytes of content to append.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void append(File file, byte[] content, int length) throws IOException {
+		append(file, content, length, true);
+	}
+
+	/**
+	 * Append to a file, creating it if needed.
+	 * @param createDirectory false if the directory of the file is known to
+	 *          exist, saving a file system call.
+	 * @see #append(File, byte[], int)
+	 */
+	static void append(File file, byte[] content, int length, boolean createDirectory) throws IOException {
+		if (createDirectory) {
+			mkdirs(file);
+		}
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap(content, 0, length);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write a whole content through a FileChannel, truncating the file.
+	 */
+	private static void writeChannel(File file, byte[] content, int length) throws IOException {
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap(content, 0, length);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Atomically replace a file, writing a temporary file next to it and then
+	 * renaming it.
+	 */
+	private static void replace(File file, byte[] content, int length, boolean createDirectory)
+			throws IOException {
+		if (createDirectory) {
+			mkdirs(file);
+		}
+		final File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		try {
+			writeChannel(tmpFile, content, length);
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			// Only remains if something went wrong.
+			tmpFile.delete();
+		}
+	}
+
+	private static void mkdirs(File file) throws IOException {
+		final File dir = file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Cannot create directory " + dir);
+		}
+	}
+
+	private static byte[] digest(byte[] content, int length) {
+		final MessageDigest digest = newDigest();
+		digest.update(content, 0, length);
+		return digest.digest();
+	}
+
+	private static byte[] digest(File file) throws IOException {
+		final MessageDigest digest = newDigest();
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			final ByteBuffer buffer = ByteBuffer.allocate(8192);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			channel.close();
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1.
+			throw new IllegalStateException(e);
+		}
+	}
+}
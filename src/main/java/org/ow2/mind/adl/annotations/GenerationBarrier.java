@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.compilation.CompilationCommand;
+import org.ow2.mind.compilation.CompilationCommandExecutor;
+import org.ow2.mind.error.GenericErrors;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * The end of the ADL phase: the compilation commands executor, decorated by
+ * the {@link FakeHeaderCompilerModule} to pass the
+ * {@link GenerationScheduler} barrier before the generated files are
+ * compiled. The generation failures met since the ADL files were loaded are
+ * then reported as an {@link ADLException}, failing the compilation.
+ * In watch mode, the {@link HeaderWatcher} starts processing the changes at
+ * the barrier, and the compiler is kept running, once the generated files
+ * are compiled, until the watcher is stopped.
+ */
+public class GenerationBarrier implements CompilationCommandExecutor {
+	/**
+	 * Name of the binding of the decorated executor.
+	 */
+	public static final String DELEGATE = "FakeHeaderDelegate";
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	@Inject
+	@Named(DELEGATE)
+	protected CompilationCommandExecutor delegateExecutorItf;
+
+	public void exec(Collection<CompilationCommand> commands, Map<Object, Object> context) throws ADLException,
+			InterruptedException {
+		final boolean annotated;
+		synchronized (context) {
+			annotated = context.containsKey(GenerationScheduler.CONTEXT_KEY);
+		}
+		if (!annotated) {
+			// No annotated definition in this compilation: nothing to wait for.
+			delegateExecutorItf.exec(commands, context);
+			return;
+		}
+		pass(context);
+		delegateExecutorItf.exec(commands, context);
+		final HeaderWatcher watcher;
+		synchronized (context) {
+			watcher = (HeaderWatcher) context.get(HeaderWatcher.CONTEXT_KEY);
+		}
+		if (watcher != null) {
+			logger.info("Watching the input files of the annotated definitions.");
+			watcher.awaitStop();
+		}
+	}
+
+	/**
+	 * Pass the generation barrier of a compilation: run the deferred stages and
+	 * wait for the generated files to be written, then release the generation
+	 * threads.
+	 * @param context The global context of the compilation.
+	 * @throws ADLException If a part of the generation failed.
+	 */
+	public static void pass(Map<Object, Object> context) throws ADLException {
+		final GenerationScheduler scheduler;
+		synchronized (context) {
+			scheduler = (GenerationScheduler) context.get(GenerationScheduler.CONTEXT_KEY);
+		}
+		if (scheduler == null) {
+			// No annotated definition in this compilation.
+			return;
+		}
+		final List<Throwable> failures = scheduler.await();
+		scheduler.release();
+		final HeaderWatcher watcher;
+		synchronized (context) {
+			watcher = (HeaderWatcher) context.get(HeaderWatcher.CONTEXT_KEY);
+		}
+		if (watcher != null) {
+			watcher.compiled();
+		}
+		if (!failures.isEmpty()) {
+			throw new ADLException(GenericErrors.GENERIC_ERROR, "FakeHeader generation failed (" + failures.size()
+					+ " errors, the first one: " + failures.get(0) + ")");
+		}
+	}
+}
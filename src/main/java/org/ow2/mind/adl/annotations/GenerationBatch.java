@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Batched generation of the whole architecture, with the
+ * {@link FakeHeaderOptions#BATCH} option. The annotation processor only
+ * records the definitions while they are loaded; the batch is a stage of the
+ * {@link GenerationScheduler} barrier, passed at the end of the ADL phase by
+ * the {@link GenerationBarrier}.
+ *
+ * The stage streams the recorded definitions, in the order of their names
+ * and so of their output directories: each one is prepared, handed over to
+ * the scheduler to be written, and forgotten by the batch, so that only the
+ * definitions in flight are held. The header of each interface is still
+ * written once, by the first definition using it, and the bind headers are
+ * written at the barrier from the complete bindings.
+ */
+public class GenerationBatch implements Runnable {
+	/**
+	 * Key of the batch in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = GenerationBatch.class.getName();
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	private final Map<Object, Object> context;
+	private final FakeHeaderGenerator generator;
+	/* The recorded definitions by name, guarded by this. */
+	private final SortedMap<String, Definition> definitions = new TreeMap<String, Definition>();
+
+	private GenerationBatch(Map<Object, Object> context, FakeHeaderGenerator generator) {
+		this.context = context;
+		this.generator = generator;
+	}
+
+	/**
+	 * Get the batch of a compilation, creating it on first use.
+	 * @param context The global context of the compilation.
+	 * @param generator The generator of the definitions.
+	 * @return The batch stored in the context.
+	 */
+	public static GenerationBatch get(Map<Object, Object> context, FakeHeaderGenerator generator) {
+		synchronized (context) {
+			GenerationBatch batch = (GenerationBatch) context.get(CONTEXT_KEY);
+			if (batch == null) {
+				batch = new GenerationBatch(context, generator);
+				context.put(CONTEXT_KEY, batch);
+			}
+			return batch;
+		}
+	}
+
+	/**
+	 * Record a definition to generate at the next barrier. A definition loaded
+	 * again replaces the previous one.
+	 */
+	public void record(Definition definition) {
+		final boolean first;
+		synchronized (this) {
+			first = definitions.isEmpty();
+			definitions.put(definition.getName(), definition);
+		}
+		if (first) {
+			GenerationScheduler.get(context).defer(this);
+		}
+	}
+
+	/**
+	 * Generate the recorded definitions.
+	 */
+	public void run() {
+		final GenerationScheduler scheduler = GenerationScheduler.get(context);
+		int count = 0;
+		while (true) {
+			final Definition definition;
+			synchronized (this) {
+				if (definitions.isEmpty()) {
+					break;
+				}
+				definition = definitions.remove(definitions.firstKey());
+			}
+			final long start = System.nanoTime();
+			final PreparedDefinition prepared = generator.prepareComponentHeaders(definition, context);
+			prepared.prepareNanos = System.nanoTime() - start;
+			scheduler.submit(new Runnable() {
+				public void run() {
+					generator.writeComponentHeaders(prepared);
+				}
+			});
+			count++;
+		}
+		logger.info(count + " definitions generated in batch.");
+	}
+}
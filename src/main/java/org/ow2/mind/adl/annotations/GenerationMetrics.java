@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Compilation wide counters and timers of the header generation. They are
+ * always collected, at the cost of a few atomic additions per file; with the
+ * {@link FakeHeaderOptions#METRICS} option a summary is logged and written as
+ * JSON at the generation barrier, once the generation work is done.
+ */
+public class GenerationMetrics {
+	/**
+	 * Key of the metrics in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = GenerationMetrics.class.getName();
+
+	/**
+	 * Number of the slowest definitions listed in the logged summary.
+	 */
+	private static final int SLOWEST_COUNT = 10;
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	/**
+	 * A timer: the number of timed calls and their total time.
+	 */
+	static final class Timer {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+
+		void record(long elapsed) {
+			count.incrementAndGet();
+			nanos.addAndGet(elapsed);
+		}
+	}
+
+	final Timer processAnnotation = new Timer();
+	final Timer writeComponentHeaders = new Timer();
+	final Timer writeItfHeader = new Timer();
+	final Timer writeBuildFile = new Timer();
+	final Timer idlLoad = new Timer();
+	final Timer writerStall = new Timer();
+	final AtomicLong filesWritten = new AtomicLong();
+	final AtomicLong filesUnchanged = new AtomicLong();
+	final AtomicLong bytesWritten = new AtomicLong();
+	final AtomicLong definitionsUpToDate = new AtomicLong();
+	final AtomicLong definitionsRestored = new AtomicLong();
+	final AtomicLong includedHeaderBytesFull = new AtomicLong();
+	final AtomicLong includedHeaderBytesMinimal = new AtomicLong();
+	private final ConcurrentMap<String, Long> definitionNanos = new ConcurrentHashMap<String, Long>();
+	private final Map<Object, Object> context;
+
+	private GenerationMetrics(Map<Object, Object> context) {
+		this.context = context;
+	}
+
+	/**
+	 * Get the metrics of a compilation, creating them on first use.
+	 * @param context The global context of the compilation.
+	 * @param summaryFile The file to write the JSON summary to at the
+	 *          generation barrier, or null for no summary.
+	 * @return The metrics stored in the context.
+	 */
+	public static GenerationMetrics get(final Map<Object, Object> context, final File summaryFile) {
+		synchronized (context) {
+			GenerationMetrics metrics = (GenerationMetrics) context.get(CONTEXT_KEY);
+			if (metrics == null) {
+				metrics = new GenerationMetrics(context);
+				context.put(CONTEXT_KEY, metrics);
+				if (summaryFile != null) {
+					final GenerationMetrics summarized = metrics;
+					GenerationScheduler.get(context).atBarrier(new Runnable() {
+						public void run() {
+							logger.info(summarized.toText());
+							try {
+								final byte[] json = summarized.toJson().getBytes(Charset.forName("UTF-8"));
+								FileUpdater.write(summaryFile, json, json.length, true);
+							} catch (IOException e) {
+								logger.info("Metrics summary cannot be written !");
+								e.printStackTrace();
+							}
+						}
+					}, false);
+				}
+			}
+			return metrics;
+		}
+	}
+
+	/**
+	 * Count a generated file.
+	 * @param size Its size in bytes.
+	 * @param written false if it was left untouched, being unchanged.
+	 */
+	public void recordFile(int size, boolean written) {
+		if (written) {
+			filesWritten.incrementAndGet();
+			bytesWritten.addAndGet(size);
+		} else {
+			filesUnchanged.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Record the time spent generating a definition, on the loader thread and
+	 * on the thread writing its files.
+	 */
+	public void recordDefinition(String definitionName, long nanos) {
+		// A definition is generated again in watch mode, the last time is kept.
+		definitionNanos.put(definitionName, nanos);
+	}
+
+	/**
+	 * @return The human readable summary.
+	 */
+	public String toText() {
+		final StringBuilder text = new StringBuilder("FakeHeader generation summary:\n");
+		appendTimer(text, "processAnnotation", processAnnotation);
+		appendTimer(text, "writeComponentHeaders", writeComponentHeaders);
+		appendTimer(text, "writeItfHeader", writeItfHeader);
+		appendTimer(text, "build file writer", writeBuildFile);
+		appendTimer(text, "IDL loads", idlLoad);
+		appendTimer(text, "writer queue stalls", writerStall);
+		text.append("  files written: ").append(filesWritten.get()).append(" (").append(bytesWritten.get())
+				.append(" bytes), unchanged: ").append(filesUnchanged.get()).append('\n');
+		final EmittedHeaderRegistry emitted = EmittedHeaderRegistry.get(context);
+		text.append("  interface headers: ").append(emitted.getEmittedCount()).append(" emitted, ")
+				.append(emitted.getSkippedCount()).append(" shared\n");
+		text.append("  definitions: ").append(definitionsUpToDate.get()).append(" up to date, ")
+				.append(definitionsRestored.get()).append(" restored from cache");
+		final HeaderCache cache = headerCache();
+		if (cache != null) {
+			text.append(", cache hit rate ").append(hitRate(cache)).append('%');
+		}
+		text.append('\n');
+		final IDLResolutionCache idls = IDLResolutionCache.get(context);
+		text.append("  resolved IDLs: ").append(idls.size()).append(" held, ").append(idls.getEvictions())
+				.append(" evicted\n");
+		text.append("  peak heap: ").append(peakHeapBytes() >> 20).append(" MB\n");
+		if (includedHeaderBytesMinimal.get() > 0) {
+			text.append("  generated header bytes included by the sources: ")
+					.append(includedHeaderBytesMinimal.get()).append(" with minimal includes, instead of ")
+					.append(includedHeaderBytesFull.get()).append('\n');
+		}
+		final List<Map.Entry<String, Long>> slowest = slowestDefinitions();
+		if (!slowest.isEmpty()) {
+			text.append("  slowest definitions:\n");
+			for (Map.Entry<String, Long> entry : slowest.subList(0, Math.min(SLOWEST_COUNT, slowest.size()))) {
+				text.append("    ").append(entry.getKey()).append(": ").append(millis(entry.getValue()))
+						.append(" ms\n");
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return The JSON summary, with the time of every definition.
+	 */
+	public String toJson() {
+		final StringBuilder json = new StringBuilder("{\n");
+		appendJsonTimer(json, "processAnnotation", processAnnotation);
+		appendJsonTimer(json, "writeComponentHeaders", writeComponentHeaders);
+		appendJsonTimer(json, "writeItfHeader", writeItfHeader);
+		appendJsonTimer(json, "writeBuildFile", writeBuildFile);
+		appendJsonTimer(json, "idlLoad", idlLoad);
+		appendJsonTimer(json, "writerStall", writerStall);
+		json.append("  \"filesWritten\": ").append(filesWritten.get()).append(",\n");
+		json.append("  \"bytesWritten\": ").append(bytesWritten.get()).append(",\n");
+		json.append("  \"filesUnchanged\": ").append(filesUnchanged.get()).append(",\n");
+		final EmittedHeaderRegistry emitted = EmittedHeaderRegistry.get(context);
+		json.append("  \"interfaceHeadersEmitted\": ").append(emitted.getEmittedCount()).append(",\n");
+		json.append("  \"interfaceHeadersShared\": ").append(emitted.getSkippedCount()).append(",\n");
+		json.append("  \"definitionsUpToDate\": ").append(definitionsUpToDate.get()).append(",\n");
+		json.append("  \"definitionsRestored\": ").append(definitionsRestored.get()).append(",\n");
+		final IDLResolutionCache idls = IDLResolutionCache.get(context);
+		json.append("  \"resolvedIdlsHeld\": ").append(idls.size()).append(",\n");
+		json.append("  \"resolvedIdlsEvicted\": ").append(idls.getEvictions()).append(",\n");
+		json.append("  \"peakHeapBytes\": ").append(peakHeapBytes()).append(",\n");
+		if (includedHeaderBytesMinimal.get() > 0) {
+			json.append("  \"includedHeaderBytesFull\": ").append(includedHeaderBytesFull.get()).append(",\n");
+			json.append("  \"includedHeaderBytesMinimal\": ").append(includedHeaderBytesMinimal.get()).append(",\n");
+		}
+		final HeaderCache cache = headerCache();
+		if (cache != null) {
+			json.append("  \"cacheHits\": ").append(cache.getHits()).append(",\n");
+			json.append("  \"cacheMisses\": ").append(cache.getMisses()).append(",\n");
+		}
+		json.append("  \"definitions\": {");
+		String separator = "\n";
+		for (Map.Entry<String, Long> entry : slowestDefinitions()) {
+			json.append(separator).append("    \"").append(escape(entry.getKey())).append("\": ")
+					.append(millis(entry.getValue()));
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * @return The peak heap usage of the JVM so far, summed over the heap
+	 *         memory pools.
+	 */
+	public static long peakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private HeaderCache headerCache() {
+		synchronized (context) {
+			return (HeaderCache) context.get(HeaderCache.CONTEXT_KEY);
+		}
+	}
+
+	private static long hitRate(HeaderCache cache) {
+		final long lookups = cache.getHits() + cache.getMisses();
+		return (lookups == 0) ? 0 : cache.getHits() * 100L / lookups;
+	}
+
+	private List<Map.Entry<String, Long>> slowestDefinitions() {
+		final List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(
+				definitionNanos.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+				return e2.getValue().compareTo(e1.getValue());
+			}
+		});
+		return entries;
+	}
+
+	private static void appendTimer(StringBuilder text, String name, Timer timer) {
+		text.append("  ").append(name).append(": ").append(timer.count.get()).append(" calls, ")
+				.append(millis(timer.nanos.get())).append(" ms\n");
+	}
+
+	private static void appendJsonTimer(StringBuilder json, String name, Timer timer) {
+		json.append("  \"").append(name).append("\": { \"count\": ").append(timer.count.get())
+				.append(", \"ms\": ").append(millis(timer.nanos.get())).append(" },\n");
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
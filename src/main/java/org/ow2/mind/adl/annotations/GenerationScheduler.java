@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Compilation wide scheduler of the header generation work.
+ * By default the work runs inline, in the ADL loader. In parallel mode it is
+ * submitted to a bounded executor: the loader blocks when too many
+ * definitions are in flight, and {@link #await()} is the barrier to pass
+ * before consuming the generated files. The compiler passes it through the
+ * {@link GenerationBarrier}, before compiling the generated files; the
+ * work registered with {@link #atBarrier(Runnable, boolean)} is then done
+ * from the complete architecture. The barrier then {@link #release()}s the
+ * executor threads, created again if work is submitted after it.
+ */
+public class GenerationScheduler {
+	/**
+	 * Key of the scheduler in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = GenerationScheduler.class.getName();
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	private final String mode;
+	private final int threads;
+	/* Created on first submission in parallel mode, guarded by this. */
+	private ExecutorService executor;
+	private final Semaphore inFlight;
+	private final Queue<Future<?>> pending = new ConcurrentLinkedQueue<Future<?>>();
+	private final Queue<Runnable> stages = new ConcurrentLinkedQueue<Runnable>();
+	private final List<Runnable> beforeFlush = new CopyOnWriteArrayList<Runnable>();
+	private final List<Runnable> afterFlush = new CopyOnWriteArrayList<Runnable>();
+	private final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+	private final OutputWriter outputWriter;
+
+	private GenerationScheduler(String mode, int threads, OutputWriter outputWriter) {
+		this.mode = mode;
+		this.threads = threads;
+		this.inFlight = new Semaphore(threads);
+		this.outputWriter = outputWriter;
+	}
+
+	/**
+	 * Get the scheduler of a compilation, creating it on first use according to
+	 * the {@link FakeHeaderOptions#PARALLEL}, {@link FakeHeaderOptions#THREADS}
+	 * and {@link FakeHeaderOptions#WRITER_THREADS} options.
+	 * @param context The global context of the compilation.
+	 * @return The scheduler stored in the context.
+	 */
+	public static GenerationScheduler get(Map<Object, Object> context) {
+		synchronized (context) {
+			GenerationScheduler scheduler = (GenerationScheduler) context.get(CONTEXT_KEY);
+			if (scheduler == null) {
+				final String mode = FakeHeaderOptions.getString(context, FakeHeaderOptions.PARALLEL, "none");
+				final int threads = Math.max(1, FakeHeaderOptions.getInt(context, FakeHeaderOptions.THREADS,
+						Runtime.getRuntime().availableProcessors()));
+				final int writerThreads = FakeHeaderOptions.getInt(context, FakeHeaderOptions.WRITER_THREADS, 0);
+				scheduler = new GenerationScheduler(parallelMode(mode), threads, new OutputWriter(writerThreads));
+				context.put(CONTEXT_KEY, scheduler);
+			}
+			return scheduler;
+		}
+	}
+
+	/**
+	 * @return The parallel mode supported by the platform: "none", "forkjoin"
+	 *         or "virtual".
+	 */
+	private static String parallelMode(String mode) {
+		if (mode.equals("virtual")) {
+			try {
+				// Looked up reflectively, virtual threads only exist on recent Java platforms.
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return mode;
+			} catch (NoSuchMethodException e) {
+				logger.info("Virtual threads are not supported on your platform, using a fork-join pool instead.");
+				return "forkjoin";
+			}
+		} else if (!mode.equals("forkjoin") && !mode.equals("none")) {
+			logger.info("Unknown " + FakeHeaderOptions.PARALLEL + " mode \"" + mode + "\", generating inline.");
+			return "none";
+		}
+		return mode;
+	}
+
+	/**
+	 * @return The executor, created on first use, or null in inline mode.
+	 */
+	private synchronized ExecutorService executor() {
+		if (executor == null && !mode.equals("none")) {
+			if (mode.equals("virtual")) {
+				try {
+					executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+				} catch (Exception e) {
+					executor = new ForkJoinPool(threads);
+				}
+			} else {
+				executor = new ForkJoinPool(threads);
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * @return The output stage writing the rendered files.
+	 */
+	public OutputWriter getOutputWriter() {
+		return outputWriter;
+	}
+
+	/**
+	 * Run a piece of generation work, inline or on the executor. In parallel
+	 * mode this blocks while the maximum number of tasks are in flight.
+	 * @param task The work, which must not use the compilation context.
+	 */
+	public void submit(final Runnable task) {
+		final ExecutorService executor = executor();
+		if (executor == null) {
+			task.run();
+			return;
+		}
+		inFlight.acquireUninterruptibly();
+		try {
+			pending.add(executor.submit(new Runnable() {
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						inFlight.release();
+					}
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			inFlight.release();
+			task.run();
+		}
+	}
+
+	/**
+	 * Defer a stage to the next barrier. It runs once, on the thread passing the
+	 * barrier, and the barrier then waits for the work it submitted.
+	 * @param stage The stage, which may use the compilation context: it runs
+	 *          once the loader is done.
+	 */
+	public void defer(Runnable stage) {
+		stages.add(stage);
+	}
+
+	/**
+	 * Register work done at every barrier, once the submitted work is complete.
+	 * @param task The work, which may use the compilation context.
+	 * @param writesFiles true if the work writes files, it is then run before
+	 *          the files are flushed, else after.
+	 */
+	public void atBarrier(Runnable task, boolean writesFiles) {
+		(writesFiles ? beforeFlush : afterFlush).add(task);
+	}
+
+	/**
+	 * Report a failure of the generation, already logged, to the next barrier.
+	 * @param failure The failure.
+	 */
+	public void failed(Throwable failure) {
+		failures.add(failure);
+	}
+
+	/**
+	 * Barrier running the deferred stages, then waiting for all the work
+	 * submitted so far to complete and its files to be written, with the work
+	 * registered for the barriers. Failures of the submitted work and of the
+	 * writes are logged here.
+	 * @return The failures since the previous barrier, empty if none.
+	 */
+	public List<Throwable> await() {
+		// The other threads passing the barrier wait for the stages to be run.
+		synchronized (stages) {
+			Runnable stage;
+			while ((stage = stages.poll()) != null) {
+				runSafely(stage);
+			}
+		}
+		Future<?> future;
+		// Removed once done, so that concurrent barriers all wait for it.
+		while ((future = pending.peek()) != null) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (pending.remove(future)) {
+					logger.info("Header generation failed !");
+					e.getCause().printStackTrace();
+					failures.add(e.getCause());
+				}
+				continue;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.add(e);
+				break;
+			}
+			pending.remove(future);
+		}
+		for (Runnable task : beforeFlush) {
+			runSafely(task);
+		}
+		failures.addAll(outputWriter.flush());
+		for (Runnable task : afterFlush) {
+			runSafely(task);
+		}
+		final List<Throwable> failed = new ArrayList<Throwable>();
+		Throwable failure;
+		while ((failure = failures.poll()) != null) {
+			failed.add(failure);
+		}
+		return failed;
+	}
+
+	private void runSafely(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			logger.info("Header generation failed !");
+			e.printStackTrace();
+			failures.add(e);
+		}
+	}
+
+	/**
+	 * Shut the executor and the writer threads down once the barrier is
+	 * passed. The barrier cannot tell whether it is passed for the last time:
+	 * they are created again if work is submitted afterwards.
+	 */
+	public void release() {
+		final ExecutorService released;
+		synchronized (this) {
+			released = executor;
+			executor = null;
+		}
+		if (released != null) {
+			// The work submitted meanwhile still runs, and the next barrier waits for it.
+			released.shutdown();
+		}
+		outputWriter.release();
+	}
+}
@@ -0,0 +1,470 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.Node;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Persistent cache of generated files, kept across compilations in a
+ * directory of the output directory. Each entry is a directory named after
+ * its key, holding the cached files and a manifest listing:
+ * - "dep hash path": an input file and the hash of its content when the entry
+ *   was stored, the entry is stale as soon as one of them changed;
+ * - "use key": another entry the files of this one go with;
+ * - "claim name": the files are only restored if the name is claimed in the
+ *   {@link EmittedHeaderRegistry}, for headers shared by definitions;
+ * - "out index hash path": a cached file, the hash of its content, and its
+ *   path in the output directory.
+ * The index of the entries, with their size and last use, is rebuilt from the
+ * directory when the cache is opened, and the least recently used entries
+ * are evicted when the cache grows over its maximum size. The entries used
+ * by the running compilation are never evicted.
+ *
+ * The cache directory may be shared by concurrent compilations. An entry is
+ * built in a temporary directory of a unique name and published by an atomic
+ * rename, and an entry is removed by an atomic rename to a unique trash name
+ * before its files are deleted, so that an entry name always holds a complete
+ * entry. The cached files are read when the entry is looked up and checked
+ * against their hashes, an entry replaced or removed meanwhile being a miss.
+ */
+public class HeaderCache {
+	/**
+	 * Key of the cache in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = HeaderCache.class.getName();
+
+	/**
+	 * Version of the layout of the generated files, to be increased whenever the
+	 * generator renders different files from the same inputs.
+	 */
+	public static final String FORMAT_VERSION = "2";
+
+	private static final String MANIFEST = "manifest";
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final String TRASH_SUFFIX = ".del";
+	/* Age after which a temporary entry is left over by a killed compilation. */
+	private static final long TMP_EXPIRY = 3600 * 1000L;
+	private static final Charset MANIFEST_CHARSET = Charset.forName("UTF-8");
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	/**
+	 * A cached file to restore.
+	 */
+	public static final class Artifact {
+		final String path;
+		final byte[] content;
+		final String claim;
+		File outputFile;
+
+		Artifact(String path, byte[] content, String claim) {
+			this.path = path;
+			this.content = content;
+			this.claim = claim;
+		}
+	}
+
+	private final File root;
+	private final long maxBytes;
+	private final ConcurrentMap<String, String> fileHashes = new ConcurrentHashMap<String, String>();
+	private final Set<String> pinned = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	/* The index, guarded by this. */
+	private final Map<String, Long> sizes = new HashMap<String, Long>();
+	private long totalBytes;
+
+	private HeaderCache(File root, long maxBytes) {
+		this.root = root;
+		this.maxBytes = maxBytes;
+		final File[] entries = root.listFiles();
+		if (entries != null) {
+			for (File entry : entries) {
+				final String name = entry.getName();
+				if (name.contains(TRASH_SUFFIX) || (name.contains(TMP_SUFFIX)
+						&& entry.lastModified() < System.currentTimeMillis() - TMP_EXPIRY)) {
+					// Left over by a killed compilation.
+					deleteDirectory(entry);
+				} else if (entry.isDirectory() && name.indexOf('.') < 0) {
+					final long size = directorySize(entry);
+					sizes.put(name, size);
+					totalBytes += size;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the cache of a compilation, opening it on first use.
+	 * @param context The global context of the compilation.
+	 * @param root The directory of the cache.
+	 * @param maxBytes The size over which entries are evicted.
+	 * @return The cache stored in the context.
+	 */
+	public static HeaderCache get(Map<Object, Object> context, File root, long maxBytes) {
+		synchronized (context) {
+			HeaderCache cache = (HeaderCache) context.get(CONTEXT_KEY);
+			if (cache == null) {
+				cache = new HeaderCache(root, maxBytes);
+				context.put(CONTEXT_KEY, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * @return The version of the generator, part of every key.
+	 */
+	public static String generatorVersion() {
+		final String version = HeaderCache.class.getPackage().getImplementationVersion();
+		return FORMAT_VERSION + "/" + ((version != null) ? version : "dev");
+	}
+
+	/**
+	 * @param content The description of the inputs of an entry.
+	 * @return The key of the entry.
+	 */
+	public static String key(String content) {
+		return toHex(newDigest().digest(content.getBytes(MANIFEST_CHARSET)));
+	}
+
+	/**
+	 * @param signature The signature of an interface.
+	 * @return The key of the entry holding the header of the interface.
+	 */
+	public static String interfaceKey(String signature) {
+		return key("itf\n" + generatorVersion() + "\n" + signature);
+	}
+
+	/**
+	 * @param node An AST node.
+	 * @return The file the node was read from, or null if it is unknown.
+	 */
+	public static String sourceFile(Node node) {
+		String source = (node != null) ? node.astGetSource() : null;
+		if (source == null) {
+			return null;
+		}
+		// Strip the position in the file: ":line", ":line:column", ":line-line"...
+		source = source.replaceFirst("(:[0-9,\\-]+)+$", "");
+		File file;
+		if (source.startsWith("file:")) {
+			try {
+				file = new File(new URI(source));
+			} catch (URISyntaxException e) {
+				return null;
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		} else {
+			file = new File(source);
+		}
+		return file.isFile() ? file.getPath() : null;
+	}
+
+	/**
+	 * Look an entry up, with the entries it uses.
+	 * @param key The key of the entry.
+	 * @return The files to restore, or null if the entry is missing or stale.
+	 */
+	public List<Artifact> lookup(String key) {
+		return lookup(key, new ArrayList<String>());
+	}
+
+	/**
+	 * Look an entry up, with the entries it uses.
+	 * @param key The key of the entry.
+	 * @param dependencies Filled with the input files of the entries.
+	 * @return The files to restore, or null if the entry is missing or stale.
+	 */
+	public List<Artifact> lookup(String key, List<String> dependencies) {
+		final List<Artifact> artifacts = new ArrayList<Artifact>();
+		if (lookup(key, artifacts, dependencies)) {
+			hits.incrementAndGet();
+			return artifacts;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Forget the hashes of the input files computed so far, after they changed.
+	 */
+	public void forgetFileHashes() {
+		fileHashes.clear();
+	}
+
+	/**
+	 * @return The number of entries found up to date so far.
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of entries missing or stale so far.
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	private boolean lookup(String key, List<Artifact> artifacts, List<String> dependencies) {
+		final File entry = new File(root, key);
+		final List<String> manifest;
+		try {
+			manifest = Files.readAllLines(new File(entry, MANIFEST).toPath(), MANIFEST_CHARSET);
+		} catch (IOException e) {
+			return false;
+		}
+		String claim = null;
+		final List<String[]> outputs = new ArrayList<String[]>();
+		for (String line : manifest) {
+			final String[] fields = line.split(" ", line.startsWith("out ") ? 4 : 3);
+			if (fields[0].equals("dep")) {
+				if (!fields[1].equals(hash(fields[2]))) {
+					return false;
+				}
+				dependencies.add(fields[2]);
+			} else if (fields[0].equals("use")) {
+				if (!lookup(fields[1], artifacts, dependencies)) {
+					return false;
+				}
+			} else if (fields[0].equals("claim")) {
+				claim = fields[1];
+			} else if (fields[0].equals("out")) {
+				outputs.add(fields);
+			}
+		}
+		for (String[] output : outputs) {
+			final byte[] content;
+			try {
+				content = Files.readAllBytes(new File(entry, output[1]).toPath());
+			} catch (IOException e) {
+				// Removed by another compilation since the manifest was read.
+				return false;
+			}
+			if (!output[2].equals(toHex(newDigest().digest(content)))) {
+				// Replaced by another compilation since the manifest was read.
+				return false;
+			}
+			artifacts.add(new Artifact(output[3], content, claim));
+		}
+		pinned.add(key);
+		// The last modification of the entry directory tells its last use.
+		entry.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Store an entry, replacing the previous one with the same key.
+	 * @param key The key of the entry.
+	 * @param dependencies The input files of the entry.
+	 * @param uses The keys of the entries the files of this one go with.
+	 * @param claim The name to claim before restoring the files, or null.
+	 * @param outputs The generated files, by path in the output directory.
+	 */
+	public void store(String key, List<String> dependencies, List<String> uses, String claim,
+			Map<String, File> outputs) {
+		final File entry = new File(root, key);
+		File tmpEntry = null;
+		try {
+			if (!root.isDirectory() && !root.mkdirs() && !root.isDirectory()) {
+				throw new IOException("Cannot create directory " + root);
+			}
+			tmpEntry = Files.createTempDirectory(root.toPath(), key + TMP_SUFFIX).toFile();
+			final StringBuilder manifest = new StringBuilder();
+			for (String dependency : dependencies) {
+				final String hash = hash(dependency);
+				if (hash == null) {
+					deleteDirectory(tmpEntry);
+					return;
+				}
+				manifest.append("dep ").append(hash).append(' ').append(dependency).append('\n');
+			}
+			for (String use : uses) {
+				manifest.append("use ").append(use).append('\n');
+			}
+			if (claim != null) {
+				manifest.append("claim ").append(claim).append('\n');
+			}
+			int index = 0;
+			for (Map.Entry<String, File> output : outputs.entrySet()) {
+				final byte[] content = Files.readAllBytes(output.getValue().toPath());
+				FileUpdater.write(new File(tmpEntry, Integer.toString(index)), content, content.length, false, false);
+				manifest.append("out ").append(index).append(' ').append(toHex(newDigest().digest(content)))
+						.append(' ').append(output.getKey()).append('\n');
+				index++;
+			}
+			// Written last: the entry is complete once it has a manifest.
+			final byte[] bytes = manifest.toString().getBytes(MANIFEST_CHARSET);
+			FileUpdater.write(new File(tmpEntry, MANIFEST), bytes, bytes.length, false, false);
+
+			synchronized (this) {
+				discard(entry);
+				try {
+					Files.move(tmpEntry.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					if (!entry.isDirectory()) {
+						throw e;
+					}
+					// Another compilation stored the same entry meanwhile: keep it.
+					deleteDirectory(tmpEntry);
+				}
+				final Long previous = sizes.put(key, directorySize(entry));
+				totalBytes += sizes.get(key) - ((previous != null) ? previous : 0);
+				pinned.add(key);
+				evict();
+			}
+		} catch (IOException e) {
+			logger.info("Cache entry " + key + " cannot be stored !");
+			e.printStackTrace();
+			if (tmpEntry != null) {
+				deleteDirectory(tmpEntry);
+			}
+		}
+	}
+
+	/**
+	 * Evict the least recently used entries, not used by this compilation,
+	 * until the cache fits in its maximum size.
+	 */
+	private void evict() {
+		if (totalBytes <= maxBytes) {
+			return;
+		}
+		final List<String> candidates = new ArrayList<String>();
+		final Map<String, Long> lastUses = new HashMap<String, Long>();
+		for (String key : sizes.keySet()) {
+			if (!pinned.contains(key)) {
+				candidates.add(key);
+				lastUses.put(key, new File(root, key).lastModified());
+			}
+		}
+		Collections.sort(candidates, new Comparator<String>() {
+			public int compare(String k1, String k2) {
+				return lastUses.get(k1).compareTo(lastUses.get(k2));
+			}
+		});
+		for (String key : candidates) {
+			if (totalBytes <= maxBytes) {
+				break;
+			}
+			discard(new File(root, key));
+			totalBytes -= sizes.remove(key);
+		}
+	}
+
+	/**
+	 * @return The hash of the content of a file, computed once per compilation,
+	 *         or null if the file cannot be read.
+	 */
+	private String hash(String path) {
+		String hash = fileHashes.get(path);
+		if (hash == null) {
+			try {
+				hash = toHex(newDigest().digest(Files.readAllBytes(new File(path).toPath())));
+			} catch (IOException e) {
+				return null;
+			}
+			fileHashes.putIfAbsent(path, hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * Remove an entry: rename it atomically to a unique trash name, then delete
+	 * it, so that its name never holds a partly deleted entry.
+	 */
+	private static void discard(File entry) {
+		final File trash = new File(entry.getParentFile(), entry.getName() + TRASH_SUFFIX + System.nanoTime());
+		try {
+			Files.move(entry.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Missing, or already removed by another compilation.
+			return;
+		}
+		deleteDirectory(trash);
+	}
+
+	private static long directorySize(File directory) {
+		long size = 0;
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				size += file.length();
+			}
+		}
+		return size;
+	}
+
+	private static void deleteDirectory(File directory) {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		final char[] digits = "0123456789abcdef".toCharArray();
+		final char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = digits[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Watches the input files of the annotated definitions once the compilation
+ * is done, and regenerates the files of the definitions affected by a change.
+ * A reverse index maps each ADL or IDL file to the definitions generated from
+ * it. The changes are only processed once the compilation passed the
+ * {@link GenerationBarrier}, which then keeps the compiler running until the
+ * watcher is stopped; the watch thread itself is a daemon.
+ *
+ * The signatures of the interfaces of each definition are recorded too: a
+ * changed IDL file gives the signatures declared in it, and so every
+ * definition using them. Before the affected definitions are loaded again,
+ * the entries of the changed definitions and signatures, which would be
+ * stale, are evicted from the caches of the loaders and of the generator;
+ * the other entries are kept.
+ */
+public class HeaderWatcher {
+	/**
+	 * Key of the watcher in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = HeaderWatcher.class.getName();
+
+	/**
+	 * Time without new change after which a burst of changes, such as an editor
+	 * saving through a temporary file, is processed.
+	 */
+	private static final long SETTLE_MILLIS = 30;
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	private final Map<Object, Object> context;
+	private final FakeHeaderGenerator generator;
+	private final WatchService watchService;
+	private final Thread thread;
+	/* The index, guarded by this. */
+	private final Map<String, Set<String>> fileDefinitions = new HashMap<String, Set<String>>();
+	/* The signatures of the interfaces of each definition, guarded by this. */
+	private final Map<String, List<String>> definitionSignatures = new HashMap<String, List<String>>();
+	private final Map<String, Integer> generations = new HashMap<String, Integer>();
+	private final Set<Path> watchedDirs = new HashSet<Path>();
+	private boolean compiled;
+	private boolean stopped;
+
+	private HeaderWatcher(Map<Object, Object> context, FakeHeaderGenerator generator) throws IOException {
+		this.context = context;
+		this.generator = generator;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.thread = new Thread("FakeHeader watcher") {
+			@Override
+			public void run() {
+				watch();
+			}
+		};
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Get the watcher of a compilation, starting it on first use.
+	 * @param context The global context of the compilation.
+	 * @param generator The generator regenerating the definitions.
+	 * @return The watcher stored in the context, or null if the platform cannot
+	 *         watch files.
+	 */
+	public static HeaderWatcher get(Map<Object, Object> context, FakeHeaderGenerator generator) {
+		synchronized (context) {
+			HeaderWatcher watcher = (HeaderWatcher) context.get(CONTEXT_KEY);
+			if (watcher == null && !context.containsKey(CONTEXT_KEY)) {
+				try {
+					watcher = new HeaderWatcher(context, generator);
+					watcher.thread.start();
+				} catch (IOException e) {
+					logger.info("Input files cannot be watched !");
+					e.printStackTrace();
+				}
+				context.put(CONTEXT_KEY, watcher);
+			}
+			return watcher;
+		}
+	}
+
+	/**
+	 * Record the input files of a definition, each time it is generated.
+	 * @param definitionName The fully qualified name of the definition.
+	 * @param files The input files the definition is generated from.
+	 * @param signatures The signatures of the interfaces of the definition.
+	 */
+	public synchronized void register(String definitionName, Collection<String> files, List<String> signatures) {
+		for (String file : files) {
+			final File absolute = new File(file).getAbsoluteFile();
+			Set<String> definitions = fileDefinitions.get(absolute.getPath());
+			if (definitions == null) {
+				definitions = new HashSet<String>();
+				fileDefinitions.put(absolute.getPath(), definitions);
+			}
+			definitions.add(definitionName);
+			final Path dir = absolute.getParentFile().toPath();
+			if (watchedDirs.add(dir)) {
+				try {
+					// Editors often save through a new file renamed over the old one.
+					dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+							StandardWatchEventKinds.ENTRY_CREATE);
+				} catch (IOException e) {
+					logger.info("Directory " + dir + " cannot be watched !");
+					e.printStackTrace();
+				}
+			}
+		}
+		definitionSignatures.put(definitionName, signatures);
+		final Integer generation = generations.get(definitionName);
+		generations.put(definitionName, (generation != null) ? generation + 1 : 1);
+	}
+
+	private synchronized int generation(String definitionName) {
+		final Integer generation = generations.get(definitionName);
+		return (generation != null) ? generation : 0;
+	}
+
+	/**
+	 * Signal that the compilation passed the generation barrier: the changes
+	 * are processed from now on.
+	 */
+	public synchronized void compiled() {
+		compiled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Wait until the watcher is stopped.
+	 * @throws InterruptedException If the calling thread is interrupted.
+	 */
+	public synchronized void awaitStop() throws InterruptedException {
+		while (!stopped) {
+			wait();
+		}
+	}
+
+	/**
+	 * Stop watching, releasing the threads waiting in {@link #awaitStop()}.
+	 */
+	public void stop() {
+		thread.interrupt();
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+		synchronized (this) {
+			stopped = true;
+			notifyAll();
+		}
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				final Set<String> changed = new LinkedHashSet<String>();
+				boolean overflow = poll(watchService.take(), changed);
+				// Gather the whole burst of changes.
+				WatchKey key;
+				while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					overflow |= poll(key, changed);
+				}
+				awaitCompilation();
+				final long start = System.currentTimeMillis();
+				final Set<String> signatures = new HashSet<String>();
+				final Set<String> affected = affectedDefinitions(changed, overflow, signatures);
+				if (!affected.isEmpty()) {
+					evict(context, affected, signatures, changed);
+					regenerate(affected);
+					logger.info("Regenerated the headers of " + affected.size() + " definitions in "
+							+ (System.currentTimeMillis() - start) + " ms.");
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped.
+		} catch (ClosedWatchServiceException e) {
+			// Stopped.
+		} finally {
+			synchronized (this) {
+				stopped = true;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return true if events were lost.
+	 */
+	private boolean poll(WatchKey key, Set<String> changed) {
+		boolean overflow = false;
+		final Path dir = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+			} else {
+				changed.add(dir.resolve((Path) event.context()).toFile().getAbsolutePath());
+			}
+		}
+		key.reset();
+		return overflow;
+	}
+
+	/**
+	 * Wait for the compilation to pass the generation barrier, the changes made
+	 * meanwhile are processed after it.
+	 */
+	private synchronized void awaitCompilation() throws InterruptedException {
+		while (!compiled) {
+			wait();
+		}
+	}
+
+	/**
+	 * @param changed The absolute paths of the changed files.
+	 * @param overflow true if changes were lost: everything changed.
+	 * @param signatures Filled with the changed signatures: those declared in a
+	 *          changed IDL file, and every signature of the definitions of a
+	 *          changed file included by IDLs, which cannot be told apart.
+	 * @return The definitions generated from the changed files, or using a
+	 *         changed signature.
+	 */
+	synchronized Set<String> affectedDefinitions(Set<String> changed, boolean overflow, Set<String> signatures) {
+		final Set<String> affected = new LinkedHashSet<String>();
+		if (overflow) {
+			affected.addAll(generations.keySet());
+			for (List<String> definitionSignature : definitionSignatures.values()) {
+				signatures.addAll(definitionSignature);
+			}
+			return affected;
+		}
+		for (String file : changed) {
+			final Set<String> definitions = fileDefinitions.get(file);
+			if (definitions == null) {
+				continue;
+			}
+			affected.addAll(definitions);
+			final String path = file.replace(File.separatorChar, '/');
+			if (path.endsWith(".itf")) {
+				for (String definitionName : definitions) {
+					for (String signature : definitionSignatures.get(definitionName)) {
+						if (path.endsWith("/" + signature.replace('.', '/') + ".itf")) {
+							signatures.add(signature);
+						}
+					}
+				}
+			} else if (!path.endsWith(".adl") && !path.endsWith(".c")) {
+				// An IDL type file or a header included by IDLs.
+				for (String definitionName : definitions) {
+					signatures.addAll(definitionSignatures.get(definitionName));
+				}
+			}
+		}
+		for (Map.Entry<String, List<String>> entry : definitionSignatures.entrySet()) {
+			for (String signature : entry.getValue()) {
+				if (signatures.contains(signature)) {
+					affected.add(entry.getKey());
+					break;
+				}
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * Evict the entries of the changed definitions and signatures from the
+	 * caches of a compilation context: the resolved interfaces and emitted
+	 * headers of the generator, and the entries of the loader caches, the maps
+	 * of the context, named after a definition or a signature, or after the
+	 * path of a changed file included by IDLs.
+	 * @param context The global context of the compilation.
+	 * @param definitionNames The changed definitions.
+	 * @param signatures The changed signatures.
+	 * @param changed The absolute paths of the changed files.
+	 */
+	static void evict(Map<Object, Object> context, Set<String> definitionNames, Set<String> signatures,
+			Set<String> changed) {
+		final Set<String> paths = new HashSet<String>();
+		for (String file : changed) {
+			paths.add(file.replace(File.separatorChar, '/'));
+		}
+		synchronized (context) {
+			final IDLResolutionCache resolutionCache = (IDLResolutionCache) context.get(IDLResolutionCache.CONTEXT_KEY);
+			final EmittedHeaderRegistry emittedHeaders = (EmittedHeaderRegistry) context
+					.get(EmittedHeaderRegistry.CONTEXT_KEY);
+			for (String signature : signatures) {
+				if (resolutionCache != null) {
+					resolutionCache.remove(signature);
+				}
+				if (emittedHeaders != null) {
+					emittedHeaders.release(signature);
+				}
+			}
+			for (Object value : context.values()) {
+				if (!(value instanceof Map)) {
+					continue;
+				}
+				final Map<?, ?> cache = (Map<?, ?>) value;
+				synchronized (cache) {
+					for (Iterator<?> keys = cache.keySet().iterator(); keys.hasNext();) {
+						final Object key = keys.next();
+						if (key instanceof String
+								&& (definitionNames.contains(key) || signatures.contains(key) || isPathOf((String) key, paths))) {
+							keys.remove();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if a cache key is the path of one of the changed files,
+	 *         relative to its source directory.
+	 */
+	private static boolean isPathOf(String key, Set<String> paths) {
+		if (!key.startsWith("/")) {
+			return false;
+		}
+		for (String path : paths) {
+			if (path.endsWith(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Load the affected definitions again, once evicted from the caches, and
+	 * regenerate their files, with the interfaces they use resolved again.
+	 */
+	private void regenerate(Set<String> definitionNames) {
+		final HeaderCache headerCache;
+		final DependencyIndex index;
+		synchronized (context) {
+			headerCache = (HeaderCache) context.get(HeaderCache.CONTEXT_KEY);
+			index = (DependencyIndex) context.get(DependencyIndex.CONTEXT_KEY);
+		}
+		if (headerCache != null) {
+			headerCache.forgetFileHashes();
+		}
+		if (index != null) {
+			for (String definitionName : definitionNames) {
+				index.invalidate(definitionName);
+			}
+		}
+		for (String definitionName : definitionNames) {
+			final int generation = generation(definitionName);
+			try {
+				final Definition definition = generator.adlLoaderItf.load(definitionName, context);
+				// Loading the definition again processes its annotation, which already
+				// regenerated it, unless the loaders found it elsewhere.
+				if (generation(definitionName) == generation) {
+					final PreparedDefinition prepared = generator.prepareComponentHeaders(definition, context);
+					GenerationScheduler.get(context).submit(new Runnable() {
+						public void run() {
+							generator.writeComponentHeaders(prepared);
+						}
+					});
+				}
+			} catch (ADLException e) {
+				logger.info("Definition " + definitionName + " cannot be loaded !");
+				e.printStackTrace();
+			}
+		}
+		final GenerationScheduler scheduler = GenerationScheduler.get(context);
+		scheduler.await();
+		scheduler.release();
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.Map;
+
+/**
+ * Compilation wide cache of the interface signatures resolved by the
+ * FakeHeader generator. It is stored in the compilation context so that every
+ * generator instance of a compilation shares it. It is bounded by the
+ * {@link FakeHeaderOptions#MEMORY_CACHE_SIZE} option: an evicted signature
+ * has its IDL loaded again when it is met again.
+ */
+public class IDLResolutionCache {
+	/**
+	 * Key of the cache in the compilation context.
+	 */
+	public static final String CONTEXT_KEY = IDLResolutionCache.class.getName();
+
+	private final LruCache<String, ResolvedInterface> entries;
+
+	private IDLResolutionCache(int capacity) {
+		entries = new LruCache<String, ResolvedInterface>(capacity);
+	}
+
+	/**
+	 * Get the cache of a compilation, creating it on first use.
+	 * @param context The global context of the compilation.
+	 * @return The cache stored in the context.
+	 */
+	public static IDLResolutionCache get(Map<Object, Object> context) {
+		synchronized (context) {
+			IDLResolutionCache cache = (IDLResolutionCache) context.get(CONTEXT_KEY);
+			if (cache == null) {
+				cache = new IDLResolutionCache(LruCache.capacity(context));
+				context.put(CONTEXT_KEY, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * @param signature The fully qualified signature of an interface.
+	 * @return The resolved interface, or null if it was not resolved yet.
+	 */
+	public ResolvedInterface get(String signature) {
+		return entries.get(signature);
+	}
+
+	/**
+	 * Record a resolved interface. If another one was recorded concurrently for
+	 * the same signature, that one is kept.
+	 * @param resolved The resolved interface.
+	 * @return The resolved interface held by the cache for the signature.
+	 */
+	public ResolvedInterface put(ResolvedInterface resolved) {
+		return entries.putIfAbsent(resolved.getSignature(), resolved);
+	}
+
+	/**
+	 * Forget a resolved interface, so that its IDL is loaded again.
+	 * @param signature The fully qualified signature of an interface.
+	 */
+	public void remove(String signature) {
+		entries.remove(signature);
+	}
+
+	/**
+	 * @return The number of resolved signatures held.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The number of resolved signatures evicted so far.
+	 */
+	public long getEvictions() {
+		return entries.getEvictions();
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scan of the identifiers a source mentions, for the minimal include mode: a
+ * source includes the fragment of an interface when it mentions the name of
+ * the interface, its C type or one of the types of its IDL. The source is
+ * read with the local headers it includes with quotes, found next to the
+ * including file; comments and strings are not told apart, a false match
+ * only costs an include.
+ */
+final class IncludeScanner {
+
+	private static final Charset SOURCE_CHARSET = Charset.forName("ISO-8859-1");
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_]\\w*");
+	private static final Pattern LOCAL_INCLUDE = Pattern.compile("^\\s*#\\s*include\\s*\"([^\"]+)\"",
+			Pattern.MULTILINE);
+
+	private IncludeScanner() {
+	}
+
+	/**
+	 * @param sourceFile The source file.
+	 * @return The identifiers of the source and of its local headers, or null
+	 *         if the source cannot be read.
+	 */
+	static Set<String> identifiers(String sourceFile) {
+		final Set<String> identifiers = new HashSet<String>();
+		final Set<File> visited = new HashSet<File>();
+		final Deque<File> files = new ArrayDeque<File>();
+		final File source = new File(sourceFile).getAbsoluteFile();
+		files.add(source);
+		File file;
+		while ((file = files.poll()) != null) {
+			if (!visited.add(file)) {
+				continue;
+			}
+			final String text;
+			try {
+				text = new String(Files.readAllBytes(file.toPath()), SOURCE_CHARSET);
+			} catch (IOException e) {
+				if (file.equals(source)) {
+					return null;
+				}
+				continue;
+			}
+			identifiers.addAll(codeIdentifiers(text));
+			final Matcher include = LOCAL_INCLUDE.matcher(text);
+			while (include.find()) {
+				final File included = new File(file.getParentFile(), include.group(1));
+				if (included.isFile()) {
+					files.add(included);
+				}
+			}
+		}
+		return identifiers;
+	}
+
+	/**
+	 * @return The identifiers of a piece of C code.
+	 */
+	static Set<String> codeIdentifiers(CharSequence code) {
+		final Set<String> identifiers = new HashSet<String>();
+		final Matcher identifier = IDENTIFIER.matcher(code);
+		while (identifier.find()) {
+			identifiers.add(identifier.group());
+		}
+		return identifiers;
+	}
+
+	/**
+	 * @return true if the identifiers mention the interface.
+	 */
+	static boolean mentions(Set<String> identifiers, PreparedDefinition.PreparedInterface itf) {
+		if (identifiers.contains(itf.itf.getName()) || identifiers.contains(itf.resolved.getTypeName())) {
+			return true;
+		}
+		for (String typeName : itf.resolved.getTypeNames()) {
+			if (identifiers.contains(typeName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
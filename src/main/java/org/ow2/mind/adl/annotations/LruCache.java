@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe in-memory cache, evicting its least recently used entries
+ * over its capacity. A capacity of 0 leaves it unbounded. The keys are
+ * compared with equals, or by identity for the caches keyed by AST nodes;
+ * the entries are linked in access order, so that a hit does not allocate.
+ */
+final class LruCache<K, V> {
+
+	/**
+	 * Capacity of the caches in streaming mode, if not set.
+	 */
+	static final int STREAMING_CAPACITY = 1024;
+
+	/**
+	 * An entry, linked from the least to the most recently used.
+	 */
+	private static final class Entry<K, V> {
+		final K key;
+		final V value;
+		Entry<K, V> before;
+		Entry<K, V> after;
+
+		Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/* All guarded by this. */
+	private final Map<K, Entry<K, V>> entries;
+	/* The sentinel of the circular list of the entries. */
+	private final Entry<K, V> head = new Entry<K, V>(null, null);
+	private int capacity;
+	private long evictions;
+
+	LruCache(int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * @param identity true to compare the keys by identity.
+	 */
+	LruCache(int capacity, boolean identity) {
+		this.capacity = Math.max(0, capacity);
+		this.entries = identity ? new IdentityHashMap<K, Entry<K, V>>() : new HashMap<K, Entry<K, V>>();
+		head.before = head;
+		head.after = head;
+	}
+
+	/**
+	 * @param context The global context of the compilation.
+	 * @return The capacity of the caches, from the
+	 *         {@link FakeHeaderOptions#MEMORY_CACHE_SIZE} and
+	 *         {@link FakeHeaderOptions#STREAMING} options.
+	 */
+	static int capacity(Map<Object, Object> context) {
+		final boolean streaming = FakeHeaderOptions.getBoolean(context, FakeHeaderOptions.STREAMING, false);
+		return FakeHeaderOptions.getInt(context, FakeHeaderOptions.MEMORY_CACHE_SIZE,
+				streaming ? STREAMING_CAPACITY : 0);
+	}
+
+	synchronized V get(K key) {
+		final Entry<K, V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		unlink(entry);
+		link(entry);
+		return entry.value;
+	}
+
+	/**
+	 * @return The value held for the key: the previous one if there was one,
+	 *         else the given one.
+	 */
+	synchronized V putIfAbsent(K key, V value) {
+		final Entry<K, V> previous = entries.get(key);
+		if (previous != null) {
+			unlink(previous);
+			link(previous);
+			return previous.value;
+		}
+		final Entry<K, V> entry = new Entry<K, V>(key, value);
+		entries.put(key, entry);
+		link(entry);
+		trim();
+		return value;
+	}
+
+	synchronized void remove(K key) {
+		final Entry<K, V> entry = entries.remove(key);
+		if (entry != null) {
+			unlink(entry);
+		}
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		head.before = head;
+		head.after = head;
+	}
+
+	/**
+	 * Change the capacity, evicting the entries over it.
+	 */
+	synchronized void setCapacity(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		trim();
+	}
+
+	/**
+	 * @return The number of entries evicted so far.
+	 */
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Evict the least recently used entries over the capacity.
+	 */
+	private void trim() {
+		if (capacity == 0) {
+			return;
+		}
+		while (entries.size() > capacity) {
+			final Entry<K, V> eldest = head.after;
+			unlink(eldest);
+			entries.remove(eldest.key);
+			evictions++;
+		}
+	}
+
+	/**
+	 * Link an entry as the most recently used.
+	 */
+	private void link(Entry<K, V> entry) {
+		entry.after = head;
+		entry.before = head.before;
+		head.before.after = entry;
+		head.before = entry;
+	}
+
+	private void unlink(Entry<K, V> entry) {
+		entry.before.after = entry.after;
+		entry.after.before = entry.before;
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+/**
+ * Renders the per definition Makefile: one target per object, with the
+ * dependency files produced by the compiler included back, and a target
+ * named after the definition depending on all its objects. The top level
+ * Makefile includes every definition Makefile, so that "make -j" builds the
+ * whole architecture in parallel.
+ */
+public class MakefileWriter implements BuildFileWriter {
+
+	/**
+	 * Name of the top level Makefile, at the root of the output directory.
+	 */
+	public static final String AGGREGATE_FILE = "/Makefile";
+
+	/**
+	 * Name of the Makefile fragment holding the project wise flags, included by
+	 * every definition Makefile.
+	 */
+	public static final String FLAGS_FILE = "/mind-flags.mk";
+
+	public String getExtension() {
+		return "make";
+	}
+
+	public void write(PreparedDefinition prepared, AsciiEmitter makePrinter) {
+		final String definitionName = prepared.definition.getName();
+		// The project wise flags, and the definition wise ones, defined once.
+		makePrinter.print("include ").println(FLAGS_FILE.substring(1));
+		makePrinter.print(definitionName).print("_FLAGS :=");
+		for (final String flag : prepared.definitionFlags) {
+			makePrinter.print(' ').print(flag);
+		}
+		makePrinter.println();
+		makePrinter.println();
+		// Head of the Makefile 
+		// target name and "all" alias, the definition target depends on its objects.
+		final boolean unity = prepared.unityObject != null;
+		makePrinter.print("all : ").println(definitionName);
+		makePrinter.print(".PHONY : ").println(definitionName);
+		makePrinter.print(definitionName).print(" :");
+		if (unity) {
+			makePrinter.print(' ').print(prepared.unityObject);
+		} else {
+			for (PreparedDefinition.PreparedSource source : prepared.sources) {
+				makePrinter.print(' ').print(source.objectFile);
+			}
+			if (prepared.tablesObject != null) {
+				makePrinter.print(' ').print(prepared.tablesObject);
+			}
+		}
+		makePrinter.println();
+		makePrinter.println();
+
+		// The adl header precompiled once with the definition flags, next to the header
+		// so that the compiler picks it up when the header is force-included.
+		final String pch = prepared.adlHeader + ".gch";
+		final boolean usePch = prepared.precompiledHeader && !prepared.sources.isEmpty();
+		if (usePch) {
+			makePrinter.print(pch).print(" : ").println(prepared.adlHeader);
+			makePrinter.print("\t$(CC) -MMD -MP -MF ").print(dependencyFile(pch)).print(" -x c-header ")
+			.print(prepared.adlHeader).print(" -o ").print(pch)
+			.print(" $(MIND_INCDIRS) $(MIND_GLOBAL_CPPFLAGS) $(MIND_GLOBAL_CFLAGS) $(")
+			.print(definitionName).print("_FLAGS)");
+			// Append the flags shared by the sources using it
+			for (final String cflag : prepared.pchFlags)
+				makePrinter.print(' ').print(cflag);
+			makePrinter.println(" $(MIND_INPUT_INCDIRS)");
+			makePrinter.println();
+		}
+
+		if (unity) {
+			// A single compilation rule, the amalgamated source includes the adl headers itself.
+			makePrinter.print(prepared.unityObject).print(" : ").print(prepared.unitySource);
+			if (usePch) {
+				makePrinter.print(' ').print(pch);
+			}
+			makePrinter.println();
+			makePrinter.print("\t$(CC) -MMD -MP -c ").print(prepared.unitySource).print(" -o ").print(prepared.unityObject);
+			makePrinter.print(" $(MIND_INCDIRS) $(MIND_GLOBAL_CPPFLAGS) $(MIND_GLOBAL_CFLAGS) $(")
+			.print(definitionName).print("_FLAGS)");
+			// Append the flags of the amalgamated definitions and sources
+			for (final String cflag : prepared.unityFlags)
+				makePrinter.print(' ').print(cflag);
+			makePrinter.println(" $(MIND_INPUT_INCDIRS)");
+			makePrinter.println();
+		} else {
+			for (PreparedDefinition.PreparedSource source : prepared.sources) {
+				// A compilation rule per object, with generated header passed as pre-included file.
+				// The .impl.h only includes the adl header, which is force-included directly to
+				// use its precompiled version.
+				makePrinter.print(source.objectFile).print(" : ").print(source.sourceFile);
+				if (usePch) {
+					makePrinter.print(' ').print(pch);
+				}
+				makePrinter.println();
+				makePrinter.print("\t$(CC) -MMD -MP -c ").print(source.sourceFile).print(" -o ").print(source.objectFile)
+				.print(" -include ").print(usePch ? prepared.adlHeader : source.implHeader.substring(1));
+				// Append the project wise and definition wise compilation flags
+				makePrinter.print(" $(MIND_INCDIRS) $(MIND_GLOBAL_CPPFLAGS) $(MIND_GLOBAL_CFLAGS) $(")
+				.print(definitionName).print("_FLAGS)");
+				// Append the source wise compilation flags
+				for (final String cflag : source.flags)
+					makePrinter.print(' ').print(cflag);
+				// Append the include paths
+				makePrinter.println(" $(MIND_INPUT_INCDIRS)");
+				makePrinter.println();
+			}
+			if (prepared.tablesObject != null) {
+				// The constant interface tables, including the adl header themselves.
+				makePrinter.print(prepared.tablesObject).print(" : ").println(prepared.tablesSource);
+				makePrinter.print("\t$(CC) -MMD -MP -c ").print(prepared.tablesSource).print(" -o ").print(prepared.tablesObject)
+				.print(" $(MIND_INCDIRS) $(MIND_GLOBAL_CPPFLAGS) $(MIND_GLOBAL_CFLAGS) $(")
+				.print(definitionName).println("_FLAGS) $(MIND_INPUT_INCDIRS)");
+				makePrinter.println();
+			}
+		}
+
+		// The dependency files written by -MMD, once they exist.
+		if (usePch || unity || prepared.tablesObject != null || !prepared.sources.isEmpty()) {
+			makePrinter.print("-include");
+			if (usePch) {
+				makePrinter.print(' ').print(dependencyFile(pch));
+			}
+			if (unity) {
+				makePrinter.print(' ').print(dependencyFile(prepared.unityObject));
+			} else {
+				for (PreparedDefinition.PreparedSource source : prepared.sources) {
+					makePrinter.print(' ').print(dependencyFile(source.objectFile));
+				}
+				if (prepared.tablesObject != null) {
+					makePrinter.print(' ').print(dependencyFile(prepared.tablesObject));
+				}
+			}
+			makePrinter.println();
+		}
+	}
+
+	/**
+	 * @return The dependency file written by -MMD for an object file, or the one
+	 *         given to -MF for a precompiled header.
+	 */
+	private static String dependencyFile(String objectFile) {
+		if (objectFile.endsWith(".gch")) {
+			return objectFile + ".d";
+		}
+		return objectFile.substring(0, objectFile.length() - 2) + ".d";
+	}
+
+	public String getFlagsPath() {
+		return FLAGS_FILE;
+	}
+
+	public void writeFlags(CompilationFlags flags, AsciiEmitter out) {
+		out.println("# Generated by the FakeHeader annotation, do not edit.");
+		// Guarded, as it is included by every definition Makefile.
+		out.println("ifndef MIND_FLAGS_MK");
+		out.println("MIND_FLAGS_MK := 1");
+		out.print("MIND_INCDIRS :=");
+		for (final String inc : flags.incPaths) {
+			out.print(" -I").print(inc);
+		}
+		out.println();
+		out.print("MIND_GLOBAL_CPPFLAGS :=");
+		for (final String cppflag : flags.cppFlags) {
+			out.print(' ').print(cppflag);
+		}
+		out.println();
+		out.print("MIND_GLOBAL_CFLAGS :=");
+		for (final String cflag : flags.cFlags) {
+			out.print(' ').print(cflag);
+		}
+		out.println();
+		out.print("MIND_INPUT_INCDIRS :=");
+		for (final String inputDir : flags.inputDirs) {
+			out.print(" -I").print(inputDir);
+		}
+		out.println();
+		out.println("endif");
+	}
+
+	public String getAggregatePath() {
+		return AGGREGATE_FILE;
+	}
+
+	public void writeAggregateHead(CompilationFlags flags, AsciiEmitter out) {
+		out.println("# Generated by the FakeHeader annotation, do not edit.");
+		// First target, so that it is the default goal.
+		out.println("all :");
+		out.println(".PHONY : all");
+		out.println();
+	}
+
+	public void writeAggregateEntry(String buildFile, AsciiEmitter out) {
+		out.print("include ").println(buildFile);
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+
+package org.ow2.mind.adl.annotations;
+
+/**
+ * Renders ninja build files: one fragment per definition, with one edge per
+ * source, included by a top level build.ninja holding the shared rule and the
+ * project wise flags.
+ */
+public class NinjaWriter implements BuildFileWriter {
+
+	/**
+	 * Name of the top level ninja file, at the root of the output directory.
+	 */
+	public static final String AGGREGATE_FILE = "/build.ninja";
+
+	public String getExtension() {
+		return "ninja";
+	}
+
+	public void write(PreparedDefinition prepared, AsciiEmitter out) {
+		final String definitionName = prepared.definition.getName();
+		out.print("# Build of ").println(definitionName);
+		// The definition wise compilation flags, shared by all its sources.
+		out.print("defflags =");
+		for (final String flag : prepared.definitionFlags) {
+			out.print(' ').print(flag);
+		}
+		out.println();
+		out.println();
+
+		// The adl header precompiled once with the definition flags, next to the header.
+		final String pch = prepared.adlHeader + ".gch";
+		final boolean usePch = prepared.precompiledHeader && !prepared.sources.isEmpty();
+		if (usePch) {
+			out.print("build ").print(escapePath(pch)).print(": pch ").println(escapePath(prepared.adlHeader));
+			// The flags shared by the sources using it.
+			if (!prepared.pchFlags.isEmpty()) {
+				out.print("  srcflags =");
+				for (final String flag : prepared.pchFlags) {
+					out.print(' ').print(flag);
+				}
+				out.println();
+			}
+			out.println();
+		}
+
+		if (prepared.unityObject != null) {
+			// A single edge, the amalgamated source includes the adl headers itself.
+			out.print("build ").print(escapePath(prepared.unityObject)).print(": ccself ")
+			.print(escapePath(prepared.unitySource));
+			if (usePch) {
+				out.print(" | ").print(escapePath(pch));
+			}
+			out.println();
+			if (!prepared.unityFlags.isEmpty()) {
+				out.print("  srcflags =");
+				for (final String flag : prepared.unityFlags) {
+					out.print(' ').print(flag);
+				}
+				out.println();
+			}
+			out.println();
+			out.print("build ").print(escapePath(definitionName)).print(": phony ")
+			.println(escapePath(prepared.unityObject));
+			return;
+		}
+
+		// One edge per source, its dependencies on headers come from the depfile.
+		for (PreparedDefinition.PreparedSource source : prepared.sources) {
+			out.print("build ").print(escapePath(source.objectFile)).print(": cc ").print(escapePath(source.sourceFile));
+			if (usePch) {
+				// The .impl.h only includes the adl header, force-include it directly.
+				out.print(" | ").println(escapePath(pch));
+				out.print("  impl = ").println(prepared.adlHeader);
+			} else {
+				out.println();
+				out.print("  impl = ").println(source.implHeader.substring(1));
+			}
+			if (!source.flags.isEmpty()) {
+				out.print("  srcflags =");
+				for (final String flag : source.flags) {
+					out.print(' ').print(flag);
+				}
+				out.println();
+			}
+		}
+		if (prepared.tablesObject != null) {
+			// The constant interface tables, including the adl header themselves.
+			out.print("build ").print(escapePath(prepared.tablesObject)).print(": ccself ")
+			.println(escapePath(prepared.tablesSource));
+		}
+		out.println();
+
+		// A phony target named after the definition.
+		out.print("build ").print(escapePath(definitionName)).print(": phony");
+		for (PreparedDefinition.PreparedSource source : prepared.sources) {
+			out.print(' ').print(escapePath(source.objectFile));
+		}
+		if (prepared.tablesObject != null) {
+			out.print(' ').print(escapePath(prepared.tablesObject));
+		}
+		out.println();
+	}
+
+	public String getFlagsPath() {
+		// The project wise flags are variables of the top level file.
+		return null;
+	}
+
+	public void writeFlags(CompilationFlags flags, AsciiEmitter out) {
+	}
+
+	public String getAggregatePath() {
+		return AGGREGATE_FILE;
+	}
+
+	public void writeAggregateHead(CompilationFlags flags, AsciiEmitter out) {
+		out.println("# Generated by the FakeHeader annotation, do not edit.");
+		out.println("cc = cc");
+		// The project wise compilation flags, shared by all the definitions.
+		out.print("globalflags =");
+		for (final String inc : flags.incPaths) {
+			out.print(" -I").print(inc);
+		}
+		for (final String cppflag : flags.cppFlags) {
+			out.print(' ').print(cppflag);
+		}
+		for (final String cflag : flags.cFlags) {
+			out.print(' ').print(cflag);
+		}
+		out.println();
+		out.print("inputincs =");
+		for (final String inputDir : flags.inputDirs) {
+			out.print(" -I").print(inputDir);
+		}
+		out.println();
+		out.println();
+		out.println("rule cc");
+		out.println("  command = $cc -MMD -MF $out.d -include $impl $globalflags $defflags $srcflags $inputincs -c $in -o $out");
+		out.println("  depfile = $out.d");
+		out.println("  deps = gcc");
+		out.println("  description = CC $out");
+		out.println();
+		// Generated sources including their headers themselves (unity, interface tables).
+		out.println("rule ccself");
+		out.println("  command = $cc -MMD -MF $out.d $globalflags $defflags $srcflags $inputincs -c $in -o $out");
+		out.println("  depfile = $out.d");
+		out.println("  deps = gcc");
+		out.println("  description = CC $out");
+		out.println();
+		out.println("rule pch");
+		out.println("  command = $cc -MMD -MF $out.d -x c-header $globalflags $defflags $srcflags $inputincs $in -o $out");
+		out.println("  depfile = $out.d");
+		out.println("  deps = gcc");
+		out.println("  description = PCH $out");
+		out.println();
+	}
+
+	public void writeAggregateEntry(String buildFile, AsciiEmitter out) {
+		out.print("subninja ").println(escapePath(buildFile));
+	}
+
+	/**
+	 * Escape the characters having a meaning in ninja paths.
+	 */
+	static String escapePath(String path) {
+		if (path.indexOf('$') < 0 && path.indexOf(' ') < 0 && path.indexOf(':') < 0) {
+			return path;
+		}
+		final StringBuilder escaped = new StringBuilder(path.length() + 8);
+		for (int i = 0; i < path.length(); i++) {
+			final char c = path.charAt(i);
+			if (c == '$' || c == ' ' || c == ':') {
+				escaped.append('$');
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Output stage of the header generation: writes the rendered files on disk.
+ * By default the files are written by the thread rendering them. With
+ * writer threads (see {@link FakeHeaderOptions#WRITER_THREADS}), the
+ * rendered contents are handed over to bounded queues drained by the writer
+ * threads, so that the rendering never waits on the file system unless the
+ * queues are full. The files of the same path always go to the same thread,
+ * in order. The write failures are logged, and the work reading the written
+ * files back is run, at the {@link GenerationScheduler#await()} barrier,
+ * which reports the failures.
+ *
+ * The directories written to are remembered, and only created once. The
+ * writer threads are started on demand, and stopped by {@link #release()}
+ * once the barrier is passed.
+ */
+public class OutputWriter {
+
+	/**
+	 * Rendered files queued per writer thread before the rendering blocks.
+	 */
+	static final int QUEUE_CAPACITY = 256;
+
+	protected static Logger logger = FractalADLLogManager.getLogger("annotations");
+
+	/**
+	 * A rendered file, handed over to the writer: the rendering thread does not
+	 * touch it anymore.
+	 */
+	private static final class Payload {
+		final File file;
+		final AsciiEmitter emitter;
+		final boolean append;
+		final byte[] content;
+		final boolean onlyIfChanged;
+		final GenerationMetrics metrics;
+
+		Payload(File file, AsciiEmitter emitter, boolean append, byte[] content, boolean onlyIfChanged,
+				GenerationMetrics metrics) {
+			this.file = file;
+			this.emitter = emitter;
+			this.append = append;
+			this.content = content;
+			this.onlyIfChanged = onlyIfChanged;
+			this.metrics = metrics;
+		}
+
+		void write(boolean createDirectory) throws IOException {
+			final int size = (emitter != null) ? emitter.size() : content.length;
+			final boolean written;
+			if (emitter == null) {
+				written = FileUpdater.write(file, content, content.length, onlyIfChanged, createDirectory);
+			} else if (append) {
+				emitter.commitAppend(createDirectory);
+				written = true;
+			} else {
+				written = emitter.commit(createDirectory);
+			}
+			if (metrics != null) {
+				metrics.recordFile(size, written);
+			}
+		}
+	}
+
+	private final BlockingQueue<Payload>[] queues;
+	/* Started on demand, guarded by this. */
+	private final Thread[] threads;
+	private final Set<File> directories = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+	private final Queue<Runnable> afterWrites = new ConcurrentLinkedQueue<Runnable>();
+	private final Queue<IOException> failures = new ConcurrentLinkedQueue<IOException>();
+	private final Queue<IOException> reported = new ConcurrentLinkedQueue<IOException>();
+	/* The payloads queued or being written, guarded by this. */
+	private int pending;
+
+	/**
+	 * @param threadCount The number of writer threads, 0 to write on the
+	 *          rendering thread.
+	 */
+	@SuppressWarnings("unchecked")
+	OutputWriter(int threadCount) {
+		queues = new BlockingQueue[Math.max(0, threadCount)];
+		threads = new Thread[queues.length];
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new ArrayBlockingQueue<Payload>(QUEUE_CAPACITY);
+		}
+	}
+
+	/**
+	 * @return true if the files are written by writer threads.
+	 */
+	public boolean isAsync() {
+		return queues.length > 0;
+	}
+
+	/**
+	 * Write a rendered file. The emitter cannot be used afterwards.
+	 * @param emitter The rendered file.
+	 * @param metrics The metrics counting the file, or null.
+	 * @throws IOException If the file cannot be written, when written on the
+	 *           calling thread.
+	 */
+	public void write(AsciiEmitter emitter, GenerationMetrics metrics) throws IOException {
+		submit(new Payload(emitter.getFile(), emitter, false, null, false, metrics));
+	}
+
+	/**
+	 * Append a rendered content to a file. The emitter cannot be used
+	 * afterwards.
+	 * @see #write(AsciiEmitter, GenerationMetrics)
+	 */
+	public void append(AsciiEmitter emitter, GenerationMetrics metrics) throws IOException {
+		submit(new Payload(emitter.getFile(), emitter, true, null, false, metrics));
+	}
+
+	/**
+	 * Write a file content, which must not be modified afterwards.
+	 * @see #write(AsciiEmitter, GenerationMetrics)
+	 */
+	public void write(File file, byte[] content, boolean onlyIfChanged, GenerationMetrics metrics)
+			throws IOException {
+		submit(new Payload(file, null, false, content, onlyIfChanged, metrics));
+	}
+
+	/**
+	 * Run a piece of work reading back the files written so far: at once when
+	 * they are written on the rendering thread, else at the barrier.
+	 * @param task The work.
+	 */
+	public void afterWrites(Runnable task) {
+		if (isAsync()) {
+			afterWrites.add(task);
+		} else {
+			task.run();
+		}
+	}
+
+	/**
+	 * Report the failure of a write on the rendering thread, already logged by
+	 * the caller, to the next flush.
+	 * @param failure The failure.
+	 */
+	public void failed(IOException failure) {
+		reported.add(failure);
+	}
+
+	private void submit(Payload payload) throws IOException {
+		if (!isAsync()) {
+			writeNow(payload);
+			return;
+		}
+		final int index = (payload.file.hashCode() & Integer.MAX_VALUE) % queues.length;
+		final BlockingQueue<Payload> queue = queues[index];
+		synchronized (this) {
+			pending++;
+			if (threads[index] == null) {
+				threads[index] = new Thread("FakeHeader writer " + index) {
+					@Override
+					public void run() {
+						drain(queue);
+					}
+				};
+				threads[index].setDaemon(true);
+				threads[index].start();
+			}
+		}
+		final long start = System.nanoTime();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (!queue.offer(payload)) {
+					// Back pressure: wait for the writer to catch up.
+					queue.put(payload);
+					if (payload.metrics != null) {
+						payload.metrics.writerStall.record(System.nanoTime() - start);
+					}
+				}
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeNow(Payload payload) throws IOException {
+		final File directory = payload.file.getParentFile();
+		final boolean known = directory == null || directories.contains(directory);
+		try {
+			payload.write(!known);
+		} catch (IOException e) {
+			// Created again by the next write, if it was removed.
+			if (directory != null) {
+				directories.remove(directory);
+			}
+			throw e;
+		}
+		if (!known) {
+			directories.add(directory);
+		}
+	}
+
+	private void drain(BlockingQueue<Payload> queue) {
+		while (true) {
+			final Payload payload;
+			try {
+				payload = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				writeNow(payload);
+			} catch (IOException e) {
+				failures.add(e);
+			} catch (RuntimeException e) {
+				failures.add(new IOException("Cannot write " + payload.file, e));
+			} finally {
+				synchronized (this) {
+					if (--pending == 0) {
+						notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for the queued files to be written, log the write failures, then run
+	 * the work reading them back.
+	 * @return The write failures since the previous flush, empty if none.
+	 */
+	public List<IOException> flush() {
+		final List<IOException> flushed = new ArrayList<IOException>();
+		synchronized (this) {
+			while (pending > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					flushed.add(new IOException("Interrupted while the generated files are written", e));
+					return flushed;
+				}
+			}
+		}
+		IOException failure;
+		while ((failure = failures.poll()) != null) {
+			logger.info("Generated file cannot be written !");
+			failure.printStackTrace();
+			flushed.add(failure);
+		}
+		while ((failure = reported.poll()) != null) {
+			flushed.add(failure);
+		}
+		Runnable task;
+		while ((task = afterWrites.poll()) != null) {
+			task.run();
+		}
+		return flushed;
+	}
+
+	/**
+	 * Stop the writer threads, if nothing is being written: they are started
+	 * again by the next write.
+	 */
+	public synchronized void release() {
+		if (pending > 0) {
+			// Written since the flush, an interrupted write would fail.
+			return;
+		}
+		for (int i = 0; i < threads.length; i++) {
+			if (threads[i] != null) {
+				// Waiting for the next payload, or about to.
+				threads[i].interrupt();
+				threads[i] = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.fractal.adl.Definition;
+import org.ow2.mind.adl.ast.MindInterface;
+import org.ow2.mind.adl.ast.Source;
+
+/**
+ * Everything the generator needs from the compilation context to render the
+ * files of a definition. It is filled on the ADL loader thread, so that the
+ * rendering itself never touches the context, the loaders or the locators
+ * and can run on any thread.
+ */
+public class PreparedDefinition {
+
+	/**
+	 * An interface of the definition and its resolved IDL.
+	 */
+	public static final class PreparedInterface {
+		final MindInterface itf;
+		final ResolvedInterface resolved;
+		final File headerFile;
+		/* The fragment of the interface in minimal include mode, null otherwise. */
+		File fragmentFile;
+		String fragmentPath;
+		/* The bytes of the fragment rendered in this compilation, -1 if not rendered. */
+		int fragmentSize = -1;
+
+		PreparedInterface(MindInterface itf, ResolvedInterface resolved, File headerFile) {
+			this.itf = itf;
+			this.resolved = resolved;
+			this.headerFile = headerFile;
+		}
+	}
+
+	/**
+	 * A source of the definition, located, with its own compilation flags.
+	 */
+	public static final class PreparedSource {
+		final Source source;
+		final String sourceFile;
+		final String implHeader;
+		final String objectFile;
+		final File headerFile;
+		final List<String> flags = new ArrayList<String>();
+
+		PreparedSource(Source source, String sourceFile, String implHeader, String objectFile, File headerFile) {
+			this.source = source;
+			this.sourceFile = sourceFile;
+			this.implHeader = implHeader;
+			this.objectFile = objectFile;
+			this.headerFile = headerFile;
+		}
+	}
+
+	Definition definition;
+	final boolean writeIfChanged;
+	final EmittedHeaderRegistry emittedHeaders;
+	File adlHeaderFile;
+	String adlHeader;
+	boolean precompiledHeader;
+	boolean attributeLayout;
+	boolean constAttributes;
+	boolean minimalIncludes;
+	boolean streaming;
+	int pointerSize;
+	BuildFileWriter buildWriter;
+	File buildFile;
+	final List<PreparedInterface> serverInterfaces = new ArrayList<PreparedInterface>();
+	final List<PreparedInterface> clientInterfaces = new ArrayList<PreparedInterface>();
+	final List<PreparedSource> sources = new ArrayList<PreparedSource>();
+	CompilationFlags compilationFlags;
+	final List<String> definitionFlags = new ArrayList<String>();
+	final List<PreparedDefinition> unityMembers = new ArrayList<PreparedDefinition>();
+	final List<String> unityFlags = new ArrayList<String>();
+	final List<String> pchFlags = new ArrayList<String>();
+	File unityFile;
+	String unitySource;
+	String unityObject;
+	String bindHeader;
+	File bindHeaderFile;
+	File tablesFile;
+	String tablesSource;
+	String tablesObject;
+	HeaderCache cache;
+	String cacheKey;
+	final List<String> cacheDependencies = new ArrayList<String>();
+	final List<String> cacheUses = new ArrayList<String>();
+	final Map<String, File> cacheOutputs = new LinkedHashMap<String, File>();
+	/* The files to restore from the cache, empty if the generated files are up to date. */
+	List<HeaderCache.Artifact> cachedArtifacts;
+	DependencyIndex index;
+	GenerationMetrics metrics;
+	OutputWriter output;
+	long prepareNanos;
+	DependencyIndex.Record indexRecord;
+
+	PreparedDefinition(Definition definition, boolean writeIfChanged, EmittedHeaderRegistry emittedHeaders) {
+		this.definition = definition;
+		this.writeIfChanged = writeIfChanged;
+		this.emittedHeaders = emittedHeaders;
+	}
+
+	/**
+	 * @return The prepared definition, null once released.
+	 */
+	public Definition getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * Drop the references to the ASTs and to the rendered content, once the
+	 * files of the definition are written, in streaming mode.
+	 */
+	void release() {
+		definition = null;
+		serverInterfaces.clear();
+		clientInterfaces.clear();
+		sources.clear();
+		unityMembers.clear();
+		cacheOutputs.clear();
+		cachedArtifacts = null;
+		indexRecord = null;
+	}
+}
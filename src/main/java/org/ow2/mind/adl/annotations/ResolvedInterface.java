@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.ow2.mind.idl.ast.IDL;
+
+/**
+ * An interface signature resolved once for the whole compilation, together
+ * with everything the generator derives from it.
+ */
+public class ResolvedInterface {
+
+	/**
+	 * A method prototype with its C types already rendered.
+	 */
+	public static final class MethodPrototype {
+		private final String returnType;
+		private final String name;
+		private final String parameters;
+
+		public MethodPrototype(String returnType, String name, String parameters) {
+			this.returnType = returnType;
+			this.name = name;
+			this.parameters = parameters;
+		}
+
+		/**
+		 * @return The C return type of the method.
+		 */
+		public String getReturnType() {
+			return returnType;
+		}
+
+		/**
+		 * @return The method name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The C parameter list, without the surrounding parenthesis.
+		 */
+		public String getParameters() {
+			return parameters;
+		}
+	}
+
+	private final String signature;
+	private final IDL idl;
+	private final String headerPath;
+	private final String typeName;
+	private final List<MethodPrototype> prototypes;
+	private final List<String> typeNames;
+	/* The size of the header, once rendered in this compilation. */
+	private volatile int headerSize = -1;
+	/* The files the IDL was read from, once collected. */
+	private volatile List<String> inputFiles;
+
+	public ResolvedInterface(String signature, IDL idl, String headerPath,
+			String typeName, List<MethodPrototype> prototypes, List<String> typeNames) {
+		this.signature = signature;
+		this.idl = idl;
+		this.headerPath = headerPath;
+		this.typeName = typeName;
+		this.prototypes = Collections.unmodifiableList(prototypes);
+		this.typeNames = Collections.unmodifiableList(typeNames);
+	}
+
+	/**
+	 * @return The fully qualified signature of the interface.
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return The IDL loaded for the signature.
+	 */
+	public IDL getIdl() {
+		return idl;
+	}
+
+	/**
+	 * @return The Path-like string of the header file, without leading "/".
+	 */
+	public String getHeaderPath() {
+		return headerPath;
+	}
+
+	/**
+	 * @return The C type name of the interface.
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * @return The prototypes of the interface methods, in declaration order.
+	 */
+	public List<MethodPrototype> getPrototypes() {
+		return prototypes;
+	}
+
+	/**
+	 * @return The names of the types the IDL defines in the interface header.
+	 */
+	public List<String> getTypeNames() {
+		return typeNames;
+	}
+
+	/**
+	 * @return The size in bytes of the interface header, -1 if it was not
+	 *         rendered in this compilation.
+	 */
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	void setHeaderSize(int headerSize) {
+		this.headerSize = headerSize;
+	}
+
+	/**
+	 * @return The files the IDL was read from: its own, the IDLs it imports or
+	 *         extends and the files it includes, null if not collected yet.
+	 */
+	public List<String> getInputFiles() {
+		return inputFiles;
+	}
+
+	void setInputFiles(List<String> inputFiles) {
+		this.inputFiles = Collections.unmodifiableList(inputFiles);
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.fractal.adl.Node;
+import org.ow2.mind.idl.ast.IDL;
+import org.ow2.mind.idl.ast.Include;
+import org.ow2.mind.idl.ast.IncludeContainer;
+
+/**
+ * Walks of the ASTs collecting the files a definition or an IDL was read
+ * from, for the dependency index, the persistent cache and the watcher: the
+ * file of every node of the merged AST, which covers the members inherited
+ * from super-definitions, the names of the super-definitions and of the
+ * imported or extended IDLs, to be loaded and walked in turn, and the files
+ * an IDL includes, headers or IDL type files.
+ */
+final class TransitiveInputs {
+
+	/**
+	 * Node type naming a super-definition, or an extended IDL.
+	 */
+	static final String EXTENDS = "extends";
+
+	/**
+	 * Node type naming an imported IDL.
+	 */
+	static final String IMPORT = "import";
+
+	/**
+	 * Attributes of the reference nodes holding the referenced name.
+	 */
+	private static final String[] REFERENCE_ATTRIBUTES = { "name", "path" };
+
+	private TransitiveInputs() {
+	}
+
+	/**
+	 * Collect the files the nodes of an AST were read from.
+	 * @param root The root of the AST.
+	 * @param files Filled with the files.
+	 */
+	static void sources(Node root, Set<String> files) {
+		final Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		final List<Node> pending = new ArrayList<Node>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			final Node node = pending.remove(pending.size() - 1);
+			if (node == null || !visited.add(node)) {
+				continue;
+			}
+			final String file = HeaderCache.sourceFile(node);
+			if (file != null) {
+				files.add(file);
+			}
+			final String[] types = node.astGetNodeTypes();
+			if (types == null) {
+				continue;
+			}
+			for (String type : types) {
+				final Node[] children = node.astGetNodes(type);
+				if (children != null) {
+					Collections.addAll(pending, children);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param root The root of an AST.
+	 * @param referenceTypes The types of the reference nodes.
+	 * @return The names of the definitions or IDLs the reference nodes name.
+	 */
+	static List<String> references(Node root, String... referenceTypes) {
+		final List<String> names = new ArrayList<String>();
+		final String[] types = root.astGetNodeTypes();
+		if (types == null) {
+			return names;
+		}
+		for (String type : types) {
+			if (!Arrays.asList(referenceTypes).contains(type)) {
+				continue;
+			}
+			final Node[] references = root.astGetNodes(type);
+			if (references == null) {
+				continue;
+			}
+			for (Node reference : references) {
+				final Map<String, String> attributes = (reference != null) ? reference.astGetAttributes() : null;
+				if (attributes == null) {
+					continue;
+				}
+				for (String attribute : REFERENCE_ATTRIBUTES) {
+					final String name = attributes.get(attribute);
+					if (name != null && name.length() > 0) {
+						names.add(name);
+						break;
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Collect the files an IDL includes with quotes, found in the input
+	 * directories; the system headers are left out.
+	 * @param idl The IDL.
+	 * @param inputDirs The input directories of the compilation.
+	 * @param files Filled with the files.
+	 */
+	static void includes(IDL idl, List<String> inputDirs, Set<String> files) {
+		if (!(idl instanceof IncludeContainer)) {
+			return;
+		}
+		final Include[] includes = ((IncludeContainer) idl).getIncludes();
+		if (includes == null) {
+			return;
+		}
+		for (Include include : includes) {
+			final String path = include.getPath();
+			if (path == null || !path.startsWith("\"")) {
+				continue;
+			}
+			final String relative = path.replace("\"", "").replaceFirst("^/", "");
+			for (String inputDir : inputDirs) {
+				final File file = new File(inputDir, relative);
+				if (file.isFile()) {
+					files.add(file.getPath());
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Looks for the names that the sources of a unity build may define twice once
+ * they are amalgamated. Methods and private methods are mangled with the
+ * definition name by commonMacro.h, but file scope static symbols and macros
+ * are not. This is a line based scan, not a C parser: it only sees the
+ * declarations starting at the beginning of a line.
+ */
+public final class UnityCollisionChecker {
+
+	private static final Charset SOURCE_CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * A file scope static variable or function: "static" at the beginning of a
+	 * line, the name being the last identifier before "(", "[", "=" or ";".
+	 */
+	private static final Pattern STATIC_SYMBOL = Pattern
+			.compile("^static\\s+[\\w\\s\\*]*?\\b([A-Za-z_]\\w*)\\s*[\\(\\[=;]");
+
+	private static final Pattern MACRO = Pattern.compile("^\\s*#\\s*define\\s+([A-Za-z_]\\w*)");
+
+	private UnityCollisionChecker() {
+	}
+
+	/**
+	 * @param members The definitions amalgamated in the unity build.
+	 * @return A description of each name defined by more than one source.
+	 */
+	public static List<String> check(List<PreparedDefinition> members) {
+		final Map<String, String> symbols = new HashMap<String, String>();
+		final Map<String, String> macros = new HashMap<String, String>();
+		final List<String> collisions = new ArrayList<String>();
+		for (PreparedDefinition member : members) {
+			for (PreparedDefinition.PreparedSource source : member.sources) {
+				final List<String> lines;
+				try {
+					lines = Files.readAllLines(new File(source.sourceFile).toPath(), SOURCE_CHARSET);
+				} catch (IOException e) {
+					collisions.add("cannot read " + source.sourceFile + " to look for collisions");
+					continue;
+				}
+				for (String line : lines) {
+					Matcher matcher = STATIC_SYMBOL.matcher(line);
+					if (matcher.find()) {
+						record(symbols, "static symbol", matcher.group(1), source.sourceFile, collisions);
+					}
+					matcher = MACRO.matcher(line);
+					if (matcher.find()) {
+						record(macros, "macro", matcher.group(1), source.sourceFile, collisions);
+					}
+				}
+			}
+		}
+		return collisions;
+	}
+
+	private static void record(Map<String, String> definedIn, String kind, String name, String sourceFile,
+			List<String> collisions) {
+		final String previous = definedIn.put(name, sourceFile);
+		if (previous != null && !previous.equals(sourceFile)) {
+			collisions.add(kind + " \"" + name + "\" defined by both " + previous + " and " + sourceFile);
+		}
+	}
+}
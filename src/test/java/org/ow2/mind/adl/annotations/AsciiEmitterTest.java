@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link AsciiEmitter}: rendering, buffer growth and reuse of the
+ * pooled buffers.
+ */
+public class AsciiEmitterTest {
+
+	private static final String NL = System.getProperty("line.separator", "\n");
+
+	private File dir;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("emitter").toFile();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	@Test
+	public void render() throws Exception {
+		final File file = new File(dir, "a/b.h");
+		final AsciiEmitter out = new AsciiEmitter(file, false);
+		out.print("int").print(' ').print("x = ").print(-42).println(";");
+		out.print((String) null).print(Integer.MIN_VALUE).print(0).println();
+		out.print("caf\u00e9");
+		Assert.assertEquals(out.size(), ("int x = -42;" + NL + "null-21474836480" + NL + "caf?").length());
+		Assert.assertTrue(out.commit());
+		Assert.assertEquals(FileUpdaterTest.read(file), "int x = -42;" + NL + "null-21474836480" + NL + "caf?");
+	}
+
+	@Test
+	public void growBuffer() throws Exception {
+		final File file = new File(dir, "big.h");
+		final AsciiEmitter out = new AsciiEmitter(file, false);
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			out.print(i).print(',');
+			expected.append(i).append(',');
+		}
+		out.commit();
+		Assert.assertEquals(FileUpdaterTest.read(file), expected.toString());
+	}
+
+	@Test
+	public void reusePooledBuffers() throws Exception {
+		// A released buffer is reused by the next emitter: nothing of its
+		// previous content may leak into the new file.
+		final AsciiEmitter first = new AsciiEmitter(new File(dir, "first.h"), false);
+		first.print("a content longer than the next one");
+		first.commit();
+		final AsciiEmitter discarded = new AsciiEmitter(new File(dir, "discarded.h"), false);
+		discarded.print("discarded content");
+		discarded.discard();
+		final File second = new File(dir, "second.h");
+		final AsciiEmitter out = new AsciiEmitter(second, false);
+		out.print("short");
+		out.commit();
+		Assert.assertEquals(FileUpdaterTest.read(second), "short");
+		Assert.assertFalse(new File(dir, "discarded.h").exists());
+	}
+
+	@Test
+	public void commitIfChanged() throws Exception {
+		final File file = new File(dir, "c.h");
+		final AsciiEmitter first = new AsciiEmitter(file, true);
+		first.print("same");
+		Assert.assertTrue(first.commit());
+		final AsciiEmitter second = new AsciiEmitter(file, true);
+		second.print("same");
+		Assert.assertFalse(second.commit());
+	}
+
+	@Test
+	public void commitAppend() throws Exception {
+		final File file = new File(dir, "all.mk");
+		final AsciiEmitter first = new AsciiEmitter(file, false);
+		first.println("head");
+		first.commit();
+		final AsciiEmitter entry = new AsciiEmitter(file, false);
+		entry.println("entry");
+		entry.commitAppend();
+		Assert.assertEquals(FileUpdaterTest.read(file), "head" + NL + "entry" + NL);
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ow2.mind.adl.ast.Attribute;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link AttributeLayout}: the conservative scan of the attribute
+ * writes, and the resulting structures.
+ */
+public class AttributeLayoutTest {
+
+	private static boolean written(String code) {
+		return AttributeLayout.isWritten("a", code);
+	}
+
+	@Test
+	public void reads() {
+		Assert.assertFalse(written("int x = ATTR(a);"));
+		Assert.assertFalse(written("if (ATTR(a) == 1) return ATTR(a) + 1;"));
+		Assert.assertFalse(written("while (ATTR(a) != x) {}"));
+		Assert.assertFalse(written("return (ATTR(a));"));
+		Assert.assertFalse(written("x = sizeof(ATTR(a));"));
+		Assert.assertFalse(written("ATTR(ab) = 1;"));
+		Assert.assertFalse(written("ATTR(b) = ATTR(a);"));
+	}
+
+	@Test
+	public void writes() {
+		Assert.assertTrue(written("ATTR(a) = 1;"));
+		Assert.assertTrue(written("ATTR( a ) += 1;"));
+		Assert.assertTrue(written("ATTR(a) <<= 1;"));
+		Assert.assertTrue(written("ATTR(a)++;"));
+		Assert.assertTrue(written("--ATTR(a);"));
+		Assert.assertTrue(written("int *p = &ATTR(a);"));
+		Assert.assertTrue(written("ATTR(a)[0] = 1;"));
+		Assert.assertTrue(written("ATTR(a).x = 1;"));
+		Assert.assertTrue(written("ATTR(a)->x = 1;"));
+	}
+
+	@Test
+	public void callArguments() {
+		Assert.assertTrue(written("strcpy(ATTR(a), \"x\");"));
+		Assert.assertTrue(written("memset(dst, 0, ATTR(a));"));
+		Assert.assertTrue(written("SET (ATTR(a));"));
+		Assert.assertTrue(written("f(x,ATTR(a))"));
+	}
+
+	@Test
+	public void scalarTypes() {
+		Assert.assertTrue(AttributeLayout.isScalar("int"));
+		Assert.assertTrue(AttributeLayout.isScalar("unsigned char"));
+		Assert.assertTrue(AttributeLayout.isScalar("uint64_t"));
+		Assert.assertFalse(AttributeLayout.isScalar("char *"));
+		Assert.assertFalse(AttributeLayout.isScalar("int[4]"));
+		Assert.assertFalse(AttributeLayout.isScalar("string"));
+		Assert.assertFalse(AttributeLayout.isScalar("struct point"));
+	}
+
+	private static Attribute attribute(String name, String type) {
+		return (Attribute) SyntheticAst.node(new Class<?>[] { Attribute.class }, "name", name, "type", type);
+	}
+
+	private static AttributeLayout layout(String code, boolean constAttributes) throws Exception {
+		final File file = File.createTempFile("layout", ".c");
+		try {
+			Files.write(file.toPath(), code.getBytes("US-ASCII"));
+			final List<PreparedDefinition.PreparedSource> sources = new ArrayList<PreparedDefinition.PreparedSource>();
+			sources.add(new PreparedDefinition.PreparedSource(null, file.getPath(), null, null, null));
+			return AttributeLayout.compute(new Attribute[] { attribute("c", "char"), attribute("n", "int"),
+					attribute("buf", "char[8]"), attribute("p", "int *"), attribute("w", "short") }, sources, 4,
+					constAttributes);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static List<String> names(List<AttributeLayout.Field> fields) {
+		final List<String> names = new ArrayList<String>();
+		for (AttributeLayout.Field field : fields) {
+			names.add(field.attribute.getName());
+		}
+		return names;
+	}
+
+	private static final String READS = "int f(void) { return ATTR(c) + ATTR(n) + ATTR(buf)[0] + *ATTR(p); }\n"
+			+ "void g(void) { ATTR(w) = 2; }\n";
+
+	@Test
+	public void constAttributes() throws Exception {
+		final AttributeLayout layout = layout(READS, true);
+		// The array, the pointer and the written attribute stay mutable.
+		Assert.assertEquals(names(layout.constFields), Arrays.asList("n", "c"));
+		Assert.assertEquals(names(layout.mutableFields), Arrays.asList("buf", "p", "w"));
+	}
+
+	@Test
+	public void mutableByDefault() throws Exception {
+		final AttributeLayout layout = layout(READS, false);
+		Assert.assertTrue(layout.constFields.isEmpty());
+		Assert.assertEquals(names(layout.mutableFields), Arrays.asList("buf", "n", "p", "w", "c"));
+	}
+
+	@Test
+	public void macros() throws Exception {
+		Assert.assertTrue(layout(READS + "#define SET(x, v) \\\n  ATTR(x) = v\n", true).constFields.isEmpty());
+		Assert.assertTrue(layout(READS + "#define ZERO(x) ATTR(x) = 0\n", true).constFields.isEmpty());
+		Assert.assertTrue(layout(READS + "void h(void) { ATTRIBUTE_STRUCT_NAME.n = 1; }\n", true).constFields
+				.isEmpty());
+	}
+
+	@Test
+	public void unreadableSource() throws Exception {
+		final List<PreparedDefinition.PreparedSource> sources = Collections.singletonList(
+				new PreparedDefinition.PreparedSource(null, "/nonexistent/source.c", null, null, null));
+		Assert.assertTrue(AttributeLayout.compute(new Attribute[] { attribute("n", "int") }, sources, 4, true).constFields
+				.isEmpty());
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.fractal.adl.Node;
+import org.ow2.mind.idl.ast.PrimitiveType;
+import org.ow2.mind.idl.ast.StructReference;
+import org.ow2.mind.idl.ast.Type;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link CTypeRenderer}: rendered C types, memoization by type node
+ * instance, interning and capacity.
+ */
+public class CTypeRendererTest {
+
+	/**
+	 * @return A primitive type equal to every other node, counting the calls
+	 *         of getName.
+	 */
+	private static Type primitive(final String name, final AtomicInteger getNameCalls) {
+		return (Type) Proxy.newProxyInstance(CTypeRendererTest.class.getClassLoader(), new Class<?>[] {
+				PrimitiveType.class, Node.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("equals")) {
+					return true;
+				} else if (method.getName().equals("hashCode")) {
+					return 0;
+				} else if (method.getName().equals("getName")) {
+					getNameCalls.incrementAndGet();
+					return name;
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void render() {
+		final CTypeRenderer renderer = new CTypeRenderer();
+		Assert.assertEquals(renderer.render(SyntheticAst.primitive("int")), "int");
+		Assert.assertEquals(renderer.render(SyntheticAst.deepType(SyntheticAst.primitive("char"), 0)), "char * ");
+		Assert.assertEquals(renderer.render(SyntheticAst.deepType(SyntheticAst.primitive("char"), 2)),
+				"char *  *  * ");
+		final Type struct = (Type) SyntheticAst.node(new Class<?>[] { StructReference.class }, "name", "struct s");
+		Assert.assertEquals(renderer.render(struct), "struct s");
+	}
+
+	@Test
+	public void memoizeByInstance() {
+		final CTypeRenderer renderer = new CTypeRenderer();
+		final AtomicInteger calls = new AtomicInteger();
+		final Type first = primitive("int", calls);
+		final Type second = primitive("long", calls);
+		// Equal nodes are still distinct types.
+		Assert.assertEquals(renderer.render(first), "int");
+		Assert.assertEquals(renderer.render(second), "long");
+		Assert.assertEquals(renderer.render(first), "int");
+		Assert.assertEquals(calls.get(), 2);
+		Assert.assertEquals(renderer.size(), 2);
+		renderer.clear();
+		Assert.assertEquals(renderer.render(first), "int");
+		Assert.assertEquals(calls.get(), 3);
+	}
+
+	@Test
+	public void intern() {
+		final CTypeRenderer renderer = new CTypeRenderer();
+		final String first = renderer.render(SyntheticAst.deepType(SyntheticAst.primitive("int"), 1));
+		final String second = renderer.render(SyntheticAst.deepType(SyntheticAst.primitive("int"), 1));
+		Assert.assertSame(first, second);
+	}
+
+	@Test
+	public void concurrentRender() throws Exception {
+		final CTypeRenderer renderer = new CTypeRenderer();
+		final Type[] types = new Type[50];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = SyntheticAst.deepType(SyntheticAst.primitive("t" + i), i % 3);
+		}
+		final String[][] results = new String[4][types.length];
+		final Thread[] threads = new Thread[results.length];
+		for (int t = 0; t < threads.length; t++) {
+			final String[] result = results[t];
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < types.length; i++) {
+						result[i] = renderer.render(types[i]);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int i = 0; i < types.length; i++) {
+			for (String[] result : results) {
+				Assert.assertSame(result[i], results[0][i]);
+			}
+		}
+	}
+
+	@Test
+	public void capacity() {
+		final CTypeRenderer renderer = new CTypeRenderer();
+		for (int i = 0; i < 20; i++) {
+			renderer.render(SyntheticAst.primitive("t" + i));
+		}
+		Assert.assertEquals(renderer.size(), 20);
+		renderer.setCapacity(5);
+		Assert.assertEquals(renderer.size(), 5);
+		final AtomicInteger calls = new AtomicInteger();
+		final Type used = primitive("used", calls);
+		renderer.render(used);
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals(renderer.render(SyntheticAst.primitive("u" + i)), "u" + i);
+			Assert.assertTrue(renderer.size() <= 5);
+			// Kept while it is used, the least recently used types being evicted.
+			renderer.render(used);
+		}
+		Assert.assertEquals(calls.get(), 1);
+		renderer.setCapacity(0);
+		for (int i = 0; i < 20; i++) {
+			renderer.render(SyntheticAst.primitive("v" + i));
+		}
+		Assert.assertTrue(renderer.size() > 20);
+	}
+}
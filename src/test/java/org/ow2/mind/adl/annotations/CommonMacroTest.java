@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Expands the macros of the runtime commonMacro.h with the C preprocessor,
+ * gcc by default (-Dtest.cc), in strict C99. Skipped when there is no
+ * compiler.
+ */
+public class CommonMacroTest {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private File dir;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("macro").toFile();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	/**
+	 * Preprocess lines after the definition prologue of the generated adl
+	 * headers.
+	 * @return The non blank lines of the preprocessed output.
+	 */
+	private List<String> preprocess(String... lines) throws Exception {
+		final File runtime = new File(System.getProperty("basedir", "."), "src/assemble/resources/runtime");
+		Assert.assertTrue(new File(runtime, "commonMacro.h").isFile(), "commonMacro.h in " + runtime);
+		final List<String> source = new ArrayList<String>();
+		source.add("#define DEFINITION_NAME pkg_Def");
+		source.add("#include \"commonMacro.h\"");
+		source.addAll(Arrays.asList(lines));
+		final File file = new File(dir, "test.c");
+		Files.write(file.toPath(), source, ASCII);
+
+		final Process process;
+		try {
+			process = new ProcessBuilder(System.getProperty("test.cc", "gcc"), "-E", "-P", "-std=c99",
+					"-pedantic-errors", "-I", runtime.getPath(), file.getPath()).redirectErrorStream(true).start();
+		} catch (IOException e) {
+			throw new SkipException("No C compiler to preprocess commonMacro.h: " + e.getMessage());
+		}
+		final String output = read(process.getInputStream());
+		Assert.assertEquals(process.waitFor(), 0, output);
+		final List<String> result = new ArrayList<String>();
+		for (String line : output.split("\r?\n")) {
+			if (line.trim().length() > 0) {
+				result.add(line.trim());
+			}
+		}
+		return result;
+	}
+
+	private static String read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) > 0) {
+			out.write(buffer, 0, count);
+		}
+		return new String(out.toByteArray(), ASCII);
+	}
+
+	@Test
+	public void isBound() throws Exception {
+		final List<String> lines = preprocess(
+				"#define _component_pkg_Def_interface_unbound_bound 0",
+				"#define _component_pkg_Def_interface_bound_bound 1",
+				"unbound = IS_BOUND(unbound);",
+				"bound = IS_BOUND(bound);",
+				"server = IS_BOUND(server);",
+				"collection = IS_BOUND_COLLECTION(cc, 1);");
+		Assert.assertEquals(lines, Arrays.asList("unbound = 0;", "bound = 1;", "server = 1;", "collection = 1;"));
+	}
+
+	@Test
+	public void isBoundInConditionals() throws Exception {
+		// As the unbound branches are meant to be removed by the preprocessor.
+		final List<String> lines = preprocess(
+				"#define _component_pkg_Def_interface_unbound_bound 0",
+				"#define _component_pkg_Def_interface_bound_bound 1",
+				"#if IS_BOUND(unbound)",
+				"unbound;",
+				"#endif",
+				"#if IS_BOUND(bound)",
+				"bound;",
+				"#endif",
+				"#if IS_BOUND(server)",
+				"server;",
+				"#endif");
+		Assert.assertEquals(lines, Arrays.asList("bound;", "server;"));
+	}
+
+	@Test
+	public void attributes() throws Exception {
+		final List<String> lines = preprocess(
+				"x = ATTR(size);",
+				"struct ATTRIBUTE_STRUCT_NAME s;",
+				"y = METH(itf, get)(); PRIVATE.count = GET_COLLECTION_SIZE(cc);");
+		Assert.assertEquals(lines, Arrays.asList(
+				"x = _component_pkg_Def_attribute_size;",
+				"struct _component_pkg_Def_attribute s;",
+				"y = _component_pkg_Def_interface_itf_method_get();"
+						+ " _component_pkg_Def_private_data.count = _component_pkg_Def_interface_cc_size;"));
+	}
+}
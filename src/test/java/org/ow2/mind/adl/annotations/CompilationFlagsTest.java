@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the {@link CompilationFlags} written once as Makefile variables.
+ */
+public class CompilationFlagsTest {
+
+	/**
+	 * The project flags are defined once in mind-flags.mk, and only referenced
+	 * by the rules of the definition Makefiles, with the variable of the
+	 * definition flags, the flags of each source following them.
+	 */
+	@Test
+	public void flagVariables() throws Exception {
+		final Map<Object, Object> context = SyntheticAst.context();
+		context.put(CompilationFlags.CONTEXT_KEY, new CompilationFlags(Arrays.asList("/inc"),
+				Arrays.asList("-DPROJECT"), Arrays.asList("-Wall"), Arrays.asList("/src")));
+		final Map<String, List<String>> cFlags = new HashMap<String, List<String>>();
+		cFlags.put("/golden/Client0.c", Arrays.asList("-DCLIENT", "-O2"));
+		cFlags.put("/golden/Client1.c", Arrays.asList("-DCLIENT"));
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			GoldenFilesTest.generate(dir, context, GoldenFilesTest.interfaces(), cFlags, false, true);
+			final String flags = read(new File(dir, "mind-flags.mk"));
+			Assert.assertTrue(flags.contains("MIND_INCDIRS := -I/inc\n"), flags);
+			Assert.assertTrue(flags.contains("MIND_GLOBAL_CPPFLAGS := -DPROJECT\n"), flags);
+			Assert.assertTrue(flags.contains("MIND_GLOBAL_CFLAGS := -Wall\n"), flags);
+			Assert.assertTrue(flags.contains("MIND_INPUT_INCDIRS := -I/src\n"), flags);
+			final String client = read(new File(dir, "golden/Client.make"));
+			Assert.assertTrue(client.startsWith("include mind-flags.mk\n"), client);
+			Assert.assertTrue(client.contains("golden.Client_FLAGS :=\n"), client);
+			for (String flag : Arrays.asList("-I/inc", "-DPROJECT", "-Wall", "-I/src")) {
+				Assert.assertFalse(client.contains(flag), flag);
+			}
+			// The two sources and the tables.
+			Assert.assertEquals(occurrences(client,
+					"$(MIND_INCDIRS) $(MIND_GLOBAL_CPPFLAGS) $(MIND_GLOBAL_CFLAGS) $(golden.Client_FLAGS)"), 3);
+			Assert.assertEquals(occurrences(client, "$(golden.Client_FLAGS) -DCLIENT -O2 $(MIND_INPUT_INCDIRS)"), 1);
+			Assert.assertEquals(occurrences(client, "$(golden.Client_FLAGS) -DCLIENT $(MIND_INPUT_INCDIRS)"), 1);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), Charset.forName("US-ASCII"));
+	}
+
+	private static int occurrences(String text, String part) {
+		int count = 0;
+		for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+			count++;
+		}
+		return count;
+	}
+}
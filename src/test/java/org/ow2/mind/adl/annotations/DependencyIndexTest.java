@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link DependencyIndex}: records persisted across compilations,
+ * and the definitions to generate again after a change.
+ */
+public class DependencyIndexTest {
+
+	private File dir;
+	private File indexFile;
+	private File adl;
+	private File idl;
+	private File header;
+	private File otherHeader;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("index").toFile();
+		indexFile = new File(dir, "fakeheader.index");
+		adl = write("a.adl", "component a");
+		idl = write("I.itf", "interface I");
+		header = write("a.adl.h", "header a");
+		otherHeader = write("b.adl.h", "header b");
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	private File write(String name, String content) throws Exception {
+		final File file = new File(dir, name);
+		Files.write(file.toPath(), FileUpdaterTest.bytes(content));
+		return file;
+	}
+
+	/**
+	 * @return The index as opened by a new compilation.
+	 */
+	private DependencyIndex open() {
+		return DependencyIndex.get(new HashMap<Object, Object>(), indexFile);
+	}
+
+	/**
+	 * Record a.A, generated from a.adl and I.itf, and b.B, generated from
+	 * I.itf, and save them.
+	 */
+	private void generate() {
+		final DependencyIndex index = open();
+		index.put(DependencyIndex.newRecord("a.A", "fp", Arrays.asList(adl.getPath(), idl.getPath()),
+				Arrays.asList(header)));
+		index.put(DependencyIndex.newRecord("b.B", "fp", Arrays.asList(idl.getPath()), Arrays.asList(otherHeader)));
+		index.save();
+	}
+
+	@Test
+	public void upToDate() throws Exception {
+		generate();
+		final DependencyIndex index = open();
+		final DependencyIndex.Record record = index.upToDate("a.A", "fp");
+		Assert.assertNotNull(record);
+		Assert.assertEquals(Arrays.asList(record.inputs),
+				Arrays.asList(adl.getAbsolutePath(), idl.getAbsolutePath()));
+		Assert.assertEquals(Arrays.asList(record.outputs), Arrays.asList(header.getAbsolutePath()));
+		Assert.assertNotNull(index.upToDate("b.B", "fp"));
+		Assert.assertNull(index.upToDate("c.C", "fp"));
+	}
+
+	@Test
+	public void otherOptions() throws Exception {
+		generate();
+		Assert.assertNull(open().upToDate("a.A", "other fp"));
+	}
+
+	@Test
+	public void missingOutput() throws Exception {
+		generate();
+		Assert.assertTrue(header.delete());
+		final DependencyIndex index = open();
+		Assert.assertNull(index.upToDate("a.A", "fp"));
+		Assert.assertNotNull(index.upToDate("b.B", "fp"));
+	}
+
+	@Test
+	public void changedInput() throws Exception {
+		generate();
+		write("a.adl", "component a { }");
+		DependencyIndex index = open();
+		Assert.assertNull(index.upToDate("a.A", "fp"));
+		Assert.assertNotNull(index.upToDate("b.B", "fp"));
+
+		// Only the definitions of a shared input are affected by its change.
+		write("I.itf", "interface I { }");
+		index = open();
+		Assert.assertNull(index.upToDate("a.A", "fp"));
+		Assert.assertNull(index.upToDate("b.B", "fp"));
+
+		// Generated again, with the new inputs.
+		index.put(DependencyIndex.newRecord("a.A", "fp", Arrays.asList(adl.getPath(), idl.getPath()),
+				Arrays.asList(header)));
+		Assert.assertNotNull(index.upToDate("a.A", "fp"));
+		index.save();
+		index = open();
+		Assert.assertNotNull(index.upToDate("a.A", "fp"));
+		Assert.assertNull(index.upToDate("b.B", "fp"));
+	}
+
+	@Test
+	public void invalidate() throws Exception {
+		generate();
+		final DependencyIndex index = open();
+		index.invalidate("a.A");
+		Assert.assertNull(index.upToDate("a.A", "fp"));
+		Assert.assertNotNull(index.upToDate("b.B", "fp"));
+	}
+
+	@Test
+	public void savedAtBarrier() throws Exception {
+		final Map<Object, Object> context = new HashMap<Object, Object>();
+		final DependencyIndex index = DependencyIndex.get(context, indexFile);
+		Assert.assertSame(DependencyIndex.get(context, indexFile), index);
+		index.put(DependencyIndex.newRecord("a.A", "fp", Arrays.asList(adl.getPath()), Arrays.asList(header)));
+		Assert.assertFalse(indexFile.exists());
+		Assert.assertTrue(GenerationScheduler.get(context).await().isEmpty());
+		Assert.assertTrue(indexFile.isFile());
+		Assert.assertNotNull(open().upToDate("a.A", "fp"));
+		// Written through a temporary file, moved over the index.
+		Assert.assertEquals(dir.list().length, 5, Arrays.toString(dir.list()));
+	}
+
+	@Test
+	public void saveOnlyIfModified() throws Exception {
+		generate();
+		final long written = indexFile.lastModified() - 10000;
+		indexFile.setLastModified(written);
+		final DependencyIndex index = open();
+		Assert.assertNotNull(index.upToDate("a.A", "fp"));
+		index.save();
+		Assert.assertEquals(indexFile.lastModified(), written);
+	}
+
+	@Test
+	public void corruptedIndex() throws Exception {
+		generate();
+		final byte[] content = Files.readAllBytes(indexFile.toPath());
+		// Truncated.
+		Files.write(indexFile.toPath(), Arrays.copyOf(content, content.length / 2));
+		Assert.assertNull(open().upToDate("a.A", "fp"));
+		// Other format.
+		Files.write(indexFile.toPath(), FileUpdaterTest.bytes("not an index"));
+		Assert.assertNull(open().upToDate("a.A", "fp"));
+		// String indexes out of the string table.
+		final byte[] corrupted = content.clone();
+		Arrays.fill(corrupted, content.length - 8, content.length, (byte) 0x7f);
+		Files.write(indexFile.toPath(), corrupted);
+		Assert.assertNull(open().upToDate("b.B", "fp"));
+	}
+
+	@Test
+	public void noIndex() throws Exception {
+		final DependencyIndex index = open();
+		Assert.assertNull(index.upToDate("a.A", "fp"));
+		index.save();
+		Assert.assertFalse(indexFile.exists());
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link EmittedHeaderRegistry}.
+ */
+public class EmittedHeaderRegistryTest {
+
+	@Test
+	public void claimOnce() {
+		final EmittedHeaderRegistry registry = new EmittedHeaderRegistry();
+		Assert.assertTrue(registry.claim("a.I"));
+		Assert.assertFalse(registry.claim("a.I"));
+		Assert.assertFalse(registry.claim("a.I"));
+		Assert.assertEquals(registry.getEmittedCount(), 1);
+		Assert.assertEquals(registry.getSkippedCount(), 2);
+		registry.release("a.I");
+		Assert.assertTrue(registry.claim("a.I"));
+	}
+
+	/**
+	 * The server and the client both use golden.itf.I0: its header is written
+	 * by the first of them only.
+	 */
+	@Test
+	public void sharedInterfaceSkipped() throws Exception {
+		final Map<Object, Object> context = SyntheticAst.context();
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			GoldenFilesTest.generate(dir, context, GoldenFilesTest.interfaces(),
+					Collections.<String, List<String>> emptyMap(), false, true);
+			final EmittedHeaderRegistry registry = EmittedHeaderRegistry.get(context);
+			Assert.assertEquals(registry.getEmittedCount(), 3);
+			Assert.assertEquals(registry.getSkippedCount(), 1);
+			Assert.assertTrue(new File(dir, "golden/itf/I0.itf.h").isFile());
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+}
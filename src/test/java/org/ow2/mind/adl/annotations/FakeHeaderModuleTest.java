@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+import java.io.File;
+import java.util.Collections;
+
+import org.ow2.mind.idl.ast.IDL;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+
+/**
+ * Tests of {@link FakeHeaderModule}.
+ */
+public class FakeHeaderModuleTest {
+
+	/**
+	 * Every processor gets the same generator, so that its caches are shared by
+	 * the annotated definitions.
+	 */
+	@Test
+	public void singletonGenerator() throws Exception {
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			final Injector injector = Guice.createInjector(Modules.override(new FakeHeaderModule()).with(
+					SyntheticAst.services(dir, Collections.<String, IDL> emptyMap())));
+			final FakeHeaderAnnotationProcessor first = injector.getInstance(FakeHeaderAnnotationProcessor.class);
+			final FakeHeaderAnnotationProcessor second = injector.getInstance(FakeHeaderAnnotationProcessor.class);
+			Assert.assertNotSame(first, second);
+			Assert.assertNotNull(first.headerWriter);
+			Assert.assertSame(first.headerWriter, second.headerWriter);
+			Assert.assertSame(injector.getInstance(FakeHeaderGenerator.class), first.headerWriter);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+}
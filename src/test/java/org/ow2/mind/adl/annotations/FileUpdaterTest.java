@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link FileUpdater}: plain and write-if-changed writes, and the
+ * atomic replacement through a temporary file.
+ */
+public class FileUpdaterTest {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private File dir;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("fileupdater").toFile();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	@Test
+	public void writeCreatesDirectories() throws Exception {
+		final File file = new File(dir, "a/b/c.h");
+		Assert.assertTrue(FileUpdater.write(file, bytes("content"), 7, false));
+		Assert.assertEquals(read(file), "content");
+	}
+
+	@Test
+	public void writeOnlyLength() throws Exception {
+		final File file = new File(dir, "c.h");
+		FileUpdater.write(file, bytes("content and garbage"), 7, false);
+		Assert.assertEquals(read(file), "content");
+	}
+
+	@Test
+	public void writeTruncates() throws Exception {
+		final File file = new File(dir, "c.h");
+		FileUpdater.write(file, bytes("a longer content"), 16, false);
+		FileUpdater.write(file, bytes("short"), 5, false);
+		Assert.assertEquals(read(file), "short");
+	}
+
+	@Test
+	public void writeIfChangedKeepsUnchangedFile() throws Exception {
+		final File file = new File(dir, "c.h");
+		FileUpdater.write(file, bytes("content"), 7, true);
+		final long past = file.lastModified() - 10000;
+		Assert.assertTrue(file.setLastModified(past));
+
+		Assert.assertFalse(FileUpdater.write(file, bytes("content"), 7, true));
+		Assert.assertEquals(file.lastModified(), past);
+	}
+
+	@Test
+	public void writeIfChangedReplacesChangedFile() throws Exception {
+		final File file = new File(dir, "c.h");
+		FileUpdater.write(file, bytes("content"), 7, true);
+		final long past = file.lastModified() - 10000;
+		Assert.assertTrue(file.setLastModified(past));
+
+		// Same size, other bytes.
+		Assert.assertTrue(FileUpdater.write(file, bytes("CONTENT"), 7, true));
+		Assert.assertEquals(read(file), "CONTENT");
+		Assert.assertTrue(file.lastModified() > past);
+		// Replaced through a temporary file renamed over it, which is gone.
+		Assert.assertEquals(dir.list().length, 1);
+	}
+
+	@Test
+	public void append() throws Exception {
+		final File file = new File(dir, "a/c.mk");
+		FileUpdater.append(file, bytes("first\n"), 6);
+		FileUpdater.append(file, bytes("second\n"), 7);
+		Assert.assertEquals(read(file), "first\nsecond\n");
+	}
+
+	static byte[] bytes(String content) {
+		return content.getBytes(ASCII);
+	}
+
+	static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), ASCII);
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link GenerationMetrics}.
+ */
+public class GenerationMetricsTest {
+
+	/**
+	 * The summary is written at the generation barrier, with the counters of
+	 * the compilation and the time of each definition.
+	 */
+	@Test
+	public void summary() throws Exception {
+		final Map<Object, Object> context = SyntheticAst.context();
+		context.put(FakeHeaderOptions.METRICS, "true");
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			GoldenFilesTest.generate(dir, context, GoldenFilesTest.interfaces(),
+					Collections.<String, List<String>> emptyMap(), false, true);
+			final String json = new String(Files.readAllBytes(new File(dir, "fakeheader-metrics.json").toPath()),
+					Charset.forName("UTF-8"));
+			Assert.assertTrue(json.startsWith("{\n") && json.endsWith("}\n"), json);
+			Assert.assertTrue(json.contains("\"interfaceHeadersEmitted\": 3,\n"), json);
+			Assert.assertTrue(json.contains("\"interfaceHeadersShared\": 1,\n"), json);
+			Assert.assertTrue(json.contains("\"resolvedIdlsHeld\": 3,\n"), json);
+			Assert.assertTrue(json.contains("\"filesUnchanged\": 0,\n"), json);
+			Assert.assertTrue(json.contains("\"golden.Client\": "), json);
+			Assert.assertTrue(json.contains("\"golden.Server\": "), json);
+			final GenerationMetrics metrics = (GenerationMetrics) context.get(GenerationMetrics.CONTEXT_KEY);
+			Assert.assertTrue(metrics.toText().contains("interface headers: 3 emitted, 1 shared\n"), metrics.toText());
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	/**
+	 * Without the option, the metrics are only counted.
+	 */
+	@Test
+	public void noSummary() throws Exception {
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			GoldenFilesTest.generate(dir, SyntheticAst.context(), GoldenFilesTest.interfaces(),
+					Collections.<String, List<String>> emptyMap(), false, true);
+			Assert.assertFalse(new File(dir, "fakeheader-metrics.json").exists());
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+}
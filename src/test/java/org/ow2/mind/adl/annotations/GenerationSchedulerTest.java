@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link GenerationScheduler}: inline and parallel work, the
+ * barrier, its failures and the order of the work run at the barrier.
+ */
+public class GenerationSchedulerTest {
+
+	private GenerationScheduler scheduler;
+
+	@AfterMethod
+	public void release() {
+		if (scheduler != null) {
+			scheduler.await();
+			scheduler.release();
+			scheduler = null;
+		}
+	}
+
+	private GenerationScheduler scheduler(String parallel, int threads) {
+		final Map<Object, Object> context = new HashMap<Object, Object>();
+		context.put(FakeHeaderOptions.PARALLEL, parallel);
+		context.put(FakeHeaderOptions.THREADS, Integer.toString(threads));
+		scheduler = GenerationScheduler.get(context);
+		Assert.assertSame(GenerationScheduler.get(context), scheduler);
+		return scheduler;
+	}
+
+	@Test
+	public void inline() {
+		final GenerationScheduler scheduler = scheduler("none", 1);
+		final Thread[] ran = new Thread[1];
+		scheduler.submit(new Runnable() {
+			public void run() {
+				ran[0] = Thread.currentThread();
+			}
+		});
+		Assert.assertSame(ran[0], Thread.currentThread());
+		Assert.assertTrue(scheduler.await().isEmpty());
+	}
+
+	@Test
+	public void awaitSubmittedWork() {
+		final GenerationScheduler scheduler = scheduler("forkjoin", 2);
+		final AtomicInteger done = new AtomicInteger();
+		final AtomicInteger inline = new AtomicInteger();
+		final Thread caller = Thread.currentThread();
+		for (int i = 0; i < 100; i++) {
+			scheduler.submit(new Runnable() {
+				public void run() {
+					if (Thread.currentThread() == caller) {
+						inline.incrementAndGet();
+					}
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.incrementAndGet();
+				}
+			});
+		}
+		Assert.assertTrue(scheduler.await().isEmpty());
+		Assert.assertEquals(done.get(), 100);
+		Assert.assertEquals(inline.get(), 0);
+	}
+
+	@Test
+	public void submitAfterRelease() {
+		final GenerationScheduler scheduler = scheduler("forkjoin", 2);
+		final Set<Thread> workers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final Runnable record = new Runnable() {
+			public void run() {
+				workers.add(Thread.currentThread());
+			}
+		};
+		scheduler.submit(record);
+		Assert.assertTrue(scheduler.await().isEmpty());
+		scheduler.release();
+		final Thread released = workers.iterator().next();
+		// The watcher generates again after the barrier.
+		scheduler.submit(record);
+		Assert.assertTrue(scheduler.await().isEmpty());
+		Assert.assertEquals(workers.size(), 2);
+		Assert.assertFalse(workers.contains(Thread.currentThread()));
+		Assert.assertTrue(workers.contains(released));
+	}
+
+	@Test
+	public void boundInFlightWork() throws Exception {
+		final GenerationScheduler scheduler = scheduler("forkjoin", 2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Runnable blocked = new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		scheduler.submit(blocked);
+		scheduler.submit(blocked);
+		// A third submission waits for one of the two tasks in flight.
+		final CountDownLatch submitted = new CountDownLatch(1);
+		final Thread loader = new Thread() {
+			@Override
+			public void run() {
+				scheduler.submit(blocked);
+				submitted.countDown();
+			}
+		};
+		loader.start();
+		Assert.assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+		release.countDown();
+		Assert.assertTrue(submitted.await(10, TimeUnit.SECONDS));
+		Assert.assertTrue(scheduler.await().isEmpty());
+	}
+
+	@Test
+	public void reportFailures() {
+		final GenerationScheduler scheduler = scheduler("forkjoin", 2);
+		final IllegalStateException thrown = new IllegalStateException("task");
+		scheduler.submit(new Runnable() {
+			public void run() {
+				throw thrown;
+			}
+		});
+		final IllegalStateException reported = new IllegalStateException("reported");
+		scheduler.failed(reported);
+		final List<Throwable> failures = scheduler.await();
+		Assert.assertEquals(failures.size(), 2);
+		Assert.assertTrue(failures.contains(reported));
+		failures.remove(reported);
+		// The fork-join pool may rethrow a copy, caused by the thrown exception.
+		Throwable failure = failures.get(0);
+		while (failure != thrown && failure.getCause() != null) {
+			failure = failure.getCause();
+		}
+		Assert.assertSame(failure, thrown);
+		// Reported once.
+		Assert.assertTrue(scheduler.await().isEmpty());
+	}
+
+	@Test
+	public void barrierOrder() {
+		final GenerationScheduler scheduler = scheduler("forkjoin", 2);
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		scheduler.atBarrier(new Runnable() {
+			public void run() {
+				order.add("after flush");
+			}
+		}, false);
+		scheduler.atBarrier(new Runnable() {
+			public void run() {
+				order.add("before flush");
+			}
+		}, true);
+		scheduler.defer(new Runnable() {
+			public void run() {
+				order.add("stage");
+				scheduler.submit(new Runnable() {
+					public void run() {
+						order.add("submitted");
+					}
+				});
+			}
+		});
+		Assert.assertTrue(scheduler.await().isEmpty());
+		Assert.assertEquals(order, Arrays.asList("stage", "submitted", "before flush", "after flush"));
+
+		// The stages run once, the barrier work at every barrier.
+		order.clear();
+		Assert.assertTrue(scheduler.await().isEmpty());
+		Assert.assertEquals(order, Arrays.asList("before flush", "after flush"));
+	}
+
+	@Test
+	public void barrierWorkFailure() {
+		final GenerationScheduler scheduler = scheduler("none", 1);
+		final AtomicInteger after = new AtomicInteger();
+		final RuntimeException thrown = new RuntimeException("barrier");
+		scheduler.atBarrier(new Runnable() {
+			public void run() {
+				throw thrown;
+			}
+		}, true);
+		scheduler.atBarrier(new Runnable() {
+			public void run() {
+				after.incrementAndGet();
+			}
+		}, false);
+		Assert.assertEquals(scheduler.await(), Collections.<Throwable> singletonList(thrown));
+		// The failure does not stop the remaining work.
+		Assert.assertEquals(after.get(), 1);
+	}
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.interfaces.Interface;
+import org.objectweb.fractal.adl.types.TypeInterface;
+import org.ow2.mind.adl.annotation.ADLLoaderPhase;
+import org.ow2.mind.idl.ast.IDL;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+
+/**
+ * Golden file tests: a small architecture is generated through the
+ * annotation processor, and every generated file is compared with its
+ * reference in the golden/&lt;case&gt; resource directory, the output
+ * directory being replaced by @OUTPUT@. With -Dgolden.update=true the
+ * references are written again, to src/test/resources/golden (or the
+ * golden.dir directory), after an intended change of the generated files.
+ */
+public class GoldenFilesTest {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final String OUTPUT = "@OUTPUT@";
+
+	@Test
+	public void makeBackend() throws Exception {
+		check("make", Collections.<String, String> emptyMap(), Collections.<String, List<String>> emptyMap());
+	}
+
+	@Test
+	public void ninjaBackend() throws Exception {
+		check("ninja", Collections.singletonMap(FakeHeaderOptions.BUILD_BACKEND, "ninja"),
+				Collections.<String, List<String>> emptyMap());
+	}
+
+	/**
+	 * The batch generates the same files, at the barrier.
+	 */
+	@Test
+	public void makeBatch() throws Exception {
+		check("make", Collections.singletonMap(FakeHeaderOptions.BATCH, "true"),
+				Collections.<String, List<String>> emptyMap());
+	}
+
+	/**
+	 * A definition extending the client inherits its sources, which are
+	 * compiled into objects of its own.
+	 */
+	@Test
+	public void makeInheritedSources() throws Exception {
+		check("make-inherited", Collections.<String, String> emptyMap(), Collections.<String, List<String>> emptyMap(),
+				true);
+	}
+
+	@Test
+	public void ninjaInheritedSources() throws Exception {
+		check("ninja-inherited", Collections.singletonMap(FakeHeaderOptions.BUILD_BACKEND, "ninja"),
+				Collections.<String, List<String>> emptyMap(), true);
+	}
+
+	/**
+	 * The sources of each definition share their flags: the adl headers are
+	 * precompiled with them.
+	 */
+	@Test
+	public void makePrecompiledHeader() throws Exception {
+		final Map<String, List<String>> cFlags = new HashMap<String, List<String>>();
+		cFlags.put("/golden/Server0.c", Arrays.asList("-DSERVER"));
+		cFlags.put("/golden/Client0.c", Arrays.asList("-DCLIENT", "-O2"));
+		cFlags.put("/golden/Client1.c", Arrays.asList("-DCLIENT", "-O2"));
+		check("make-pch", Collections.singletonMap(FakeHeaderOptions.PRECOMPILED_HEADER, "true"), cFlags);
+	}
+
+	/**
+	 * The sources of the client carry different flags: only the adl header of
+	 * the server is precompiled.
+	 */
+	@Test
+	public void ninjaPrecompiledHeader() throws Exception {
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put(FakeHeaderOptions.BUILD_BACKEND, "ninja");
+		options.put(FakeHeaderOptions.PRECOMPILED_HEADER, "true");
+		final Map<String, List<String>> cFlags = new HashMap<String, List<String>>();
+		cFlags.put("/golden/Server0.c", Arrays.asList("-DSERVER"));
+		cFlags.put("/golden/Client0.c", Arrays.asList("-DCLIENT"));
+		cFlags.put("/golden/Client1.c", Arrays.asList("-DCLIENT", "-O2"));
+		check("ninja-pch", options, cFlags);
+	}
+
+	/**
+	 * The sources only include the fragments of the interfaces they mention.
+	 */
+	@Test
+	public void makeMinimalIncludes() throws Exception {
+		check("make-minimal", Collections.singletonMap(FakeHeaderOptions.MINIMAL_INCLUDES, "true"),
+				Collections.<String, List<String>> emptyMap());
+	}
+
+	/**
+	 * The generated header bytes the sources include are counted from the
+	 * rendered files, while the writer threads may still be writing them.
+	 */
+	@Test
+	public void includedHeaderBytes() throws Exception {
+		final File dir = SyntheticAst.temporaryDirectory().getCanonicalFile();
+		try {
+			final Map<String, String> options = new HashMap<String, String>();
+			options.put(FakeHeaderOptions.MINIMAL_INCLUDES, "true");
+			options.put(FakeHeaderOptions.WRITER_THREADS, "2");
+			final Map<Object, Object> context = generate(dir, options,
+					Collections.<String, List<String>> emptyMap(), false, true);
+			final Pattern include = Pattern.compile("^#include \"([^\"]+)\"", Pattern.MULTILINE);
+			long expected = 0;
+			for (String path : files(dir)) {
+				if (!path.endsWith(".impl.h")) {
+					continue;
+				}
+				final Matcher fragments = include.matcher(read(new File(dir, path), null));
+				while (fragments.find()) {
+					final File fragment = new File(dir, fragments.group(1));
+					if (!fragment.getName().endsWith(".meth.h")) {
+						continue;
+					}
+					// The fragment and the interface header it includes.
+					final Matcher header = include.matcher(read(fragment, null));
+					Assert.assertTrue(header.find());
+					expected += fragment.length() + new File(dir, header.group(1)).length();
+				}
+			}
+			Assert.assertTrue(expected > 0);
+			final GenerationMetrics metrics = (GenerationMetrics) context.get(GenerationMetrics.CONTEXT_KEY);
+			Assert.assertEquals(metrics.includedHeaderBytesMinimal.get(), expected);
+			// The sources cannot be read: they include every fragment.
+			Assert.assertEquals(metrics.includedHeaderBytesFull.get(), expected);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	/**
+	 * A compilation stopping after the ADL phase does not pass the barrier:
+	 * the quoted includes of the generated headers must resolve anyway, in the
+	 * output directory or in the runtime, mindcommon.h being provided by the
+	 * Mind runtime.
+	 */
+	@Test
+	public void includesWithoutBarrier() throws Exception {
+		final File dir = SyntheticAst.temporaryDirectory().getCanonicalFile();
+		try {
+			generate(dir, Collections.<String, String> emptyMap(), Collections.<String, List<String>> emptyMap(),
+					false, false);
+			final File runtime = new File(System.getProperty("basedir", "."), "src/assemble/resources/runtime");
+			final Pattern include = Pattern.compile("^#include \"([^\"]+)\"");
+			int checked = 0;
+			for (String path : files(dir)) {
+				if (!path.endsWith(".h")) {
+					continue;
+				}
+				for (String line : read(new File(dir, path), null).split("\n")) {
+					final Matcher matcher = include.matcher(line);
+					if (matcher.find() && !matcher.group(1).equals("mindcommon.h")) {
+						Assert.assertTrue(new File(dir, matcher.group(1)).isFile()
+								|| new File(runtime, matcher.group(1)).isFile(), path + " includes " + matcher.group(1));
+						checked++;
+					}
+				}
+			}
+			Assert.assertTrue(new File(dir, "golden/Client.bind.h").isFile());
+			Assert.assertTrue(checked > 0);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	/**
+	 * Generate the architecture with the given options and source flags, and
+	 * compare the files with the references of a case.
+	 */
+	static void check(String name, Map<String, String> options, Map<String, List<String>> cFlags)
+			throws Exception {
+		check(name, options, cFlags, false);
+	}
+
+	/**
+	 * @param inherited true to generate a definition extending the client too.
+	 */
+	static void check(String name, Map<String, String> options, Map<String, List<String>> cFlags, boolean inherited)
+			throws Exception {
+		final File dir = SyntheticAst.temporaryDirectory().getCanonicalFile();
+		try {
+			generate(dir, options, cFlags, inherited, true);
+			final List<String> generated = files(dir);
+			if (Boolean.getBoolean("golden.update")) {
+				final File golden = new File(System.getProperty("golden.dir", "src/test/resources/golden"), name);
+				SyntheticAst.delete(golden);
+				for (String path : generated) {
+					final File file = new File(golden, path);
+					file.getParentFile().mkdirs();
+					Files.write(file.toPath(), read(new File(dir, path), dir).getBytes(ASCII));
+				}
+				return;
+			}
+			final File golden = goldenDirectory(name);
+			Assert.assertEquals(generated, files(golden), "generated files of " + name);
+			for (String path : generated) {
+				Assert.assertEquals(read(new File(dir, path), dir), read(new File(golden, path), null),
+						name + "/" + path);
+			}
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	/**
+	 * Generate a server definition with a source and attributes, and a client
+	 * definition with two sources, a singleton and a collection client
+	 * interface, both in the same package, and optionally a definition
+	 * extending the client.
+	 * @return The compilation context.
+	 */
+	private static Map<Object, Object> generate(File dir, Map<String, String> options, Map<String, List<String>> cFlags,
+			boolean inherited, boolean passBarrier) throws Exception {
+		final Map<Object, Object> context = SyntheticAst.context();
+		context.putAll(options);
+		generate(dir, context, interfaces(), cFlags, inherited, passBarrier);
+		return context;
+	}
+
+	/**
+	 * @return The interfaces of the architecture, by signature.
+	 */
+	static Map<String, IDL> interfaces() {
+		final Map<String, IDL> idls = new HashMap<String, IDL>();
+		for (int i = 0; i < 3; i++) {
+			idls.put("golden.itf.I" + i, SyntheticAst.interfaceDefinition("golden.itf.I" + i, 3));
+		}
+		return idls;
+	}
+
+	/**
+	 * Generate the architecture in a given compilation context, the interfaces
+	 * being loaded from a given map.
+	 */
+	static void generate(File dir, Map<Object, Object> context, Map<String, IDL> idls,
+			Map<String, List<String>> cFlags, boolean inherited, boolean passBarrier) throws Exception {
+		final Definition server = SyntheticAst.primitiveDefinition("golden.Server", new Interface[] {
+				SyntheticAst.mindInterface("s", "golden.itf.I0", TypeInterface.SERVER_ROLE) }, 1, 2);
+		final Definition client = SyntheticAst.primitiveDefinition("golden.Client", new Interface[] {
+				SyntheticAst.mindInterface("s", "golden.itf.I1", TypeInterface.SERVER_ROLE),
+				SyntheticAst.mindInterface("c", "golden.itf.I0", TypeInterface.CLIENT_ROLE),
+				SyntheticAst.collectionInterface("cc", "golden.itf.I2", 2) }, 2, 0);
+
+		final Injector injector = Guice.createInjector(Modules.override(new FakeHeaderModule()).with(
+				SyntheticAst.services(dir, idls, cFlags)));
+		final FakeHeaderAnnotationProcessor processor = injector.getInstance(FakeHeaderAnnotationProcessor.class);
+		final List<Definition> definitions = new ArrayList<Definition>(Arrays.asList(server, client));
+		if (inherited) {
+			definitions.add(SyntheticAst.extendingDefinition("golden.ClientExt", client));
+		}
+		for (Definition definition : definitions) {
+			processor.processAnnotation(new FakeHeader(), definition, definition, ADLLoaderPhase.AFTER_CHECKING,
+					context);
+		}
+		if (passBarrier) {
+			GenerationBarrier.pass(context);
+		}
+	}
+
+	private static File goldenDirectory(String name) throws URISyntaxException {
+		final URL url = GoldenFilesTest.class.getClassLoader().getResource("golden/" + name);
+		Assert.assertNotNull(url, "golden files of " + name);
+		return new File(url.toURI());
+	}
+
+	/**
+	 * @return The paths of the files of a directory, relative to it, sorted.
+	 */
+	private static List<String> files(File dir) {
+		final List<String> files = new ArrayList<String>();
+		collect(dir, "", files);
+		Collections.sort(files);
+		return files;
+	}
+
+	private static void collect(File dir, String prefix, List<String> files) {
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				collect(child, prefix + child.getName() + "/", files);
+			} else {
+				files.add(prefix + child.getName());
+			}
+		}
+	}
+
+	/**
+	 * @return The content of a file, with the output directory replaced, also
+	 *         in the include guards of the implementation headers, and the line
+	 *         separators normalized.
+	 */
+	private static String read(File file, File outputDir) throws IOException {
+		String content = new String(Files.readAllBytes(file.toPath()), ASCII).replace("\r\n", "\n");
+		if (outputDir != null) {
+			final String path = outputDir.getPath();
+			content = content.replace(path, OUTPUT).replace(
+					path.replace(File.separatorChar, '_').replace('.', '_').toUpperCase(), OUTPUT);
+		}
+		return content;
+	}
+}
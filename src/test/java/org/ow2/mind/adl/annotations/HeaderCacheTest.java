@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link HeaderCache}: lookup of the stored entries, staleness,
+ * atomic replacement, corrupted entries, left over entries and eviction.
+ */
+public class HeaderCacheTest {
+
+	private File dir;
+	private File root;
+	private File input;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("cache").toFile();
+		root = new File(dir, "cache");
+		input = write("a.adl", "component a");
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	private File write(String name, String content) throws Exception {
+		final File file = new File(dir, name);
+		Files.write(file.toPath(), FileUpdaterTest.bytes(content));
+		return file;
+	}
+
+	private static HeaderCache open(File root, long maxBytes) {
+		return HeaderCache.get(new HashMap<Object, Object>(), root, maxBytes);
+	}
+
+	private void store(HeaderCache cache, String key, List<String> uses, String content) throws Exception {
+		cache.store(key, Arrays.asList(input.getPath()), uses, null,
+				Collections.singletonMap("p/" + key + ".h", write(key + ".h", content)));
+	}
+
+	@Test
+	public void storeAndLookup() throws Exception {
+		final HeaderCache cache = open(root, 1L << 20);
+		final Map<String, File> outputs = new LinkedHashMap<String, File>();
+		outputs.put("p/a.h", write("a.h", "header a"));
+		outputs.put("p/a.c", write("a.c", "source a"));
+		cache.store("k1", Arrays.asList(input.getPath()), Collections.<String> emptyList(), "p.a", outputs);
+
+		final List<String> dependencies = new ArrayList<String>();
+		final List<HeaderCache.Artifact> artifacts = open(root, 1L << 20).lookup("k1", dependencies);
+		Assert.assertNotNull(artifacts);
+		Assert.assertEquals(artifacts.size(), 2);
+		Assert.assertEquals(artifacts.get(0).path, "p/a.h");
+		Assert.assertEquals(new String(artifacts.get(0).content, "US-ASCII"), "header a");
+		Assert.assertEquals(artifacts.get(1).path, "p/a.c");
+		Assert.assertEquals(new String(artifacts.get(1).content, "US-ASCII"), "source a");
+		Assert.assertEquals(artifacts.get(0).claim, "p.a");
+		Assert.assertEquals(dependencies, Arrays.asList(input.getPath()));
+
+		Assert.assertNull(cache.lookup("missing"));
+		Assert.assertEquals(cache.getMisses(), 1);
+	}
+
+	@Test
+	public void staleInput() throws Exception {
+		store(open(root, 1L << 20), "k1", Collections.<String> emptyList(), "header");
+		write("a.adl", "component a changed");
+		final HeaderCache cache = open(root, 1L << 20);
+		Assert.assertNull(cache.lookup("k1"));
+		Assert.assertEquals(cache.getHits(), 0);
+	}
+
+	@Test
+	public void forgetFileHashes() throws Exception {
+		final HeaderCache cache = open(root, 1L << 20);
+		store(cache, "k1", Collections.<String> emptyList(), "header");
+		Assert.assertNotNull(cache.lookup("k1"));
+		write("a.adl", "component a changed");
+		// The hashes are computed once per compilation, until forgotten.
+		Assert.assertNotNull(cache.lookup("k1"));
+		cache.forgetFileHashes();
+		Assert.assertNull(cache.lookup("k1"));
+	}
+
+	@Test
+	public void uses() throws Exception {
+		final HeaderCache cache = open(root, 1L << 20);
+		store(cache, "itf", Collections.<String> emptyList(), "interface");
+		store(cache, "def", Arrays.asList("itf"), "definition");
+		final List<HeaderCache.Artifact> artifacts = open(root, 1L << 20).lookup("def");
+		Assert.assertNotNull(artifacts);
+		Assert.assertEquals(artifacts.size(), 2);
+
+		SyntheticAst.delete(new File(root, "itf"));
+		Assert.assertNull(open(root, 1L << 20).lookup("def"));
+	}
+
+	@Test
+	public void replace() throws Exception {
+		final HeaderCache cache = open(root, 1L << 20);
+		store(cache, "k1", Collections.<String> emptyList(), "first");
+		store(cache, "k1", Collections.<String> emptyList(), "second");
+		Assert.assertEquals(Arrays.asList(root.list()), Arrays.asList("k1"));
+		final List<HeaderCache.Artifact> artifacts = open(root, 1L << 20).lookup("k1");
+		Assert.assertEquals(new String(artifacts.get(0).content, "US-ASCII"), "second");
+	}
+
+	@Test
+	public void corruptedEntry() throws Exception {
+		store(open(root, 1L << 20), "k1", Collections.<String> emptyList(), "header");
+		Files.write(new File(root, "k1/0").toPath(), FileUpdaterTest.bytes("corrupted"));
+		Assert.assertNull(open(root, 1L << 20).lookup("k1"));
+	}
+
+	@Test
+	public void leftOvers() throws Exception {
+		store(open(root, 1L << 20), "k1", Collections.<String> emptyList(), "header");
+		final File trash = new File(root, "k2.del12");
+		final File oldTmp = new File(root, "k3.tmp34");
+		final File newTmp = new File(root, "k4.tmp56");
+		for (File entry : new File[] { trash, oldTmp, newTmp }) {
+			Assert.assertTrue(entry.mkdirs());
+			Files.write(new File(entry, "0").toPath(), FileUpdaterTest.bytes("partial"));
+		}
+		oldTmp.setLastModified(System.currentTimeMillis() - 2 * 3600 * 1000L);
+		open(root, 1L << 20);
+		Assert.assertFalse(trash.exists());
+		Assert.assertFalse(oldTmp.exists());
+		// Maybe still being built by a running compilation.
+		Assert.assertTrue(newTmp.exists());
+		Assert.assertTrue(new File(root, "k1").exists());
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		final HeaderCache first = open(root, 1L << 20);
+		store(first, "k1", Collections.<String> emptyList(), "header 1");
+		store(first, "k2", Collections.<String> emptyList(), "header 2");
+		final long entryBytes = new File(root, "k1/0").length() + new File(root, "k1/manifest").length();
+		new File(root, "k1").setLastModified(System.currentTimeMillis() - 20000);
+		new File(root, "k2").setLastModified(System.currentTimeMillis() - 10000);
+
+		// Room for two entries: storing a third one evicts the oldest one.
+		final HeaderCache second = open(root, 2 * entryBytes + entryBytes / 2);
+		store(second, "k3", Collections.<String> emptyList(), "header 3");
+		Assert.assertFalse(new File(root, "k1").exists());
+		Assert.assertTrue(new File(root, "k2").exists());
+		Assert.assertTrue(new File(root, "k3").exists());
+
+		// The entries used by the compilation are kept, over the maximum size.
+		final HeaderCache third = open(root, 0);
+		Assert.assertNotNull(third.lookup("k2"));
+		store(third, "k4", Collections.<String> emptyList(), "header 4");
+		Assert.assertTrue(new File(root, "k2").exists());
+		Assert.assertFalse(new File(root, "k3").exists());
+		Assert.assertTrue(new File(root, "k4").exists());
+	}
+}
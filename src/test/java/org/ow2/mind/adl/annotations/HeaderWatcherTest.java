@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link HeaderWatcher}: the definitions affected by a change, and
+ * the eviction of the stale cache entries.
+ */
+public class HeaderWatcherTest {
+
+	private File dir;
+	private HeaderWatcher watcher;
+
+	@BeforeMethod
+	public void createWatcher() throws Exception {
+		dir = SyntheticAst.temporaryDirectory().getCanonicalFile();
+		new File(dir, "p").mkdirs();
+		watcher = HeaderWatcher.get(SyntheticAst.context(), new FakeHeaderGenerator());
+		// A uses p.I, declared in p/I.itf, and the types of p/types.idt.
+		watcher.register("p.A", Arrays.asList(path("p/A.adl"), path("p/A.c"), path("p/I.itf"), path("p/types.idt")),
+				Arrays.asList("p.I", "p.J"));
+		// B uses p.I too, its input files not recorded.
+		watcher.register("p.B", Arrays.asList(path("p/B.adl")), Arrays.asList("p.I"));
+		watcher.register("p.C", Arrays.asList(path("p/C.adl")), Arrays.asList("p.K"));
+	}
+
+	@AfterMethod
+	public void stopWatcher() {
+		watcher.stop();
+		SyntheticAst.delete(dir);
+	}
+
+	private String path(String relative) {
+		return new File(dir, relative).getPath();
+	}
+
+	private Set<String> affected(String file, Set<String> signatures) {
+		return watcher.affectedDefinitions(Collections.singleton(path(file)), false, signatures);
+	}
+
+	@Test
+	public void changedDefinition() {
+		final Set<String> signatures = new HashSet<String>();
+		Assert.assertEquals(affected("p/A.adl", signatures), Collections.singleton("p.A"));
+		Assert.assertTrue(signatures.isEmpty());
+		Assert.assertEquals(affected("p/A.c", signatures), Collections.singleton("p.A"));
+		Assert.assertTrue(signatures.isEmpty());
+	}
+
+	@Test
+	public void changedSignature() {
+		final Set<String> signatures = new HashSet<String>();
+		Assert.assertEquals(affected("p/I.itf", signatures), new HashSet<String>(Arrays.asList("p.A", "p.B")));
+		Assert.assertEquals(signatures, Collections.singleton("p.I"));
+	}
+
+	@Test
+	public void changedIdlType() {
+		final Set<String> signatures = new HashSet<String>();
+		// Which signatures include it is unknown: all those of A.
+		Assert.assertEquals(affected("p/types.idt", signatures), new HashSet<String>(Arrays.asList("p.A", "p.B")));
+		Assert.assertEquals(signatures, new HashSet<String>(Arrays.asList("p.I", "p.J")));
+	}
+
+	@Test
+	public void unknownFile() {
+		final Set<String> signatures = new HashSet<String>();
+		Assert.assertTrue(affected("p/D.adl", signatures).isEmpty());
+		Assert.assertTrue(signatures.isEmpty());
+	}
+
+	@Test
+	public void overflow() {
+		final Set<String> signatures = new HashSet<String>();
+		Assert.assertEquals(watcher.affectedDefinitions(Collections.<String> emptySet(), true, signatures),
+				new HashSet<String>(Arrays.asList("p.A", "p.B", "p.C")));
+		Assert.assertEquals(signatures, new HashSet<String>(Arrays.asList("p.I", "p.J", "p.K")));
+	}
+
+	@Test
+	public void evict() {
+		final Map<Object, Object> context = SyntheticAst.context();
+		context.put("option", "value");
+		final Map<String, Object> loaderCache = new HashMap<String, Object>();
+		for (String key : new String[] { "p.A", "p.C", "p.I", "p.K", "/p/types.idt", "/q/types.idt" }) {
+			loaderCache.put(key, new Object());
+		}
+		context.put("loader cache", loaderCache);
+		final EmittedHeaderRegistry emittedHeaders = EmittedHeaderRegistry.get(context);
+		Assert.assertTrue(emittedHeaders.claim("p.I"));
+		Assert.assertTrue(emittedHeaders.claim("p.K"));
+
+		HeaderWatcher.evict(context, Collections.singleton("p.A"), Collections.singleton("p.I"),
+				Collections.singleton(path("p/types.idt")));
+		Assert.assertEquals(loaderCache.keySet(), new HashSet<String>(Arrays.asList("p.C", "p.K", "/q/types.idt")));
+		Assert.assertEquals(context.get("option"), "value");
+		Assert.assertSame(context.get("loader cache"), loaderCache);
+		// Written again, unlike the unchanged signature.
+		Assert.assertTrue(emittedHeaders.claim("p.I"));
+		Assert.assertFalse(emittedHeaders.claim("p.K"));
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ow2.mind.idl.ast.IDL;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link IDLResolutionCache}: the IDL of each signature is loaded
+ * once per compilation, whatever the number of definitions using it.
+ */
+public class IDLResolutionCacheTest {
+
+	@Test
+	public void oneLoadPerSignature() throws Exception {
+		final Map<String, AtomicInteger> loads = generate(SyntheticAst.context());
+		Assert.assertEquals(loads.keySet(), GoldenFilesTest.interfaces().keySet());
+		for (Map.Entry<String, AtomicInteger> load : loads.entrySet()) {
+			Assert.assertEquals(load.getValue().get(), 1, load.getKey());
+		}
+	}
+
+	/**
+	 * Bounded to one signature, the cache loads the interface used by both
+	 * definitions again once evicted.
+	 */
+	@Test
+	public void evictedSignatureLoadedAgain() throws Exception {
+		final Map<Object, Object> context = SyntheticAst.context();
+		context.put(FakeHeaderOptions.MEMORY_CACHE_SIZE, "1");
+		final Map<String, AtomicInteger> loads = generate(context);
+		Assert.assertTrue(loads.get("golden.itf.I0").get() > 1);
+		Assert.assertEquals(IDLResolutionCache.get(context).size(), 1);
+		Assert.assertTrue(IDLResolutionCache.get(context).getEvictions() > 0);
+	}
+
+	/**
+	 * Generate the golden architecture.
+	 * @return The number of loads of each signature.
+	 */
+	private static Map<String, AtomicInteger> generate(Map<Object, Object> context) throws Exception {
+		final Map<String, AtomicInteger> loads = new ConcurrentHashMap<String, AtomicInteger>();
+		final Map<String, IDL> idls = new ConcurrentHashMap<String, IDL>(GoldenFilesTest.interfaces()) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public IDL get(Object key) {
+				loads.putIfAbsent((String) key, new AtomicInteger());
+				loads.get(key).incrementAndGet();
+				return super.get(key);
+			}
+		};
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			GoldenFilesTest.generate(dir, context, idls, Collections.<String, List<String>> emptyMap(), false, true);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+		return loads;
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the constant tables of the server interfaces.
+ */
+public class InterfaceTablesTest {
+
+	/**
+	 * The singleton server interface gets a constant table, defined in the
+	 * tables source and declared in the adl header, while the client interfaces
+	 * stay mutable.
+	 */
+	@Test
+	public void constTables() throws Exception {
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			GoldenFilesTest.generate(dir, SyntheticAst.context(), GoldenFilesTest.interfaces(),
+					Collections.<String, List<String>> emptyMap(), false, true);
+			final String tables = read(new File(dir, "golden/Client.tables.c"));
+			Assert.assertTrue(tables.contains("#include \"golden/Client.adl.h\"\n"), tables);
+			Assert.assertTrue(tables.contains("const golden_itf_I1 GET_MY_INTERFACE(s) = {\n"), tables);
+			for (int i = 0; i < 3; i++) {
+				Assert.assertTrue(tables.contains("\t.method" + i + " = METH(s, method" + i + "),\n"), tables);
+			}
+			Assert.assertFalse(tables.contains("GET_MY_INTERFACE(c"), tables);
+			final String header = read(new File(dir, "golden/Client.adl.h"));
+			Assert.assertTrue(header.contains("extern const golden_itf_I1 GET_MY_INTERFACE(s);\n"), header);
+			Assert.assertTrue(header.contains("extern golden_itf_I0 GET_MY_INTERFACE(c);\n"), header);
+			Assert.assertTrue(header.contains("extern golden_itf_I2 GET_MY_INTERFACE(cc[2]);\n"), header);
+			final String make = read(new File(dir, "golden/Client.make"));
+			Assert.assertTrue(make.contains("golden/Client.tables.o : golden/Client.tables.c\n"), make);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), Charset.forName("US-ASCII"));
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link LruCache}.
+ */
+public class LruCacheTest {
+
+	@Test
+	public void unbounded() {
+		final LruCache<Integer, String> cache = new LruCache<Integer, String>(0);
+		for (int i = 0; i < 5000; i++) {
+			cache.putIfAbsent(i, "v" + i);
+		}
+		Assert.assertEquals(cache.size(), 5000);
+		Assert.assertEquals(cache.getEvictions(), 0);
+	}
+
+	@Test
+	public void putIfAbsent() {
+		final LruCache<String, String> cache = new LruCache<String, String>(2);
+		Assert.assertEquals(cache.putIfAbsent("a", "first"), "first");
+		Assert.assertEquals(cache.putIfAbsent("a", "second"), "first");
+		Assert.assertEquals(cache.get("a"), "first");
+		cache.remove("a");
+		Assert.assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() {
+		final LruCache<String, String> cache = new LruCache<String, String>(3);
+		cache.putIfAbsent("a", "1");
+		cache.putIfAbsent("b", "2");
+		cache.putIfAbsent("c", "3");
+		// Used: "b" is now the least recently used.
+		Assert.assertEquals(cache.get("a"), "1");
+		cache.putIfAbsent("d", "4");
+		Assert.assertEquals(cache.size(), 3);
+		Assert.assertNull(cache.get("b"));
+		Assert.assertEquals(cache.get("a"), "1");
+		Assert.assertEquals(cache.get("c"), "3");
+		Assert.assertEquals(cache.get("d"), "4");
+		Assert.assertEquals(cache.getEvictions(), 1);
+	}
+
+	@Test
+	public void identityKeys() {
+		final LruCache<String, String> cache = new LruCache<String, String>(2, true);
+		final String a = new String("a");
+		final String equal = new String("a");
+		cache.putIfAbsent(a, "1");
+		// An equal key is another entry.
+		Assert.assertNull(cache.get(equal));
+		Assert.assertEquals(cache.putIfAbsent(equal, "2"), "2");
+		Assert.assertEquals(cache.get(a), "1");
+		// Used: the equal key is now the least recently used.
+		cache.putIfAbsent("b", "3");
+		Assert.assertEquals(cache.size(), 2);
+		Assert.assertNull(cache.get(equal));
+		Assert.assertEquals(cache.get(a), "1");
+		Assert.assertEquals(cache.getEvictions(), 1);
+		cache.clear();
+		Assert.assertEquals(cache.size(), 0);
+		Assert.assertNull(cache.get(a));
+	}
+
+	@Test
+	public void setCapacity() {
+		final LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(0);
+		for (int i = 0; i < 10; i++) {
+			cache.putIfAbsent(i, i);
+		}
+		cache.get(0);
+		cache.setCapacity(3);
+		Assert.assertEquals(cache.size(), 3);
+		Assert.assertEquals(cache.getEvictions(), 7);
+		Assert.assertEquals(cache.get(0), Integer.valueOf(0));
+		Assert.assertEquals(cache.get(9), Integer.valueOf(9));
+		Assert.assertEquals(cache.get(8), Integer.valueOf(8));
+
+		cache.setCapacity(-1);
+		for (int i = 10; i < 20; i++) {
+			cache.putIfAbsent(i, i);
+		}
+		Assert.assertEquals(cache.size(), 13);
+		cache.clear();
+		Assert.assertEquals(cache.size(), 0);
+	}
+
+	@Test
+	public void capacityOptions() {
+		final Map<Object, Object> context = new HashMap<Object, Object>();
+		Assert.assertEquals(LruCache.capacity(context), 0);
+		context.put(FakeHeaderOptions.STREAMING, "true");
+		Assert.assertEquals(LruCache.capacity(context), LruCache.STREAMING_CAPACITY);
+		context.put(FakeHeaderOptions.MEMORY_CACHE_SIZE, "16");
+		Assert.assertEquals(LruCache.capacity(context), 16);
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link OutputWriter}, writing on the rendering thread and on
+ * writer threads.
+ */
+public class OutputWriterTest {
+
+	private File dir;
+	private OutputWriter writer;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("writer").toFile();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		if (writer != null) {
+			writer.flush();
+			writer.release();
+			writer = null;
+		}
+		SyntheticAst.delete(dir);
+	}
+
+	private static AsciiEmitter emitter(File file, String content) {
+		final AsciiEmitter emitter = new AsciiEmitter(file, false);
+		emitter.print(content);
+		return emitter;
+	}
+
+	@Test
+	public void writeInline() throws Exception {
+		writer = new OutputWriter(0);
+		Assert.assertFalse(writer.isAsync());
+		final File file = new File(dir, "p/a.h");
+		writer.write(emitter(file, "a"), null);
+		Assert.assertEquals(FileUpdaterTest.read(file), "a");
+		final AtomicBoolean ran = new AtomicBoolean();
+		writer.afterWrites(new Runnable() {
+			public void run() {
+				ran.set(true);
+			}
+		});
+		Assert.assertTrue(ran.get());
+		Assert.assertTrue(writer.flush().isEmpty());
+	}
+
+	@Test
+	public void writeInlineFailure() throws Exception {
+		writer = new OutputWriter(0);
+		Files.write(new File(dir, "p").toPath(), FileUpdaterTest.bytes("not a directory"));
+		try {
+			writer.write(new File(dir, "p/a.h"), FileUpdaterTest.bytes("a"), false, null);
+			Assert.fail("written under a file");
+		} catch (IOException e) {
+			// expected.
+		}
+	}
+
+	@Test
+	public void writeAsync() throws Exception {
+		writer = new OutputWriter(3);
+		Assert.assertTrue(writer.isAsync());
+		for (int i = 0; i < 2 * OutputWriter.QUEUE_CAPACITY; i++) {
+			writer.write(emitter(new File(dir, "p" + (i % 7) + "/f" + i + ".h"), "file " + i), null);
+		}
+		final File bytes = new File(dir, "bytes.h");
+		writer.write(bytes, FileUpdaterTest.bytes("bytes"), true, null);
+		final AtomicBoolean readBack = new AtomicBoolean();
+		writer.afterWrites(new Runnable() {
+			public void run() {
+				// Run once the files are written.
+				readBack.set(bytes.isFile());
+			}
+		});
+		Assert.assertFalse(readBack.get());
+		Assert.assertTrue(writer.flush().isEmpty());
+		Assert.assertTrue(readBack.get());
+		for (int i = 0; i < 2 * OutputWriter.QUEUE_CAPACITY; i++) {
+			Assert.assertEquals(FileUpdaterTest.read(new File(dir, "p" + (i % 7) + "/f" + i + ".h")), "file " + i);
+		}
+		Assert.assertEquals(FileUpdaterTest.read(bytes), "bytes");
+	}
+
+	@Test
+	public void samePathInOrder() throws Exception {
+		writer = new OutputWriter(4);
+		final File file = new File(dir, "all.mk");
+		final StringBuilder expected = new StringBuilder();
+		writer.write(emitter(file, ""), null);
+		for (int i = 0; i < 200; i++) {
+			writer.append(emitter(file, i + ";"), null);
+			expected.append(i).append(';');
+		}
+		Assert.assertTrue(writer.flush().isEmpty());
+		Assert.assertEquals(FileUpdaterTest.read(file), expected.toString());
+	}
+
+	@Test
+	public void writeAfterRelease() throws Exception {
+		writer = new OutputWriter(2);
+		final File file = new File(dir, "a.h");
+		writer.write(emitter(file, "a"), null);
+		Assert.assertTrue(writer.flush().isEmpty());
+		writer.release();
+		// Written by a writer thread started again.
+		writer.write(emitter(file, "b"), null);
+		Assert.assertTrue(writer.flush().isEmpty());
+		Assert.assertEquals(FileUpdaterTest.read(file), "b");
+	}
+
+	@Test
+	public void asyncFailures() throws Exception {
+		writer = new OutputWriter(2);
+		Files.write(new File(dir, "p").toPath(), FileUpdaterTest.bytes("not a directory"));
+		writer.write(emitter(new File(dir, "p/a.h"), "a"), null);
+		writer.write(emitter(new File(dir, "q/b.h"), "b"), null);
+		final IOException reported = new IOException("reported");
+		writer.failed(reported);
+		final List<IOException> failures = writer.flush();
+		Assert.assertEquals(failures.size(), 2);
+		Assert.assertTrue(failures.contains(reported));
+		Assert.assertEquals(FileUpdaterTest.read(new File(dir, "q/b.h")), "b");
+		// Reported once.
+		Assert.assertTrue(writer.flush().isEmpty());
+	}
+
+	@Test
+	public void directoryCreatedAgain() throws Exception {
+		writer = new OutputWriter(0);
+		writer.write(emitter(new File(dir, "p/a.h"), "a"), null);
+		SyntheticAst.delete(new File(dir, "p"));
+		// The directory is known: the first write fails, and forgets it.
+		try {
+			writer.write(emitter(new File(dir, "p/b.h"), "b"), null);
+		} catch (IOException e) {
+			// expected where the directory is not created again.
+		}
+		writer.write(emitter(new File(dir, "p/c.h"), "c"), null);
+		Assert.assertEquals(FileUpdaterTest.read(new File(dir, "p/c.h")), "c");
+	}
+}
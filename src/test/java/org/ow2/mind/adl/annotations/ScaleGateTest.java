@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Scale gate of the header generation, run with the unit tests: see
+ * {@link ScaleHarness}.
+ */
+public class ScaleGateTest {
+
+	@Test
+	public void scaleGate() throws Exception {
+		final List<ScaleHarness.Result> results = new ScaleHarness().runScales();
+		final List<String> regressions = ScaleHarness.check(results, ScaleHarness.loadBaseline());
+		Assert.assertTrue(regressions.isEmpty(), regressions.toString());
+	}
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.interfaces.Interface;
+import org.objectweb.fractal.adl.types.TypeInterface;
+import org.ow2.mind.adl.annotation.ADLLoaderPhase;
+import org.ow2.mind.idl.ast.IDL;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+
+/**
+ * Scale harness of the header generation. For each scale, it synthesizes
+ * the definitions of a large architecture sharing a pool of interfaces,
+ * drives {@link FakeHeaderAnnotationProcessor} on each of them through the
+ * Guice wiring of {@link FakeHeaderModule} (with synthetic compiler
+ * services), and measures the generated files and bytes, the IDL loads, the
+ * bytes allocated by the generating thread, and the wall time.
+ *
+ * The gate only relies on measures that do not depend on the machine: the
+ * counters are compared with a stored baseline, and the wall time per
+ * definition of the largest scale is compared with the one of the smallest
+ * scale of the same run, so that a cost growing faster than the number of
+ * definitions is caught. {@link ScaleGateTest} runs the gate with the unit
+ * tests; the main method prints the measures and stores a new baseline.
+ *
+ * It is configured by system properties:
+ * <ul>
+ * <li>scale.definitions: comma separated numbers of definitions (100,1000),</li>
+ * <li>scale.interfaces: number of distinct interfaces of the architecture (256),</li>
+ * <li>scale.fanOut: server and client interfaces of each definition (4),</li>
+ * <li>scale.sources: sources of each definition (2),</li>
+ * <li>scale.attributes: attributes of each definition (4),</li>
+ * <li>scale.collectionSize: size of the client collection interface of each
+ * definition, 0 for none (4),</li>
+ * <li>scale.baseline: the baseline file, by default the scale-baseline.properties
+ * resource,</li>
+ * <li>scale.tolerance: the accepted growth of the counters, as a fraction (0.05),</li>
+ * <li>scale.allocationTolerance: the accepted growth of the allocated bytes, as
+ * a fraction (0.3),</li>
+ * <li>scale.maxRatio: the accepted ratio of the time per definition of the
+ * largest scale to the one of the smallest scale (3),</li>
+ * <li>scale.updateBaseline: true to store the measures as the new baseline.</li>
+ * </ul>
+ */
+public final class ScaleHarness {
+
+	/**
+	 * Name of the baseline resource.
+	 */
+	static final String BASELINE_RESOURCE = "scale-baseline.properties";
+
+	private static final int METHODS_PER_INTERFACE = 8;
+
+	private final int interfaceCount = Integer.getInteger("scale.interfaces", 256);
+	private final int fanOut = Integer.getInteger("scale.fanOut", 4);
+	private final int sourceCount = Integer.getInteger("scale.sources", 2);
+	private final int attributeCount = Integer.getInteger("scale.attributes", 4);
+	private final int collectionSize = Integer.getInteger("scale.collectionSize", 4);
+
+	/**
+	 * The measures of a scale.
+	 */
+	static final class Result {
+		final int definitions;
+		final long files;
+		final long bytes;
+		final long idlLoads;
+		/* -1 if the JVM does not measure it. */
+		final long allocatedBytes;
+		final long nanos;
+
+		Result(int definitions, long files, long bytes, long idlLoads, long allocatedBytes, long nanos) {
+			this.definitions = definitions;
+			this.files = files;
+			this.bytes = bytes;
+			this.idlLoads = idlLoads;
+			this.allocatedBytes = allocatedBytes;
+			this.nanos = nanos;
+		}
+
+		double nanosPerDefinition() {
+			return (double) nanos / definitions;
+		}
+
+		/**
+		 * @return The counters compared with the baseline, by key.
+		 */
+		Map<String, Long> counters() {
+			final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+			counters.put(definitions + ".files", files);
+			counters.put(definitions + ".bytes", bytes);
+			counters.put(definitions + ".idlLoads", idlLoads);
+			if (allocatedBytes >= 0) {
+				counters.put(definitions + ".allocatedKB", allocatedBytes >> 10);
+			}
+			return counters;
+		}
+	}
+
+	ScaleHarness() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final List<Result> results = new ScaleHarness().runScales();
+		for (Result result : results) {
+			System.out.println(String.format(Locale.ROOT,
+					"%d definitions: %d files, %d bytes, %d IDL loads, %d KB allocated, %d ms, %.1f us per definition",
+					result.definitions, result.files, result.bytes, result.idlLoads, result.allocatedBytes >> 10,
+					result.nanos / 1000000, result.nanosPerDefinition() / 1000));
+		}
+		if (Boolean.getBoolean("scale.updateBaseline")) {
+			final Properties measured = new Properties();
+			for (Result result : results) {
+				for (Map.Entry<String, Long> counter : result.counters().entrySet()) {
+					measured.setProperty(counter.getKey(), counter.getValue().toString());
+				}
+			}
+			final OutputStream out = new FileOutputStream(new File(System.getProperty("scale.baseline",
+					"src/test/resources/" + BASELINE_RESOURCE)));
+			try {
+				measured.store(out, "FakeHeader scale baseline, written by ScaleHarness -Dscale.updateBaseline=true");
+			} finally {
+				out.close();
+			}
+			return;
+		}
+		final List<String> regressions = check(results, loadBaseline());
+		for (String regression : regressions) {
+			System.out.println(regression);
+		}
+		if (!regressions.isEmpty()) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run the configured scales, in increasing order, after an unmeasured run
+	 * of the smallest one warming the JIT up.
+	 * @return The measures of each scale.
+	 */
+	List<Result> runScales() throws IOException, ADLException {
+		final List<Integer> scales = new ArrayList<Integer>();
+		for (String scale : System.getProperty("scale.definitions", "100,1000").split(",")) {
+			scales.add(Integer.valueOf(scale.trim()));
+		}
+		Collections.sort(scales);
+		run(scales.get(0));
+		final List<Result> results = new ArrayList<Result>();
+		for (int definitions : scales) {
+			results.add(run(definitions));
+		}
+		return results;
+	}
+
+	/**
+	 * Compare measures with a baseline.
+	 * @param results The measures of each scale, in increasing order.
+	 * @param baseline The baseline counters.
+	 * @return The regressions, empty if none.
+	 */
+	static List<String> check(List<Result> results, Properties baseline) {
+		final double tolerance = Double.parseDouble(System.getProperty("scale.tolerance", "0.05"));
+		final double allocationTolerance = Double.parseDouble(System.getProperty("scale.allocationTolerance", "0.3"));
+		final double maxRatio = Double.parseDouble(System.getProperty("scale.maxRatio", "3"));
+		final List<String> regressions = new ArrayList<String>();
+		for (Result result : results) {
+			for (Map.Entry<String, Long> counter : result.counters().entrySet()) {
+				final String reference = baseline.getProperty(counter.getKey());
+				if (reference == null) {
+					continue;
+				}
+				final double limit = Long.parseLong(reference)
+						* (1 + (counter.getKey().endsWith(".allocatedKB") ? allocationTolerance : tolerance));
+				if (counter.getValue() > limit) {
+					regressions.add(String.format(Locale.ROOT, "REGRESSION %s: %d, baseline %s, limit %.0f",
+							counter.getKey(), counter.getValue(), reference, limit));
+				}
+			}
+		}
+		if (results.size() > 1) {
+			final Result smallest = results.get(0);
+			final Result largest = results.get(results.size() - 1);
+			final double ratio = largest.nanosPerDefinition() / smallest.nanosPerDefinition();
+			if (ratio > maxRatio) {
+				regressions.add(String.format(Locale.ROOT,
+						"REGRESSION time per definition: %.2f times higher with %d definitions than with %d, limit %.2f",
+						ratio, largest.definitions, smallest.definitions, maxRatio));
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * @return The baseline: the scale.baseline file if set, else the resource.
+	 */
+	static Properties loadBaseline() throws IOException {
+		final Properties properties = new Properties();
+		final String file = System.getProperty("scale.baseline");
+		final InputStream in = (file != null) ? new FileInputStream(file)
+				: ScaleHarness.class.getClassLoader().getResourceAsStream(BASELINE_RESOURCE);
+		if (in != null) {
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Generate the headers of an architecture.
+	 * @param definitionCount The number of definitions of the architecture.
+	 * @return The measures.
+	 */
+	Result run(int definitionCount) throws IOException, ADLException {
+		final File dir = SyntheticAst.temporaryDirectory();
+		try {
+			final Map<String, IDL> idls = new HashMap<String, IDL>();
+			for (int i = 0; i < interfaceCount; i++) {
+				idls.put(signature(i), SyntheticAst.interfaceDefinition(signature(i), METHODS_PER_INTERFACE));
+			}
+			final List<Definition> definitions = new ArrayList<Definition>(definitionCount);
+			for (int i = 0; i < definitionCount; i++) {
+				definitions.add(definition(i));
+			}
+			final Injector injector = Guice.createInjector(Modules.override(new FakeHeaderModule()).with(
+					SyntheticAst.services(dir, idls)));
+			final FakeHeaderAnnotationProcessor processor = injector.getInstance(FakeHeaderAnnotationProcessor.class);
+			final Map<Object, Object> context = SyntheticAst.context();
+			final FakeHeader annotation = new FakeHeader();
+
+			final long allocatedBefore = allocatedBytes();
+			final long start = System.nanoTime();
+			for (Definition definition : definitions) {
+				processor.processAnnotation(annotation, definition, definition, ADLLoaderPhase.AFTER_CHECKING, context);
+			}
+			GenerationScheduler.get(context).await();
+			final long nanos = Math.max(1, System.nanoTime() - start);
+			final long allocatedAfter = allocatedBytes();
+
+			final GenerationMetrics metrics = GenerationMetrics.get(context, null);
+			return new Result(definitionCount, metrics.filesWritten.get() + metrics.filesUnchanged.get(),
+					metrics.bytesWritten.get(), metrics.idlLoad.count.get(),
+					(allocatedBefore >= 0 && allocatedAfter >= 0) ? allocatedAfter - allocatedBefore : -1, nanos);
+		} finally {
+			SyntheticAst.delete(dir);
+		}
+	}
+
+	/**
+	 * @return The bytes allocated so far by the current thread, which does all
+	 *         the generation work in the default inline mode, or -1 if the JVM
+	 *         does not measure it.
+	 */
+	private static long allocatedBytes() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+			if (hotspotThreads.isThreadAllocatedMemorySupported() && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+				return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return A definition of the architecture: its interfaces are taken in
+	 *         turn in the pool, so that each interface is shared by several
+	 *         definitions.
+	 */
+	private Definition definition(int index) {
+		final int collections = (collectionSize > 0) ? 1 : 0;
+		final Interface[] interfaces = new Interface[2 * fanOut + collections];
+		for (int i = 0; i < fanOut; i++) {
+			interfaces[i] = SyntheticAst.mindInterface("s" + i, signature(index * fanOut + i),
+					TypeInterface.SERVER_ROLE);
+			interfaces[fanOut + i] = SyntheticAst.mindInterface("c" + i, signature((index + 1) * fanOut + i),
+					TypeInterface.CLIENT_ROLE);
+		}
+		if (collections > 0) {
+			interfaces[2 * fanOut] = SyntheticAst.collectionInterface("cc", signature(index), collectionSize);
+		}
+		// Spread the definitions over packages, as in a product tree.
+		return SyntheticAst.primitiveDefinition("scale.p" + (index % 64) + ".Component" + index, interfaces,
+				sourceCount, attributeCount);
+	}
+
+	private String signature(int index) {
+		return "scale.itf.Itf" + (index % interfaceCount);
+	}
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.Loader;
+import org.objectweb.fractal.adl.Node;
+import org.objectweb.fractal.adl.interfaces.Interface;
+import org.objectweb.fractal.adl.interfaces.InterfaceContainer;
+import org.objectweb.fractal.adl.types.TypeInterface;
+import org.ow2.mind.InputResourceLocator;
+import org.ow2.mind.adl.FlagExtractor;
+import org.ow2.mind.adl.ast.Attribute;
+import org.ow2.mind.adl.ast.AttributeContainer;
+import org.ow2.mind.adl.ast.ImplementationContainer;
+import org.ow2.mind.adl.ast.MindInterface;
+import org.ow2.mind.adl.ast.Source;
+import org.ow2.mind.adl.implementation.ImplementationLocator;
+import org.ow2.mind.idl.IDLLoader;
+import org.ow2.mind.idl.ast.ArrayOf;
+import org.ow2.mind.idl.ast.IDL;
+import org.ow2.mind.idl.ast.InterfaceDefinition;
+import org.ow2.mind.idl.ast.Parameter;
+import org.ow2.mind.idl.ast.PointerOf;
+import org.ow2.mind.idl.ast.PrimitiveType;
+import org.ow2.mind.idl.ast.Type;
+import org.ow2.mind.io.OutputFileLocator;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+/**
+ * Synthetic ASTs and compiler services for the tests and the benchmarks. The
+ * AST nodes are dynamic proxies backed by a map of properties, so that they
+ * do not depend on the node factories of the compiler; unknown getters
+ * return empty arrays, empty lists, false, 0 or null. The services write to a
+ * temporary directory, on tmpfs when available.
+ */
+final class SyntheticAst {
+
+	private SyntheticAst() {
+	}
+
+	/**
+	 * Create a node.
+	 * @param types The AST interfaces the node implements, the first one
+	 *          being its type.
+	 * @param properties Property names and values, alternately: "name" is
+	 *          returned by getName().
+	 * @return The node, implementing the given interfaces and {@link Node}.
+	 */
+	static Object node(Class<?>[] types, Object... properties) {
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for (int i = 0; i < properties.length; i += 2) {
+			values.put((String) properties[i], properties[i + 1]);
+		}
+		final List<Class<?>> interfaces = new ArrayList<Class<?>>();
+		Collections.addAll(interfaces, types);
+		if (!interfaces.contains(Node.class)) {
+			interfaces.add(Node.class);
+		}
+		final String astType = types[0].getSimpleName();
+		return Proxy.newProxyInstance(SyntheticAst.class.getClassLoader(),
+				interfaces.toArray(new Class<?>[interfaces.size()]), new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						final String name = method.getName();
+						if (name.equals("equals")) {
+							return proxy == args[0];
+						} else if (name.equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						} else if (name.equals("toString")) {
+							return astType + values;
+						} else if (name.equals("astGetType")) {
+							return astType;
+						} else if (name.startsWith("get") && name.length() > 3) {
+							final String property = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+							if (values.containsKey(property)) {
+								return values.get(property);
+							}
+						}
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	/**
+	 * @return A proxy of a compiler service, answering the given methods by
+	 *         name, and the others with default values.
+	 */
+	static <T> T service(Class<T> type, final Map<String, InvocationHandler> methods) {
+		return type.cast(Proxy.newProxyInstance(SyntheticAst.class.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						final InvocationHandler handler = methods.get(method.getName());
+						if (handler != null) {
+							return handler.invoke(proxy, method, args);
+						} else if (method.getName().equals("equals")) {
+							return proxy == args[0];
+						} else if (method.getName().equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return defaultValue(method.getReturnType());
+					}
+				}));
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type.isArray()) {
+			return Array.newInstance(type.getComponentType(), 0);
+		} else if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (List.class.isAssignableFrom(type) || type == Collection.class) {
+			return new ArrayList<Object>();
+		}
+		return null;
+	}
+
+	/**
+	 * @return A primitive type.
+	 */
+	static Type primitive(String name) {
+		return (Type) node(new Class<?>[] { PrimitiveType.class }, "name", name);
+	}
+
+	/**
+	 * @return An array of pointers of pointers... of the given type, with the
+	 *         given pointer depth.
+	 */
+	static Type deepType(Type base, int depth) {
+		Type type = (Type) node(new Class<?>[] { ArrayOf.class }, "type", base);
+		for (int i = 0; i < depth; i++) {
+			type = (Type) node(new Class<?>[] { PointerOf.class }, "type", type);
+		}
+		return type;
+	}
+
+	/**
+	 * @return Method parameters, with pointer types of increasing depth.
+	 */
+	static Parameter[] parameters(int count) {
+		final Parameter[] parameters = new Parameter[count];
+		for (int i = 0; i < count; i++) {
+			parameters[i] = (Parameter) node(new Class<?>[] { Parameter.class }, "name", "p" + i, "type",
+					deepType(primitive("unsigned int"), i % 4));
+		}
+		return parameters;
+	}
+
+	/**
+	 * @return An interface definition, with methods of several parameters.
+	 */
+	static IDL interfaceDefinition(String signature, int methodCount) {
+		final org.ow2.mind.idl.ast.Method[] methods = new org.ow2.mind.idl.ast.Method[methodCount];
+		for (int i = 0; i < methodCount; i++) {
+			methods[i] = (org.ow2.mind.idl.ast.Method) node(new Class<?>[] { org.ow2.mind.idl.ast.Method.class },
+					"name", "method" + i, "type", primitive("int"), "parameters", parameters(i % 5));
+		}
+		return (IDL) node(new Class<?>[] { InterfaceDefinition.class }, "name", signature, "methods", methods);
+	}
+
+	/**
+	 * @return An interface of a definition.
+	 */
+	static MindInterface mindInterface(String name, String signature, String role) {
+		return (MindInterface) node(new Class<?>[] { MindInterface.class }, "name", name, "signature", signature,
+				"role", role, "contingency", TypeInterface.MANDATORY_CONTINGENCY, "cardinality",
+				TypeInterface.SINGLETON_CARDINALITY);
+	}
+
+	/**
+	 * @return A client collection interface of the given size.
+	 */
+	static MindInterface collectionInterface(String name, String signature, int size) {
+		return (MindInterface) node(new Class<?>[] { MindInterface.class }, "name", name, "signature", signature,
+				"role", TypeInterface.CLIENT_ROLE, "contingency", TypeInterface.MANDATORY_CONTINGENCY,
+				"cardinality", TypeInterface.COLLECTION_CARDINALITY, "numberOfElement", Integer.toString(size));
+	}
+
+	/**
+	 * @return A primitive definition with server and client interfaces and
+	 *         sources.
+	 */
+	static Definition primitiveDefinition(String name, int serverCount, int clientCount, int sourceCount) {
+		final Interface[] interfaces = new Interface[serverCount + clientCount];
+		for (int i = 0; i < serverCount; i++) {
+			interfaces[i] = mindInterface("s" + i, "bench.Itf" + i, TypeInterface.SERVER_ROLE);
+		}
+		for (int i = 0; i < clientCount; i++) {
+			interfaces[serverCount + i] = mindInterface("c" + i, "bench.Itf" + i, TypeInterface.CLIENT_ROLE);
+		}
+		return primitiveDefinition(name, interfaces, sourceCount, 0);
+	}
+
+	/**
+	 * @return A primitive definition with the given interfaces, sources, and
+	 *         int attributes.
+	 */
+	static Definition primitiveDefinition(String name, Interface[] interfaces, int sourceCount, int attributeCount) {
+		final Source[] sources = new Source[sourceCount];
+		for (int i = 0; i < sourceCount; i++) {
+			sources[i] = (Source) node(new Class<?>[] { Source.class }, "path",
+					"/" + name.replace('.', '/') + i + ".c");
+		}
+		final Attribute[] attributes = new Attribute[attributeCount];
+		for (int i = 0; i < attributeCount; i++) {
+			attributes[i] = (Attribute) node(new Class<?>[] { Attribute.class }, "name", "a" + i, "type", "int");
+		}
+		return (Definition) node(new Class<?>[] { Definition.class, InterfaceContainer.class,
+				ImplementationContainer.class, AttributeContainer.class }, "name", name, "interfaces", interfaces,
+				"sources", sources, "attributes", attributes);
+	}
+
+	/**
+	 * @return A definition extending a primitive definition without adding to
+	 *         it: it has the interfaces, sources and attributes of its parent.
+	 */
+	static Definition extendingDefinition(String name, Definition parent) {
+		return (Definition) node(new Class<?>[] { Definition.class, InterfaceContainer.class,
+				ImplementationContainer.class, AttributeContainer.class }, "name", name, "interfaces",
+				((InterfaceContainer) parent).getInterfaces(), "sources", ((ImplementationContainer) parent).getSources(),
+				"attributes", ((AttributeContainer) parent).getAttributes());
+	}
+
+	/**
+	 * @return A fresh temporary directory, on tmpfs when available.
+	 */
+	static File temporaryDirectory() throws IOException {
+		final File shm = new File("/dev/shm");
+		return (shm.isDirectory() && shm.canWrite()) ? Files.createTempDirectory(shm.toPath(), "fakeheader-bench")
+				.toFile() : Files.createTempDirectory("fakeheader-bench").toFile();
+	}
+
+	/**
+	 * Delete a temporary directory and its content.
+	 */
+	static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * @return A generator wired to synthetic services: IDLs are taken from the
+	 *         given map, outputs and sources are in the given directory.
+	 */
+	static FakeHeaderGenerator generator(final File dir, final Map<String, IDL> idls) {
+		final FakeHeaderGenerator generator = new FakeHeaderGenerator();
+		generator.outputFileLocatorItf = outputFileLocator(dir);
+		generator.implementationLocatorItf = implementationLocator(dir);
+		generator.idlLoaderItf = idlLoader(idls);
+		generator.flagExtractorItf = service(FlagExtractor.class, Collections.<String, InvocationHandler> emptyMap());
+		generator.inputResourceLocatorItf = service(InputResourceLocator.class,
+				Collections.<String, InvocationHandler> emptyMap());
+		generator.adlLoaderItf = service(Loader.class, Collections.<String, InvocationHandler> emptyMap());
+		return generator;
+	}
+
+	/**
+	 * @return A module binding the same synthetic services as
+	 *         {@link #generator}, to override the compiler services of
+	 *         {@link FakeHeaderModule}.
+	 */
+	static Module services(final File dir, final Map<String, IDL> idls) {
+		return services(dir, idls, Collections.<String, List<String>> emptyMap());
+	}
+
+	/**
+	 * @param cFlags The C flags of the sources, by source path.
+	 * @return A module binding the synthetic services, the flag extractor
+	 *         answering the given C flags.
+	 */
+	static Module services(final File dir, final Map<String, IDL> idls, final Map<String, List<String>> cFlags) {
+		final Map<String, InvocationHandler> flags = new HashMap<String, InvocationHandler>();
+		flags.put("getCFlags", new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				final List<String> sourceFlags = (args[0] instanceof Source) ? cFlags.get(((Source) args[0]).getPath())
+						: null;
+				return (sourceFlags != null) ? new ArrayList<String>(sourceFlags) : new ArrayList<String>();
+			}
+		});
+		return new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(ImplementationLocator.class).annotatedWith(Names.named(FakeHeaderGenerator.FAKE_HEADER))
+						.toInstance(implementationLocator(dir));
+				bind(OutputFileLocator.class).toInstance(outputFileLocator(dir));
+				bind(IDLLoader.class).toInstance(idlLoader(idls));
+				bind(FlagExtractor.class).toInstance(service(FlagExtractor.class, flags));
+				bind(InputResourceLocator.class).toInstance(
+						service(InputResourceLocator.class, Collections.<String, InvocationHandler> emptyMap()));
+				bind(Loader.class).toInstance(service(Loader.class, Collections.<String, InvocationHandler> emptyMap()));
+			}
+		};
+	}
+
+	private static OutputFileLocator outputFileLocator(final File dir) {
+		final Map<String, InvocationHandler> outputs = new HashMap<String, InvocationHandler>();
+		final InvocationHandler outputFile = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return new File(dir, (String) args[0]);
+			}
+		};
+		outputs.put("getCSourceOutputFile", outputFile);
+		outputs.put("getCSourceTemporaryOutputFile", outputFile);
+		return service(OutputFileLocator.class, outputs);
+	}
+
+	private static ImplementationLocator implementationLocator(final File dir) {
+		final Map<String, InvocationHandler> implementations = new HashMap<String, InvocationHandler>();
+		implementations.put("findSource", new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return new File(dir, (String) args[0]).toURI().toURL();
+			}
+		});
+		return service(ImplementationLocator.class, implementations);
+	}
+
+	private static IDLLoader idlLoader(final Map<String, IDL> idls) {
+		final Map<String, InvocationHandler> loader = new HashMap<String, InvocationHandler>();
+		loader.put("load", new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return idls.get(args[0]);
+			}
+		});
+		return service(IDLLoader.class, loader);
+	}
+
+	/**
+	 * @return A compilation context with the project wise flags already
+	 *         resolved.
+	 */
+	static Map<Object, Object> context() {
+		final Map<Object, Object> context = new HashMap<Object, Object>();
+		final List<String> none = Collections.emptyList();
+		context.put(CompilationFlags.CONTEXT_KEY, new CompilationFlags(none, none, none, none));
+		return context;
+	}
+}
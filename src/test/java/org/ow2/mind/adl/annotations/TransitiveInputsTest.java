@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.objectweb.fractal.adl.Node;
+import org.ow2.mind.idl.ast.IDL;
+import org.ow2.mind.idl.ast.Include;
+import org.ow2.mind.idl.ast.IncludeContainer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link TransitiveInputs}.
+ */
+public class TransitiveInputsTest {
+
+	private File dir;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("inputs").toFile();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	/**
+	 * An AST node read from a source, with attributes and sub-nodes by type.
+	 */
+	private static final class AstNode implements InvocationHandler {
+		final String source;
+		final Map<String, String> attributes = new HashMap<String, String>();
+		final Map<String, List<Node>> children = new LinkedHashMap<String, List<Node>>();
+		final Map<String, Object> values = new HashMap<String, Object>();
+
+		AstNode(String source) {
+			this.source = source;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			final String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("astGetSource")) {
+				return source;
+			} else if (name.equals("astGetAttributes")) {
+				return attributes;
+			} else if (name.equals("astGetNodeTypes")) {
+				return children.keySet().toArray(new String[children.size()]);
+			} else if (name.equals("astGetNodes")) {
+				final List<Node> nodes = children.get(args[0]);
+				return (nodes != null) ? nodes.toArray(new Node[nodes.size()]) : null;
+			} else if (name.startsWith("get")) {
+				return values.get(Character.toLowerCase(name.charAt(3)) + name.substring(4));
+			}
+			return null;
+		}
+	}
+
+	private static Node node(String source, Class<?>... types) {
+		final Class<?>[] interfaces = Arrays.copyOf(types, types.length + 1);
+		interfaces[types.length] = Node.class;
+		return (Node) Proxy.newProxyInstance(TransitiveInputsTest.class.getClassLoader(), interfaces,
+				new AstNode(source));
+	}
+
+	private static AstNode fields(Node node) {
+		return (AstNode) Proxy.getInvocationHandler(node);
+	}
+
+	private static void add(Node parent, String type, Node child) {
+		List<Node> nodes = fields(parent).children.get(type);
+		if (nodes == null) {
+			nodes = new ArrayList<Node>();
+			fields(parent).children.put(type, nodes);
+		}
+		nodes.add(child);
+	}
+
+	private static Node reference(String attribute, String name) {
+		final Node reference = node(null);
+		fields(reference).attributes.put(attribute, name);
+		return reference;
+	}
+
+	private File write(String name) throws Exception {
+		final File file = new File(dir, name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), FileUpdaterTest.bytes(name));
+		return file;
+	}
+
+	@Test
+	public void sources() throws Exception {
+		final File adl = write("a/A.adl");
+		final File superAdl = write("a/Super.adl");
+		final File itf = write("a/I.itf");
+		final Node definition = node(adl.getPath() + ":1");
+		final Node inherited = node(superAdl.toURI() + ":12-14");
+		final Node itfNode = node(itf.getPath() + ":3:5");
+		add(definition, "interface", inherited);
+		add(definition, "interface", itfNode);
+		// Shared and cyclic nodes are walked once.
+		add(inherited, "sub", itfNode);
+		add(itfNode, "parent", definition);
+		add(definition, "source", node(null));
+		add(definition, "missing", node(new File(dir, "missing.adl").getPath()));
+
+		final Set<String> files = new TreeSet<String>();
+		TransitiveInputs.sources(definition, files);
+		Assert.assertEquals(new ArrayList<String>(files), Arrays.asList(adl.getPath(), itf.getPath(),
+				superAdl.getPath()));
+	}
+
+	@Test
+	public void references() {
+		final Node definition = node(null);
+		add(definition, TransitiveInputs.EXTENDS, reference("name", "a.Super1"));
+		add(definition, TransitiveInputs.EXTENDS, reference("name", "a.Super2"));
+		add(definition, TransitiveInputs.IMPORT, reference("path", "a.Imported"));
+		add(definition, TransitiveInputs.IMPORT, reference("name", ""));
+		add(definition, "interface", reference("name", "itf"));
+		Assert.assertEquals(TransitiveInputs.references(definition, TransitiveInputs.EXTENDS),
+				Arrays.asList("a.Super1", "a.Super2"));
+		Assert.assertEquals(TransitiveInputs.references(definition, TransitiveInputs.EXTENDS,
+				TransitiveInputs.IMPORT), Arrays.asList("a.Super1", "a.Super2", "a.Imported"));
+		Assert.assertTrue(TransitiveInputs.references(node(null), TransitiveInputs.EXTENDS).isEmpty());
+	}
+
+	@Test
+	public void includes() throws Exception {
+		final File first = new File(dir, "first");
+		final File second = new File(dir, "second");
+		final File types = write("second/a/types.h");
+		final File shadowed = write("first/a/shadow.idt");
+		write("second/a/shadow.idt");
+		final Node idl = node(null, IDL.class, IncludeContainer.class);
+		final Include[] includes = new Include[4];
+		final String[] paths = { "\"a/types.h\"", "\"/a/shadow.idt\"", "<stdint.h>", "\"a/missing.h\"" };
+		for (int i = 0; i < paths.length; i++) {
+			includes[i] = (Include) node(null, Include.class);
+			fields(includes[i]).values.put("path", paths[i]);
+		}
+		fields(idl).values.put("includes", includes);
+
+		final Set<String> files = new TreeSet<String>();
+		TransitiveInputs.includes((IDL) idl, Arrays.asList(first.getPath(), second.getPath()), files);
+		Assert.assertEquals(new ArrayList<String>(files), Arrays.asList(shadowed.getPath(), types.getPath()));
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2014 Schneider Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Julien TOUS
+ * Contributors:
+ */
+
+package org.ow2.mind.adl.annotations;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link UnityCollisionChecker}.
+ */
+public class UnityCollisionCheckerTest {
+
+	private File dir;
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("unity").toFile();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() {
+		SyntheticAst.delete(dir);
+	}
+
+	/**
+	 * @return A definition with a source of the given lines.
+	 */
+	private PreparedDefinition member(String name, String... lines) throws Exception {
+		final File source = new File(dir, name + ".c");
+		Files.write(source.toPath(), Arrays.asList(lines), StandardCharsets.ISO_8859_1);
+		final PreparedDefinition member = new PreparedDefinition(null, false, null);
+		member.sources.add(new PreparedDefinition.PreparedSource(null, source.getPath(), name + ".impl.h",
+				name + ".o", null));
+		return member;
+	}
+
+	@Test
+	public void noCollision() throws Exception {
+		final List<String> collisions = UnityCollisionChecker.check(Arrays.asList(
+				member("a", "static int count = 0;", "#define SIZE 4", "int METH(s, get)(void) {", "}"),
+				member("b", "static int total;", "#define LENGTH 4", "int METH(s, get)(void) {", "}")));
+		Assert.assertTrue(collisions.isEmpty(), collisions.toString());
+	}
+
+	@Test
+	public void staticSymbols() throws Exception {
+		final List<String> collisions = UnityCollisionChecker.check(Arrays.asList(
+				member("a", "static int count = 0;", "static void reset(void) {", "}", "static char buffer[16];"),
+				member("b", "static unsigned long count;", "static inline void reset (int force)",
+						"static char *buffer[2];", "  static int local;")));
+		Assert.assertEquals(collisions.size(), 3, collisions.toString());
+		Assert.assertTrue(collisions.get(0).startsWith("static symbol \"count\" defined by both "));
+		Assert.assertTrue(collisions.get(1).startsWith("static symbol \"reset\""));
+		Assert.assertTrue(collisions.get(2).startsWith("static symbol \"buffer\""));
+	}
+
+	@Test
+	public void macros() throws Exception {
+		final List<String> collisions = UnityCollisionChecker.check(Arrays.asList(
+				member("a", "#define SIZE 4", "#ifndef GUARD", "# define GUARD", "#endif"),
+				member("b", "  #  define SIZE 8", "#undef GUARD")));
+		Assert.assertEquals(collisions.size(), 1, collisions.toString());
+		Assert.assertEquals(collisions.get(0), "macro \"SIZE\" defined by both " + new File(dir, "a.c").getPath()
+				+ " and " + new File(dir, "b.c").getPath());
+	}
+
+	@Test
+	public void sameSourceTwice() throws Exception {
+		// A name defined twice by the same source is its own business.
+		final List<String> collisions = UnityCollisionChecker.check(Arrays.asList(member("a", "#define X 1",
+				"#undef X", "#define X 2")));
+		Assert.assertTrue(collisions.isEmpty(), collisions.toString());
+	}
+
+	@Test
+	public void unreadableSource() throws Exception {
+		final PreparedDefinition member = member("a", "int x;");
+		new File(dir, "a.c").delete();
+		final List<String> collisions = UnityCollisionChecker.check(Arrays.asList(member));
+		Assert.assertEquals(collisions.size(), 1);
+		Assert.assertTrue(collisions.get(0).startsWith("cannot read "));
+	}
+}
@@ -0,0 +1,6 @@
+#ifndef GOLDEN_CLIENTEXT_BIND
+#define GOLDEN_CLIENTEXT_BIND
+
+
+#endif /* GOLDEN_CLIENTEXT_BIND */
+
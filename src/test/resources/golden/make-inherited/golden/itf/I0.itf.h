@@ -0,0 +1,17 @@
+#ifndef GOLDEN_ITF_I0
+#define GOLDEN_ITF_I0
+
+
+/* Begin interface type definition */
+struct golden_itf_I0_s {
+	int (*method0)(void);
+	int (*method1)( unsigned int *  p0);
+	int (*method2)( unsigned int *  p0, unsigned int *  *  p1);
+};
+
+typedef struct golden_itf_I0_s golden_itf_I0;
+/* End interface type definition */
+
+
+#endif /* GOLDEN_ITF_I0 */
+
@@ -0,0 +1,44 @@
+#ifndef GOLDEN_CLIENT
+#define GOLDEN_CLIENT
+
+#include "mindcommon.h"
+
+#define DEFINITION_NAME golden_Client
+
+#include "commonMacro.h"
+
+/* Begin server interface listing */
+struct golden_itf_I1_s;
+extern const struct golden_itf_I1_s GET_MY_INTERFACE(s);
+static const int GET_COLLECTION_SIZE(s) = 1;
+/* End server interface listing */
+
+/* Begin client interface listing */
+#include "golden/Client.bind.h"
+#ifndef _component_golden_Client_interface_c_bound
+#define _component_golden_Client_interface_c_bound 1
+#endif
+#ifndef _component_golden_Client_interface_c_static
+struct golden_itf_I0_s;
+extern struct golden_itf_I0_s GET_MY_INTERFACE(c);
+static const int GET_COLLECTION_SIZE(c) = 1;
+#endif
+#include "golden/itf/I2.itf.h"
+#ifndef _component_golden_Client_interface_cc_bound
+#define _component_golden_Client_interface_cc_bound 1
+#endif
+#ifndef _component_golden_Client_interface_cc_static
+extern golden_itf_I2 GET_MY_INTERFACE(cc[2]);
+#endif
+static const int GET_COLLECTION_SIZE(cc) = 2;
+
+/* Begin METH declaration */
+int METH(cc, method0)(void);
+int METH(cc, method1)( unsigned int *  p0);
+int METH(cc, method2)( unsigned int *  p0, unsigned int *  *  p1);
+/* End  METH declaration */
+
+/* End client interface listing */
+
+#endif /* GOLDEN_CLIENT */
+
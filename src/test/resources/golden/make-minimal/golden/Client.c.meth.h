@@ -0,0 +1,15 @@
+#pragma once
+#ifndef GOLDEN_CLIENT_C_METH
+#define GOLDEN_CLIENT_C_METH
+
+#include "golden/itf/I0.itf.h"
+
+/* Begin METH declaration */
+int METH(c, method0)(void);
+int METH(c, method1)( unsigned int *  p0);
+int METH(c, method2)( unsigned int *  p0, unsigned int *  *  p1);
+/* End  METH declaration */
+
+
+#endif /* GOLDEN_CLIENT_C_METH */
+
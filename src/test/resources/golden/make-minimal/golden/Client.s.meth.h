@@ -0,0 +1,15 @@
+#pragma once
+#ifndef GOLDEN_CLIENT_S_METH
+#define GOLDEN_CLIENT_S_METH
+
+#include "golden/itf/I1.itf.h"
+
+/* Begin METH declaration */
+int METH(s, method0)(void);
+int METH(s, method1)( unsigned int *  p0);
+int METH(s, method2)( unsigned int *  p0, unsigned int *  *  p1);
+/* End  METH declaration */
+
+
+#endif /* GOLDEN_CLIENT_S_METH */
+
@@ -0,0 +1,9 @@
+/* Generated by the FakeHeader annotation, do not edit. */
+#include "golden/Client.adl.h"
+#include "golden/Client.s.meth.h"
+
+const golden_itf_I1 GET_MY_INTERFACE(s) = {
+	.method0 = METH(s, method0),
+	.method1 = METH(s, method1),
+	.method2 = METH(s, method2),
+};
@@ -0,0 +1,9 @@
+#ifndef @OUTPUT@_GOLDEN_CLIENT0_IMPL_H
+#define @OUTPUT@_GOLDEN_CLIENT0_IMPL_H
+
+#include "golden/Client.adl.h"
+#include "golden/Client.s.meth.h"
+#include "golden/Client.c.meth.h"
+
+#endif /* @OUTPUT@_GOLDEN_CLIENT0_IMPL_H */
+
@@ -0,0 +1,32 @@
+#ifndef GOLDEN_SERVER
+#define GOLDEN_SERVER
+
+#include "mindcommon.h"
+
+#define DEFINITION_NAME golden_Server
+
+#include "commonMacro.h"
+
+/* Begin server interface listing */
+struct golden_itf_I0_s;
+extern const struct golden_itf_I0_s GET_MY_INTERFACE(s);
+static const int GET_COLLECTION_SIZE(s) = 1;
+/* End server interface listing */
+
+/* Begin client interface listing */
+/* End client interface listing */
+
+/* Begin attributes declaration */
+struct golden_Server_attribue_s {
+int a0;
+int a1;
+};
+typedef struct golden_Server_attribue_s golden_Server_attribue_t;
+static golden_Server_attribue_t ATTRIBUTE_STRUCT_NAME;
+#define _component_golden_Server_attribute_a0 ATTRIBUTE_STRUCT_NAME.a0
+#define _component_golden_Server_attribute_a1 ATTRIBUTE_STRUCT_NAME.a1
+/* End attributes declaration */
+
+
+#endif /* GOLDEN_SERVER */
+
@@ -0,0 +1,9 @@
+/* Generated by the FakeHeader annotation, do not edit. */
+#include "golden/Server.adl.h"
+#include "golden/Server.s.meth.h"
+
+const golden_itf_I0 GET_MY_INTERFACE(s) = {
+	.method0 = METH(s, method0),
+	.method1 = METH(s, method1),
+	.method2 = METH(s, method2),
+};
@@ -0,0 +1,8 @@
+#ifndef @OUTPUT@_GOLDEN_SERVER0_IMPL_H
+#define @OUTPUT@_GOLDEN_SERVER0_IMPL_H
+
+#include "golden/Server.adl.h"
+#include "golden/Server.s.meth.h"
+
+#endif /* @OUTPUT@_GOLDEN_SERVER0_IMPL_H */
+
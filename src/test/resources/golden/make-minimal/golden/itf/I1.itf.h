@@ -0,0 +1,17 @@
+#ifndef GOLDEN_ITF_I1
+#define GOLDEN_ITF_I1
+
+
+/* Begin interface type definition */
+struct golden_itf_I1_s {
+	int (*method0)(void);
+	int (*method1)( unsigned int *  p0);
+	int (*method2)( unsigned int *  p0, unsigned int *  *  p1);
+};
+
+typedef struct golden_itf_I1_s golden_itf_I1;
+/* End interface type definition */
+
+
+#endif /* GOLDEN_ITF_I1 */
+
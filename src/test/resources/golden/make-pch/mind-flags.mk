@@ -0,0 +1,8 @@
+# Generated by the FakeHeader annotation, do not edit.
+ifndef MIND_FLAGS_MK
+MIND_FLAGS_MK := 1
+MIND_INCDIRS :=
+MIND_GLOBAL_CPPFLAGS :=
+MIND_GLOBAL_CFLAGS :=
+MIND_INPUT_INCDIRS :=
+endif
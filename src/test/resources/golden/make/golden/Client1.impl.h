@@ -0,0 +1,7 @@
+#ifndef @OUTPUT@_GOLDEN_CLIENT1_IMPL_H
+#define @OUTPUT@_GOLDEN_CLIENT1_IMPL_H
+
+#include "golden/Client.adl.h"
+
+#endif /* @OUTPUT@_GOLDEN_CLIENT1_IMPL_H */
+
@@ -0,0 +1,6 @@
+#ifndef GOLDEN_CLIENT_BIND
+#define GOLDEN_CLIENT_BIND
+
+
+#endif /* GOLDEN_CLIENT_BIND */
+
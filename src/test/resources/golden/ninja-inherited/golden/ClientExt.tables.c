@@ -0,0 +1,8 @@
+/* Generated by the FakeHeader annotation, do not edit. */
+#include "golden/ClientExt.adl.h"
+
+const golden_itf_I1 GET_MY_INTERFACE(s) = {
+	.method0 = METH(s, method0),
+	.method1 = METH(s, method1),
+	.method2 = METH(s, method2),
+};
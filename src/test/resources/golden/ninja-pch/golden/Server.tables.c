@@ -0,0 +1,8 @@
+/* Generated by the FakeHeader annotation, do not edit. */
+#include "golden/Server.adl.h"
+
+const golden_itf_I0 GET_MY_INTERFACE(s) = {
+	.method0 = METH(s, method0),
+	.method1 = METH(s, method1),
+	.method2 = METH(s, method2),
+};
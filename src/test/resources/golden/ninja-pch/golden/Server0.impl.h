@@ -0,0 +1,7 @@
+#ifndef @OUTPUT@_GOLDEN_SERVER0_IMPL_H
+#define @OUTPUT@_GOLDEN_SERVER0_IMPL_H
+
+#include "golden/Server.adl.h"
+
+#endif /* @OUTPUT@_GOLDEN_SERVER0_IMPL_H */
+
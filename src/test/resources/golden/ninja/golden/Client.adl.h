@@ -0,0 +1,58 @@
+#ifndef GOLDEN_CLIENT
+#define GOLDEN_CLIENT
+
+#include "mindcommon.h"
+
+#define DEFINITION_NAME golden_Client
+
+#include "commonMacro.h"
+
+/* Begin server interface listing */
+#include "golden/itf/I1.itf.h"
+extern const golden_itf_I1 GET_MY_INTERFACE(s);
+static const int GET_COLLECTION_SIZE(s) = 1;
+
+/* Begin METH declaration */
+int METH(s, method0)(void);
+int METH(s, method1)( unsigned int *  p0);
+int METH(s, method2)( unsigned int *  p0, unsigned int *  *  p1);
+/* End  METH declaration */
+
+/* End server interface listing */
+
+/* Begin client interface listing */
+#include "golden/Client.bind.h"
+#include "golden/itf/I0.itf.h"
+#ifndef _component_golden_Client_interface_c_bound
+#define _component_golden_Client_interface_c_bound 1
+#endif
+#ifndef _component_golden_Client_interface_c_static
+extern golden_itf_I0 GET_MY_INTERFACE(c);
+#endif
+static const int GET_COLLECTION_SIZE(c) = 1;
+
+/* Begin METH declaration */
+int METH(c, method0)(void);
+int METH(c, method1)( unsigned int *  p0);
+int METH(c, method2)( unsigned int *  p0, unsigned int *  *  p1);
+/* End  METH declaration */
+
+#include "golden/itf/I2.itf.h"
+#ifndef _component_golden_Client_interface_cc_bound
+#define _component_golden_Client_interface_cc_bound 1
+#endif
+#ifndef _component_golden_Client_interface_cc_static
+extern golden_itf_I2 GET_MY_INTERFACE(cc[2]);
+#endif
+static const int GET_COLLECTION_SIZE(cc) = 2;
+
+/* Begin METH declaration */
+int METH(cc, method0)(void);
+int METH(cc, method1)( unsigned int *  p0);
+int METH(cc, method2)( unsigned int *  p0, unsigned int *  *  p1);
+/* End  METH declaration */
+
+/* End client interface listing */
+
+#endif /* GOLDEN_CLIENT */
+